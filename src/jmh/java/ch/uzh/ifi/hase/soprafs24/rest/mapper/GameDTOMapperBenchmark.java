@@ -0,0 +1,50 @@
+package ch.uzh.ifi.hase.soprafs24.rest.mapper;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.GameSessionGetDTO;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GameDTOMapperBenchmark {
+
+    private GameSession gameSession;
+    private Player player;
+    private User user;
+
+    @Setup
+    public void setup() {
+        user = new User();
+        user.setId(1L);
+        user.setUsername("user1");
+        gameSession = new GameSession();
+        gameSession.setId(10L);
+        gameSession.setGameToken("benchmark");
+        gameSession.setCreator(user);
+        gameSession.setCurrentState(GameState.WAITING_FOR_PLAYERS);
+        player = new Player();
+        player.setId(1L);
+        player.setUser(user);
+        player.setGameSession(gameSession);
+        player.setIsChameleon(false);
+        player.setTwilioToken("token");
+    }
+
+    @Benchmark
+    public GameSessionGetDTO convertEntityToGameSessionGetDTO() {
+        return GameDTOMapper.INSTANCE.convertEntityToGameSessionGetDTO(gameSession, player, user);
+    }
+}
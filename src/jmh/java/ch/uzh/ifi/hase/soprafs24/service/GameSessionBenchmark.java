@@ -0,0 +1,137 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import static org.mockito.Mockito.when;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.GameRuleViolation;
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerAction;
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerActionResult;
+
+/**
+ * The game actions of GameSessionService on a live game in memory. All
+ * collaborators are stubs that neither record calls nor touch a database, so
+ * only the game logic itself is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GameSessionBenchmark {
+
+    @Param({ "4", "6", "9" })
+    private int players;
+
+    private GameSessionService gameSessionService;
+    private GameSession gameSession;
+    private LiveGameSession live;
+    private List<Player> playerList;
+    private List<Long> turnOrder;
+
+    private PlayerAction startGameAction;
+    private PlayerAction hintAction;
+    private PlayerAction invalidHintAction;
+
+    @Setup
+    public void setup() {
+        WordService wordService = stub(WordService.class);
+        when(wordService.getRandomWord(null)).thenReturn("apple");
+        gameSessionService = new GameSessionService(wordService, stub(AppService.class),
+                stub(LeaderboardService.class), stub(LiveGameRegistry.class), stub(GameStateWriter.class),
+                stub(GameActionDispatcher.class), stub(TimerService.class), stub(SimpMessagingTemplate.class),
+                new SimpleMeterRegistry());
+
+        gameSession = new GameSession();
+        gameSession.setGameToken("benchmark");
+        gameSession.setSecretWord("apple");
+        playerList = new ArrayList<>();
+        turnOrder = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            User user = new User();
+            user.setId((long) i);
+            user.setUsername("user" + i);
+            Player player = new Player();
+            player.setId((long) i);
+            player.setUser(user);
+            player.setGameSession(gameSession);
+            player.setIsChameleon(i == players - 1);
+            playerList.add(player);
+            turnOrder.add(player.getId());
+        }
+        gameSession.setCreator(playerList.get(0).getUser());
+        live = new LiveGameSession(gameSession, playerList);
+
+        startGameAction = action("START_GAME", null);
+        hintAction = action("GIVE_HINT", "fruit");
+        invalidHintAction = action("GIVE_HINT", "red fruit");
+    }
+
+    private static <T> T stub(Class<T> type) {
+        return Mockito.mock(type, Mockito.withSettings().stubOnly());
+    }
+
+    private static PlayerAction action(String type, String content) {
+        PlayerAction action = new PlayerAction();
+        action.setActionType(type);
+        action.setGameSessionToken("benchmark");
+        action.setActionContent(content);
+        return action;
+    }
+
+    // roles and turn order shuffled for a new round
+    @Benchmark
+    public PlayerActionResult startGame() {
+        gameSession.setCurrentState(GameState.WAITING_FOR_PLAYERS);
+        return gameSessionService.startGame(startGameAction, live);
+    }
+
+    // the first hint of a round, validated and accepted
+    @Benchmark
+    public PlayerActionResult giveHint() {
+        gameSession.setCurrentState(GameState.STARTED);
+        gameSession.setTurnOrder(turnOrder);
+        gameSession.setTurnCursor(0);
+        return gameSessionService.giveHint(playerList.get(0), hintAction, live);
+    }
+
+    // a hint of two words, rejected without a stack trace
+    @Benchmark
+    public Object giveHint_rejected() {
+        gameSession.setCurrentState(GameState.STARTED);
+        gameSession.setTurnOrder(turnOrder);
+        gameSession.setTurnCursor(0);
+        try {
+            return gameSessionService.giveHint(playerList.get(0), invalidHintAction, live);
+        } catch (GameRuleViolation e) {
+            return e;
+        }
+    }
+
+    // a full vote where everybody accuses the next player, i.e. a tie of all players
+    @Benchmark
+    public PlayerActionResult computeVotingResult() {
+        gameSession.setCurrentState(GameState.VOTING);
+        live.clearVotes();
+        for (int i = 0; i < players; i++) {
+            live.castVote(playerList.get(i), playerList.get((i + 1) % players));
+        }
+        return gameSessionService.computeVotingResult(live);
+    }
+}
@@ -0,0 +1,65 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import static org.mockito.Mockito.when;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+
+/**
+ * Building the leaderboard from all users, as done at startup, and reading a
+ * page from the middle of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LeaderboardBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    private int users;
+
+    private LeaderboardService leaderboardService;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        List<User> all = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            User user = new User();
+            user.setId((long) i);
+            user.setUsername("user" + i);
+            int roundsPlayed = random.nextInt(200);
+            user.setRoundsPlayed(roundsPlayed);
+            user.setWins(roundsPlayed == 0 ? 0 : random.nextInt(roundsPlayed + 1));
+            all.add(user);
+        }
+        UserRepository userRepository = Mockito.mock(UserRepository.class, Mockito.withSettings().stubOnly());
+        when(userRepository.findAll()).thenReturn(all);
+        leaderboardService = new LeaderboardService(userRepository);
+        leaderboardService.rebuild();
+    }
+
+    @Benchmark
+    public int rebuild() {
+        leaderboardService.rebuild();
+        return leaderboardService.size();
+    }
+
+    @Benchmark
+    public List<LeaderboardService.RankedEntry> getPage() {
+        return leaderboardService.getPage(users / 2, 20);
+    }
+}
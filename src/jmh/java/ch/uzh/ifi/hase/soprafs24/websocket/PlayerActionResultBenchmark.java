@@ -0,0 +1,47 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Serialization of the result that is broadcast to all players of a game
+ * after every action, here the largest one: the end of a vote of 9 players.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlayerActionResultBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private PlayerActionResult result;
+
+    @Setup
+    public void setup() {
+        result = new PlayerActionResult();
+        result.setActionType("END_VOTING");
+        result.setActionResult("CHAMELEON_FOUND");
+        result.setChameleonUsername("user8");
+        Map<String, Integer> voteCounts = new HashMap<>();
+        for (int i = 0; i < 9; i++) {
+            voteCounts.put("user" + i, 1);
+        }
+        result.setVoteCounts(voteCounts);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(result);
+    }
+}
@@ -0,0 +1,51 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.service.AppService;
+import ch.uzh.ifi.hase.soprafs24.websocket.StompPrincipal;
+
+/**
+ * Authenticates a STOMP connection once, when the CONNECT frame arrives. If the
+ * frame carries an "auth-token" header the token is verified and a
+ * StompPrincipal holding the user id is bound to the session, so later
+ * messages on the same connection do not need to send the token again. Connections without the
+ * header stay anonymous and fall back to the per-message header check.
+ */
+@Component
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    public static final String AUTH_TOKEN_HEADER = "auth-token";
+
+    private final AppService appService;
+
+    public StompAuthChannelInterceptor(AppService appService) {
+        this.appService = appService;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !StompCommand.CONNECT.equals(accessor.getCommand())) {
+            return message;
+        }
+        String authToken = accessor.getFirstNativeHeader(AUTH_TOKEN_HEADER);
+        if (authToken == null) {
+            return message;
+        }
+        if (!appService.isUserTokenValid(authToken)) {
+            throw new MessagingException("Invalid auth token");
+        }
+        User user = appService.getUserByToken(authToken);
+        accessor.setUser(new StompPrincipal(user.getId(), user.getUsername()));
+        return message;
+    }
+}
@@ -0,0 +1,35 @@
+package ch.uzh.ifi.hase.soprafs24.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Counts the STOMP messages of one direction, i.e. SEND frames from clients
+ * or MESSAGE frames to clients. Connects, subscriptions and heartbeats are
+ * not counted.
+ */
+public class StompMessageCounter implements ChannelInterceptor {
+
+    private final Counter messages;
+
+    public StompMessageCounter(MeterRegistry meterRegistry, String direction) {
+        this.messages = Counter.builder("stomp.messages")
+                .description("STOMP messages between the server and its clients")
+                .tag("direction", direction)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+            messages.increment();
+        }
+        return message;
+    }
+}
@@ -1,15 +1,26 @@
 package ch.uzh.ifi.hase.soprafs24.config;
 
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final StompAuthChannelInterceptor stompAuthChannelInterceptor;
+    private final MeterRegistry meterRegistry;
+
+    public WebSocketConfig(StompAuthChannelInterceptor stompAuthChannelInterceptor, MeterRegistry meterRegistry) {
+        this.stompAuthChannelInterceptor = stompAuthChannelInterceptor;
+        this.meterRegistry = meterRegistry;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/game/topic");
@@ -22,4 +33,15 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .withSockJS();
     }
 
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // authenticate once per connection instead of once per message
+        registration.interceptors(stompAuthChannelInterceptor, new StompMessageCounter(meterRegistry, "in"));
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(new StompMessageCounter(meterRegistry, "out"));
+    }
+
 }
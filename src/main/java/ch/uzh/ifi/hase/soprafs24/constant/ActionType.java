@@ -0,0 +1,25 @@
+package ch.uzh.ifi.hase.soprafs24.constant;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.GameRuleViolation;
+
+public enum ActionType {
+    TEST_ACTION,
+    TEST_ADMIN_ACTION,
+    START_GAME,
+    NEW_GAME,
+    GIVE_HINT,
+    START_VOTING,
+    VOTE,
+    CHAMELEON_GUESS;
+
+    public static ActionType parse(String actionType) {
+        if (actionType != null) {
+            try {
+                return valueOf(actionType);
+            } catch (IllegalArgumentException e) {
+                // reported below with the action type the client sent
+            }
+        }
+        throw new GameRuleViolation(GameErrorCode.INVALID_ACTION, "Invalid action type: " + actionType);
+    }
+}
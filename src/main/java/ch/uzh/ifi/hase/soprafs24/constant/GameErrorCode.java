@@ -0,0 +1,23 @@
+package ch.uzh.ifi.hase.soprafs24.constant;
+
+/**
+ * Sent with every GameSessionErrorMessage, so that clients can react to an
+ * error without parsing its message.
+ */
+public enum GameErrorCode {
+    INVALID_AUTH_TOKEN,
+    INVALID_GAME_TOKEN,
+    GAME_NOT_FOUND,
+    NOT_IN_GAME,
+    NOT_GAME_CREATOR,
+    INVALID_ACTION,
+    INVALID_STATE,
+    NOT_ENOUGH_PLAYERS,
+    WRONG_TURN,
+    EMPTY_HINT,
+    INVALID_HINT,
+    HINT_CONTAINS_SECRET_WORD,
+    ALREADY_VOTED,
+    PLAYER_NOT_FOUND,
+    INTERNAL_ERROR
+}
@@ -0,0 +1,8 @@
+package ch.uzh.ifi.hase.soprafs24.constant;
+
+public enum VideoStatus {
+    PROVISIONING,
+    READY,
+    DEGRADED, // no video while the provider is failing, upgraded once it is back
+    DISABLED // video.provider=none
+}
@@ -4,7 +4,10 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -29,10 +32,14 @@ import ch.uzh.ifi.hase.soprafs24.rest.dto.GameSessionGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.LeaderboardEntryDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.dto.VideoTokenGetDTO;
+import ch.uzh.ifi.hase.soprafs24.rest.mapper.AvatarUrls;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.GameDTOMapper;
 import ch.uzh.ifi.hase.soprafs24.rest.mapper.UserDTOMapper;
 import ch.uzh.ifi.hase.soprafs24.service.AppService;
+import ch.uzh.ifi.hase.soprafs24.service.LeaderboardService;
 import ch.uzh.ifi.hase.soprafs24.service.TwilioService;
+import ch.uzh.ifi.hase.soprafs24.service.VideoTokenCache;
 
 /**
  * App Controller This class is responsible for handling all REST request for
@@ -43,12 +50,17 @@ import ch.uzh.ifi.hase.soprafs24.service.TwilioService;
 @RestController
 public class AppController {
 
+    private static final int DEFAULT_LEADERBOARD_PAGE = 100;
+    private static final int MAX_LEADERBOARD_PAGE = 1000;
+
     private final AppService appService;
     private final TwilioService twilioService;
+    private final LeaderboardService leaderboardService;
 
-    public AppController(AppService appService, TwilioService twilioService) {
+    public AppController(AppService appService, TwilioService twilioService, LeaderboardService leaderboardService) {
         this.appService = appService;
         this.twilioService = twilioService;
+        this.leaderboardService = leaderboardService;
     }
 
     @GetMapping("/users")
@@ -74,6 +86,38 @@ public class AppController {
         return ResponseEntity.ok(UserDTOMapper.INSTANCE.convertEntityToUserGetDTO(user));
     }
 
+    /////////////// avatar image, cacheable by its content hash ////////////////////////
+    @GetMapping("/users/{id}/avatar")
+    public ResponseEntity<byte[]> getAvatar(@PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        User user = appService.getUserById(id);
+        if (user.getAvatarVersion() == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Avatar not found");
+        }
+        String eTag = "\"" + user.getAvatarVersion() + "\"";
+        // the avatar URL changes with every upload, so clients may keep the image for long
+        CacheControl cacheControl = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic();
+
+        // client already has this version, do not even load the blob
+        if (ifNoneMatch != null && (ifNoneMatch.contains(eTag) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+
+        byte[] avatar = appService.getAvatar(id);
+        if (avatar == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Avatar not found");
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .contentType(MediaType.IMAGE_JPEG)
+                .contentLength(avatar.length)
+                .body(avatar);
+    }
+
     @PostMapping("/register")
     @ResponseStatus(HttpStatus.CREATED)
     @ResponseBody
@@ -123,15 +167,16 @@ public class AppController {
   @PostMapping("/game")
     @ResponseStatus(HttpStatus.CREATED)
     @ResponseBody
-    public GameSessionGetDTO createGameSession(@RequestHeader("Authorization") String authToken) {
+    public GameSessionGetDTO createGameSession(@RequestHeader("Authorization") String authToken,
+            @RequestParam(required = false) String category) {
         // verify authToken
         if (!appService.isUserTokenValid(authToken)) {
             throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid session");
         }
         // retrieve user from authToken
         User user = appService.getUserByToken(authToken);
-        // create game session
-        GameSession gameSession = appService.createGameSession(user);
+        // create game session, with words of the chosen category if there is one
+        GameSession gameSession = appService.createGameSession(user, category);
         // add the user to the game session
         Player player = appService.addToGameSession(user, gameSession);
         // return the game session
@@ -139,6 +184,14 @@ public class AppController {
         return gameSessionGetDTO;
     }
 
+    // the word categories a game can be created with, see POST /game
+    @GetMapping("/game/categories")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public List<String> getWordCategories() {
+        return appService.getWordCategories();
+    }
+
     ////////////////////// end game session ////////////////////////
   @DeleteMapping("/game/end/{gameToken}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
@@ -314,13 +367,43 @@ public class AppController {
         }
 
         // Set current turn
-        if (gameSession.getCurrentPlayerTurn() != null) {
-            gameSessionGetDTO.setCurrentTurn(gameSession.getCurrentPlayerTurn().getUser().getUsername());
+        Player currentTurnPlayer = appService.getCurrentTurnPlayer(gameSession);
+        if (currentTurnPlayer != null) {
+            gameSessionGetDTO.setCurrentTurn(currentTurnPlayer.getUser().getUsername());
         }
 
         return gameSessionGetDTO;
     }
 
+    // the video token of the caller, reused until it is about to expire, so
+    // clients can call this on every reconnect
+    @GetMapping("/game/video-token/{gameToken}")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public VideoTokenGetDTO getVideoToken(@PathVariable String gameToken,
+            @RequestHeader("Authorization") String authToken) {
+        if (!appService.isUserTokenValid(authToken)) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Invalid or missing token");
+        }
+
+        GameSession gameSession = appService.getGameSessionByGameToken(gameToken);
+        if (gameSession == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Game session not found");
+        }
+
+        User user = appService.getUserByToken(authToken);
+        if (!appService.isUserInGameSession(user, gameSession)) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User is not a game session player");
+        }
+
+        VideoTokenCache.VideoToken token = appService.refreshVideoToken(user, gameSession);
+        VideoTokenGetDTO videoTokenGetDTO = new VideoTokenGetDTO();
+        videoTokenGetDTO.setRoomSid(gameSession.getTwilioRoomSid());
+        videoTokenGetDTO.setToken(token.token());
+        videoTokenGetDTO.setExpiresAt(token.expiresAt().toEpochMilli());
+        return videoTokenGetDTO;
+    }
+
     @PostMapping("user/avatar")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
@@ -352,32 +435,46 @@ public class AppController {
         }
     }
 
+    /////////////// leaderboard, served from the in-memory ranking ////////////////////////
     @GetMapping("/leaderboard")
     @ResponseStatus(HttpStatus.OK)
     @ResponseBody
-    public List<LeaderboardEntryDTO> getLeaderboard() {
-        List<User> users = appService.getUsers();
+    public List<LeaderboardEntryDTO> getLeaderboard(
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "" + DEFAULT_LEADERBOARD_PAGE) int limit) {
+        if (offset < 0 || limit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid offset or limit");
+        }
         List<LeaderboardEntryDTO> leaderboard = new ArrayList<>();
-
-        for (User user : users) {
-            LeaderboardEntryDTO entry = new LeaderboardEntryDTO();
-            entry.setId(user.getId());
-            entry.setUsername(user.getUsername());
-            entry.setWins(user.getWins());
-            entry.setRoundsPlayed(user.getRoundsPlayed());
-            entry.setAvatar(user.getAvatar());
-
-            double winRate = user.getRoundsPlayed() > 0
-                    ? (double) user.getWins() / user.getRoundsPlayed()
-                    : 0.0;
-            entry.setWinRate(winRate);
-
-            leaderboard.add(entry);
+        for (LeaderboardService.RankedEntry rankedEntry
+                : leaderboardService.getPage(offset, Math.min(limit, MAX_LEADERBOARD_PAGE))) {
+            leaderboard.add(toLeaderboardEntryDTO(rankedEntry));
         }
+        return leaderboard;
+    }
 
-        // Sort by win rate (descending)
-        leaderboard.sort((a, b) -> Double.compare(b.getWinRate(), a.getWinRate()));
+    @GetMapping("/users/{id}/rank")
+    @ResponseStatus(HttpStatus.OK)
+    @ResponseBody
+    public LeaderboardEntryDTO getUserRank(@PathVariable Long id) {
+        LeaderboardService.RankedEntry rankedEntry = leaderboardService.getRank(id);
+        if (rankedEntry == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User with ID " + id + " not found");
+        }
+        return toLeaderboardEntryDTO(rankedEntry);
+    }
 
-        return leaderboard;
+    private LeaderboardEntryDTO toLeaderboardEntryDTO(LeaderboardService.RankedEntry rankedEntry) {
+        LeaderboardService.Entry user = rankedEntry.entry();
+        LeaderboardEntryDTO entry = new LeaderboardEntryDTO();
+        entry.setRank(rankedEntry.rank());
+        entry.setId(user.userId());
+        entry.setUsername(user.username());
+        entry.setWins(user.wins());
+        entry.setRoundsPlayed(user.roundsPlayed());
+        entry.setWinRate(user.winRate());
+        entry.setAvatarVersion(user.avatarVersion());
+        entry.setAvatarUrl(AvatarUrls.of(user.userId(), user.avatarVersion()));
+        return entry;
     }
 }
@@ -1,18 +1,29 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import ch.uzh.ifi.hase.soprafs24.config.StompAuthChannelInterceptor;
+import ch.uzh.ifi.hase.soprafs24.constant.GameErrorCode;
 import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.GameRuleViolation;
 import ch.uzh.ifi.hase.soprafs24.service.AppService;
+import ch.uzh.ifi.hase.soprafs24.service.GameActionDispatcher;
 import ch.uzh.ifi.hase.soprafs24.service.GameSessionService;
 import ch.uzh.ifi.hase.soprafs24.websocket.GameSessionErrorMessage;
 import ch.uzh.ifi.hase.soprafs24.websocket.PlayerAction;
 import ch.uzh.ifi.hase.soprafs24.websocket.PlayerActionResult;
+import ch.uzh.ifi.hase.soprafs24.websocket.StompPrincipal;
 
 /**
  * Game Session Controller This class is responsible for handling websocket
@@ -22,16 +33,31 @@ import ch.uzh.ifi.hase.soprafs24.websocket.PlayerActionResult;
 @Controller
 public class GameSessionController {
 
+    // per-user error destination for connections authenticated at CONNECT,
+    // clients subscribe to "/user" + USER_ERROR_DESTINATION
+    public static final String USER_ERROR_DESTINATION = "/game/topic/errors";
+
     // private final Logger log = LoggerFactory.getLogger(GameSessionController.class);
     private final AppService appService;
     private final GameSessionService gameSessionService;
+    private final GameActionDispatcher gameActionDispatcher;
+    // errors sent to clients, per code
+    private final Map<GameErrorCode, Counter> errorCounters = new EnumMap<>(GameErrorCode.class);
 
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
-    public GameSessionController(AppService appService, GameSessionService gameSessionService) {
+    public GameSessionController(AppService appService, GameSessionService gameSessionService,
+            GameActionDispatcher gameActionDispatcher, MeterRegistry meterRegistry) {
         this.appService = appService;
         this.gameSessionService = gameSessionService;
+        this.gameActionDispatcher = gameActionDispatcher;
+        for (GameErrorCode code : GameErrorCode.values()) {
+            errorCounters.put(code, Counter.builder("game.actions.rejected")
+                    .description("Player actions answered with an error")
+                    .tag("code", code.name())
+                    .register(meterRegistry));
+        }
     }
 
     @MessageMapping("/game/player-action")
@@ -39,46 +65,73 @@ public class GameSessionController {
         // log.info("Received WebSocket message - Action Type: {}", playerAction.getActionType());
         // log.info("Game Token: {}", playerAction.getGameSessionToken());
 
-        // Check if the user is authenticated
-        String authToken = headerAccessor.getFirstNativeHeader("auth-token");
-        // log.info("Auth Token: {}", authToken);
+        // Connections authenticated at CONNECT carry a principal, the user is looked up by its id
+        StompPrincipal principal = headerAccessor.getUser() instanceof StompPrincipal
+                ? (StompPrincipal) headerAccessor.getUser()
+                : null;
+        String authToken = null;
+        User user;
+        if (principal != null) {
+            user = appService.getLoggedInUser(principal.getUserId());
+            if (user == null) {
+                sendError(principal, null, GameErrorCode.INVALID_AUTH_TOKEN, "Session has ended, please log in again");
+                return;
+            }
+        } else {
+            // Check if the user is authenticated
+            authToken = headerAccessor.getFirstNativeHeader(StompAuthChannelInterceptor.AUTH_TOKEN_HEADER);
+            // log.info("Auth Token: {}", authToken);
 
-        if (!appService.isUserTokenValid(authToken)) {
-            // log.error("Invalid auth token");
-            GameSessionErrorMessage errorMessage = new GameSessionErrorMessage();
-            errorMessage.setErrorMessage("Invalid auth token");
-            messagingTemplate.convertAndSend("/game/topic/user/" + authToken, errorMessage);
-            return;
+            if (!appService.isUserTokenValid(authToken)) {
+                // log.error("Invalid auth token");
+                sendError(principal, authToken, GameErrorCode.INVALID_AUTH_TOKEN, "Invalid auth token");
+                return;
+            }
+            // Get the user from the token
+            user = appService.getUserByToken(authToken);
         }
-        // Get the user from the token
-        User user = appService.getUserByToken(authToken);
         // log.info("User found: {}", user.getUsername());
 
         // Check if the game session token is valid
         String gsToken = playerAction.getGameSessionToken();
         if (!appService.isGameTokenValid(gsToken)) {
-            GameSessionErrorMessage errorMessage = new GameSessionErrorMessage();
-            errorMessage.setErrorMessage("Invalid game session token");
-            messagingTemplate.convertAndSend("/game/topic/user/" + authToken, errorMessage);
+            sendError(principal, authToken, GameErrorCode.INVALID_GAME_TOKEN, "Invalid game session token");
             return;
         }
         // Get game session from the token
         GameSession gameSession = appService.getGameSessionByGameToken(gsToken);
 
-        // Handle the player action
-        try {
-            PlayerActionResult result = gameSessionService.handlePlayerAction(user, playerAction, gameSession);
-            // log.info("Action processed successfully");
-            if (result != null) {
-                messagingTemplate.convertAndSend("/game/topic/" + gsToken, result);
+        // Handle the player action on the thread of its game, after the actions received before it
+        String errorToken = authToken;
+        gameActionDispatcher.execute(gsToken, () -> {
+            try {
+                PlayerActionResult result = gameSessionService.handlePlayerAction(user, playerAction, gameSession);
+                // log.info("Action processed successfully");
+                if (result != null) {
+                    messagingTemplate.convertAndSend("/game/topic/" + gsToken, result);
+                }
+            } catch (GameRuleViolation e) {
+                sendError(principal, errorToken, e.getCode(),
+                        "An error occurred while processing the action: " + e.getMessage());
+            } catch (Exception e) {
+                // log.error("Error processing action: {}", e.getMessage());
+                sendError(principal, errorToken, GameErrorCode.INTERNAL_ERROR,
+                        "An error occurred while processing the action: " + e.getMessage());
             }
-        } catch (Exception e) {
-            // log.error("Error processing action: {}", e.getMessage());
-            GameSessionErrorMessage errorMessage = new GameSessionErrorMessage();
-            errorMessage.setErrorMessage("An error occurred while processing the action: " + e.getMessage());
+        });
+
+    }
+
+    private void sendError(StompPrincipal principal, String authToken, GameErrorCode code, String message) {
+        errorCounters.get(code).increment();
+        GameSessionErrorMessage errorMessage = new GameSessionErrorMessage();
+        errorMessage.setErrorCode(code);
+        errorMessage.setErrorMessage(message);
+        if (principal != null) {
+            messagingTemplate.convertAndSendToUser(principal.getName(), USER_ERROR_DESTINATION, errorMessage);
+        } else {
             messagingTemplate.convertAndSend("/game/topic/user/" + authToken, errorMessage);
         }
-
     }
 
 }
@@ -0,0 +1,45 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+/**
+ * Avatar image of a user. It is kept out of the USER table so that loading a
+ * user (token checks, game actions, leaderboard) never reads the image, the
+ * blob is only fetched when the avatar itself is requested.
+ */
+@Entity
+@Table(name = "AVATAR_BLOB")
+public class AvatarBlob implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // shares the id of the owning user
+    @Id
+    private Long userId;
+
+    @Lob
+    @Column(nullable = false)
+    private byte[] data;
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
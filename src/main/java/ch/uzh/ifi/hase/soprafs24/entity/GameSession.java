@@ -1,9 +1,14 @@
 package ch.uzh.ifi.hase.soprafs24.entity;
 
 import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -13,6 +18,7 @@ import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
 import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.constant.VideoStatus;
 
 @Entity
 @Table(name = "GameSession")
@@ -31,9 +37,13 @@ public class GameSession implements Serializable {
     @JoinColumn(name = "creator_id", nullable = false)
     private User creator;
 
-    @ManyToOne
-    @JoinColumn(name = "current_player_id", nullable = true)
-    private Player currentPlayerTurn;
+    // player ids in the order they give their hints, the cursor points at the current turn
+    @Convert(converter = PlayerIdListConverter.class)
+    @Column(nullable = true, length = 1000)
+    private List<Long> turnOrder = new ArrayList<>();
+
+    @Column(nullable = false)
+    private int turnCursor;
 
     @Column(nullable = true)
     private String twilioRoomSid;
@@ -41,14 +51,23 @@ public class GameSession implements Serializable {
     @Column(nullable = true, length = 1000)
     private String twilioVideoChatToken;
 
+    @Column(nullable = true)
+    private VideoStatus videoStatus; // the room is created in the background, see VideoProvisioner
+
     @Column(nullable = true)
     private GameState currentState;
 
     @Column(nullable = true)
     private String secretWord; //secret word to be given to non-chameleon players
 
+    @Column(nullable = true)
+    private String wordCategory; // chosen by the creator, null for words of any category
+
+    @Column(nullable = true)
+    private Instant votingDeadline; // end of the current voting phase, kept across restarts
+
     @ElementCollection
-    private Map<Long, Long> votes; //Map<UserId, UserId>
+    private Map<Long, Long> votes = new HashMap<>(); //Map<UserId, UserId>, voter -> accused
 
     // Getters and Setters
     public Long getId() {
@@ -92,6 +111,22 @@ public class GameSession implements Serializable {
         this.twilioRoomSid = twilioRoomSid;
     }
 
+    public VideoStatus getVideoStatus() {
+        return videoStatus;
+    }
+
+    public void setVideoStatus(VideoStatus videoStatus) {
+        this.videoStatus = videoStatus;
+    }
+
+    public String getWordCategory() {
+        return wordCategory;
+    }
+
+    public void setWordCategory(String wordCategory) {
+        this.wordCategory = wordCategory;
+    }
+
     public GameState getCurrentState() {
         return currentState;
     }
@@ -108,6 +143,14 @@ public class GameSession implements Serializable {
         this.secretWord = secretWord;
     }
 
+    public Instant getVotingDeadline() {
+        return votingDeadline;
+    }
+
+    public void setVotingDeadline(Instant votingDeadline) {
+        this.votingDeadline = votingDeadline;
+    }
+
     public Map<Long, Long> getVotes() {
         return votes;
     }
@@ -116,11 +159,39 @@ public class GameSession implements Serializable {
         this.votes = votes;
     }
 
-    public Player getCurrentPlayerTurn() {
-        return currentPlayerTurn;
+    public List<Long> getTurnOrder() {
+        return turnOrder;
+    }
+
+    public void setTurnOrder(List<Long> turnOrder) {
+        this.turnOrder = turnOrder;
+    }
+
+    public int getTurnCursor() {
+        return turnCursor;
+    }
+
+    public void setTurnCursor(int turnCursor) {
+        this.turnCursor = turnCursor;
+    }
+
+    // id of the player whose turn it is, null before the round or once everybody gave a hint
+    public Long getCurrentTurnPlayerId() {
+        if (turnOrder == null || turnCursor >= turnOrder.size()) {
+            return null;
+        }
+        return turnOrder.get(turnCursor);
+    }
+
+    // ids of the players that still have to give a hint, the current one included
+    public List<Long> getRemainingTurnPlayerIds() {
+        if (turnOrder == null) {
+            return List.of();
+        }
+        return List.copyOf(turnOrder.subList(Math.min(turnCursor, turnOrder.size()), turnOrder.size()));
     }
 
-    public void setCurrentPlayerTurn(Player currentPlayerTurn) {
-        this.currentPlayerTurn = currentPlayerTurn;
+    public void advanceTurn() {
+        turnCursor++;
     }
 }
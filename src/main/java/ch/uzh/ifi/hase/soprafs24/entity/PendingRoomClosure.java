@@ -0,0 +1,65 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A video room that still has to be closed. Written in the transaction that
+ * ends the game, so a room whose game is gone is never forgotten, not even
+ * across a crash, and deleted once the room is closed.
+ */
+@Entity
+@Table(name = "PENDING_ROOM_CLOSURE")
+public class PendingRoomClosure implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    private String roomSid;
+
+    @Column(nullable = false)
+    private Instant enqueuedAt;
+
+    @Column(nullable = false)
+    private Instant nextAttemptAt;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    public String getRoomSid() {
+        return roomSid;
+    }
+
+    public void setRoomSid(String roomSid) {
+        this.roomSid = roomSid;
+    }
+
+    public Instant getEnqueuedAt() {
+        return enqueuedAt;
+    }
+
+    public void setEnqueuedAt(Instant enqueuedAt) {
+        this.enqueuedAt = enqueuedAt;
+    }
+
+    public Instant getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(Instant nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+}
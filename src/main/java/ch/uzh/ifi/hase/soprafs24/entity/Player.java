@@ -29,14 +29,6 @@ public class Player implements Serializable {
     @Column(nullable = false)
     private boolean isChameleon;
 
-    @ManyToOne
-    @JoinColumn(name = "next_player_id")
-    private Player nextPlayer;
-
-    @ManyToOne
-    @JoinColumn(name = "accused_player_id")
-    private Player currentAccusedPlayer;
-
     private String givenHint;
 
     @Column(nullable = true, length = 1000)
@@ -67,14 +59,6 @@ public class Player implements Serializable {
         this.gameSession = gameSession;
     }
 
-    public Player getCurrentAccusedPlayer() {
-        return currentAccusedPlayer;
-    }
-
-    public void setCurrentAccusedPlayer(Player currentAccusedPlayer) {
-        this.currentAccusedPlayer = currentAccusedPlayer;
-    }
-
     public boolean getIsChameleon() {
         return isChameleon;
     }
@@ -91,14 +75,6 @@ public class Player implements Serializable {
         this.givenHint = givenHint;
     }
 
-    public Player getNextPlayer() {
-        return nextPlayer;
-    }
-
-    public void setNextPlayer(Player nextPlayer) {
-        this.nextPlayer = nextPlayer;
-    }
-
     public String getTwilioToken() {
         return twilioToken;
     }
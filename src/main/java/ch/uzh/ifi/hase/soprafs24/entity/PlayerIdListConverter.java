@@ -0,0 +1,42 @@
+package ch.uzh.ifi.hase.soprafs24.entity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * Stores a list of player ids as a single comma separated column, e.g. the
+ * turn order of a round as "12,7,31".
+ */
+@Converter
+public class PlayerIdListConverter implements AttributeConverter<List<Long>, String> {
+
+    @Override
+    public String convertToDatabaseColumn(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return null;
+        }
+        StringBuilder column = new StringBuilder();
+        for (Long id : ids) {
+            if (column.length() > 0) {
+                column.append(',');
+            }
+            column.append(id);
+        }
+        return column.toString();
+    }
+
+    @Override
+    public List<Long> convertToEntityAttribute(String column) {
+        List<Long> ids = new ArrayList<>();
+        if (column == null || column.isEmpty()) {
+            return ids;
+        }
+        for (String id : column.split(",")) {
+            ids.add(Long.valueOf(id));
+        }
+        return ids;
+    }
+}
@@ -7,7 +7,6 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
-import javax.persistence.Lob;
 import javax.persistence.Table;
 
 /**
@@ -39,9 +38,6 @@ public class User implements Serializable {
     @Column(nullable = true, unique = true)
     private String token;
 
-    @Lob
-    private byte[] avatar;
-
     // @Column(nullable = false)
     // private UserStatus status;
     @Column(nullable = true)
@@ -50,6 +46,10 @@ public class User implements Serializable {
     @Column(nullable = true)
     private int roundsPlayed;
 
+    // content hash of the current avatar (see AvatarBlob), null if none was uploaded
+    @Column(nullable = true)
+    private String avatarVersion;
+
     public Long getId() {
         return id;
     }
@@ -104,6 +104,14 @@ public class User implements Serializable {
         this.roundsPlayed = roundsPlayed;
     }
 
+    public String getAvatarVersion() {
+        return avatarVersion;
+    }
+
+    public void setAvatarVersion(String avatarVersion) {
+        this.avatarVersion = avatarVersion;
+    }
+
     // public UserStatus getStatus() {
     //   return status;
     // }
@@ -126,12 +134,4 @@ public class User implements Serializable {
     public int hashCode() {
         return Objects.hash(id);
     }
-
-    public byte[] getAvatar() {
-        return avatar;
-    }
-
-    public void setAvatar(byte[] avatar) {
-        this.avatar = avatar;
-    }
 }
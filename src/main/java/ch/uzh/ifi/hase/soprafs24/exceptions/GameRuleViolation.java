@@ -0,0 +1,27 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameErrorCode;
+
+/**
+ * Rejects a player action that breaks a rule of the game, e.g. a hint out of
+ * turn. These are expected and frequent, so no stack trace is filled in; the
+ * code tells the client what went wrong.
+ */
+public class GameRuleViolation extends IllegalStateException {
+
+    private final GameErrorCode code;
+
+    public GameRuleViolation(GameErrorCode code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    public GameErrorCode getCode() {
+        return code;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
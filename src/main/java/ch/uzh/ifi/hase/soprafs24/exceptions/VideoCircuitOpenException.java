@@ -0,0 +1,23 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+import java.time.Duration;
+
+/**
+ * The call was refused without reaching the video provider because its
+ * circuit is open. Says nothing new about the provider, callers retrying on
+ * their own should wait for retryAfter rather than count it as a failure.
+ */
+public class VideoCircuitOpenException extends VideoUnavailableException {
+
+    private final Duration retryAfter;
+
+    public VideoCircuitOpenException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    // how long calls will still be refused
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
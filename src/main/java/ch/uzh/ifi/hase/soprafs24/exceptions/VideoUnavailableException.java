@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.exceptions;
+
+/**
+ * The video provider could not be called or did not answer in time. Games
+ * carry on without video until it is available again.
+ */
+public class VideoUnavailableException extends RuntimeException {
+
+    public VideoUnavailableException(String message) {
+        super(message);
+    }
+
+    public VideoUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
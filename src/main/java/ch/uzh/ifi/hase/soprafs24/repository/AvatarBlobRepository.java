@@ -0,0 +1,10 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.AvatarBlob;
+
+@Repository("avatarBlobRepository")
+public interface AvatarBlobRepository extends JpaRepository<AvatarBlob, Long> {
+}
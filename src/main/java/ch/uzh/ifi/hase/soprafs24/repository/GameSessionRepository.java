@@ -1,10 +1,12 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
 import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
 
 @Repository("gameSessionRepository")
@@ -12,4 +14,6 @@ public interface GameSessionRepository extends JpaRepository<GameSession, Long>
     Optional<GameSession> findByGameToken(String gameToken);
 
     boolean existsByGameToken(String gameToken);
+
+    List<GameSession> findByCurrentState(GameState currentState);
 }
\ No newline at end of file
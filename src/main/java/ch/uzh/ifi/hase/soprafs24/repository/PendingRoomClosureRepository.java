@@ -0,0 +1,16 @@
+package ch.uzh.ifi.hase.soprafs24.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import ch.uzh.ifi.hase.soprafs24.entity.PendingRoomClosure;
+
+@Repository("pendingRoomClosureRepository")
+public interface PendingRoomClosureRepository extends JpaRepository<PendingRoomClosure, String> {
+    // closures that are due, the longest waiting first
+    List<PendingRoomClosure> findByNextAttemptAtLessThanEqualOrderByNextAttemptAt(Instant now, Pageable pageable);
+}
@@ -3,7 +3,10 @@ package ch.uzh.ifi.hase.soprafs24.repository;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
@@ -13,7 +16,16 @@ import ch.uzh.ifi.hase.soprafs24.entity.User;
 @Repository("playerRepository")
 public interface PlayerRepository extends JpaRepository<Player, Long> {
     List<Player> findByUser(User user);
+
+    // the users come with the players instead of one select per player
+    @EntityGraph(attributePaths = {"user"})
     List<Player> findByGameSession(GameSession gameSession);
+
+    // everything a live game needs in a single select: players, users, the game and its creator
+    @Query("SELECT p FROM Player p JOIN FETCH p.user JOIN FETCH p.gameSession g JOIN FETCH g.creator"
+            + " WHERE g.gameToken = :gameToken")
+    List<Player> findWithUsersByGameToken(@Param("gameToken") String gameToken);
+
     Optional<Player> findByUserAndGameSession(User user, GameSession gameSession);
     boolean existsByUserAndGameSession(User user, GameSession gameSession);
 }
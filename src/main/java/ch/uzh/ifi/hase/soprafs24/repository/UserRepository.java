@@ -1,8 +1,12 @@
 package ch.uzh.ifi.hase.soprafs24.repository;
 
+import java.util.Collection;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import ch.uzh.ifi.hase.soprafs24.entity.User;
@@ -17,4 +21,18 @@ public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByToken(String token);
 
     Optional<User> findByToken(String token);
+
+    // the increments run in the database, so concurrent games never lose an update
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE User u SET u.roundsPlayed = u.roundsPlayed + 1 WHERE u.id IN :ids")
+    int incrementRoundsPlayed(@Param("ids") Collection<Long> ids);
+
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE User u SET u.wins = u.wins + 1 WHERE u.id IN :ids")
+    int incrementWins(@Param("ids") Collection<Long> ids);
+
+    // only the one column, the other columns of a cached user snapshot may be stale
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE User u SET u.avatarVersion = :version WHERE u.id = :id")
+    int updateAvatarVersion(@Param("id") Long id, @Param("version") String version);
 }
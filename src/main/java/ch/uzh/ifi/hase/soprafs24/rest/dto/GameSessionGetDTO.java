@@ -1,6 +1,7 @@
 package ch.uzh.ifi.hase.soprafs24.rest.dto;
 
 import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.constant.VideoStatus;
 
 public class GameSessionGetDTO {
 
@@ -8,6 +9,8 @@ public class GameSessionGetDTO {
     private String gameToken;
     private String twilioVideoChatToken;
     private String twilioRoomSid;
+    private VideoStatus videoStatus;
+    private String wordCategory;
     private String role;
     private String secretWord;
     private GameState gameState;
@@ -46,6 +49,22 @@ public class GameSessionGetDTO {
         this.twilioRoomSid = twilioRoomSid;
     }
 
+    public VideoStatus getVideoStatus() {
+        return videoStatus;
+    }
+
+    public void setVideoStatus(VideoStatus videoStatus) {
+        this.videoStatus = videoStatus;
+    }
+
+    public String getWordCategory() {
+        return wordCategory;
+    }
+
+    public void setWordCategory(String wordCategory) {
+        this.wordCategory = wordCategory;
+    }
+
     public String getRole() {
         return role;
     }
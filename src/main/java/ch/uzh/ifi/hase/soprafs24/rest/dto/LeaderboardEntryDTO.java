@@ -1,12 +1,22 @@
 package ch.uzh.ifi.hase.soprafs24.rest.dto;
 
 public class LeaderboardEntryDTO {
+    private int rank;
     private Long id;
     private String username;
     private int wins;
     private int roundsPlayed;
     private double winRate;
-    private byte[] avatar;
+    private String avatarUrl;
+    private String avatarVersion;
+
+    public int getRank() {
+        return rank;
+    }
+
+    public void setRank(int rank) {
+        this.rank = rank;
+    }
 
     public Long getId() {
         return id;
@@ -48,11 +58,19 @@ public class LeaderboardEntryDTO {
         this.winRate = winRate;
     }
 
-    public byte[] getAvatar() {
-        return avatar;
+    public String getAvatarUrl() {
+        return avatarUrl;
+    }
+
+    public void setAvatarUrl(String avatarUrl) {
+        this.avatarUrl = avatarUrl;
+    }
+
+    public String getAvatarVersion() {
+        return avatarVersion;
     }
 
-    public void setAvatar(byte[] avatar) {
-        this.avatar = avatar;
+    public void setAvatarVersion(String avatarVersion) {
+        this.avatarVersion = avatarVersion;
     }
 }
\ No newline at end of file
@@ -10,7 +10,8 @@ public class UserGetDTO {
   private String token;
   private int wins;
   private int roundsPlayed;
-  private byte[] avatar;
+  private String avatarUrl;
+  private String avatarVersion;
 
   public Long getId() {
     return id;
@@ -52,12 +53,20 @@ public class UserGetDTO {
     this.roundsPlayed = roundsPlayed;
   }
 
-    public byte[] getAvatar() {
-        return avatar;
-    }
+  public String getAvatarUrl() {
+    return avatarUrl;
+  }
+
+  public void setAvatarUrl(String avatarUrl) {
+    this.avatarUrl = avatarUrl;
+  }
 
-    public void setAvatar(byte[] avatar) {
-        this.avatar = avatar;
-    }
+  public String getAvatarVersion() {
+    return avatarVersion;
+  }
+
+  public void setAvatarVersion(String avatarVersion) {
+    this.avatarVersion = avatarVersion;
+  }
 
 }
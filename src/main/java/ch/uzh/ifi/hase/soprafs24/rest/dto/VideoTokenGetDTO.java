@@ -0,0 +1,32 @@
+package ch.uzh.ifi.hase.soprafs24.rest.dto;
+
+public class VideoTokenGetDTO {
+    private String roomSid;
+    private String token;
+    // epoch millis
+    private long expiresAt;
+
+    public String getRoomSid() {
+        return roomSid;
+    }
+
+    public void setRoomSid(String roomSid) {
+        this.roomSid = roomSid;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,19 @@
+package ch.uzh.ifi.hase.soprafs24.rest.mapper;
+
+/**
+ * Builds the avatar URLs handed out in DTOs. The version (content hash) is part
+ * of the URL, so a new upload yields a new URL and the image can be cached by
+ * clients for a long time.
+ */
+public final class AvatarUrls {
+
+    private AvatarUrls() {
+    }
+
+    public static String of(Long userId, String avatarVersion) {
+        if (userId == null || avatarVersion == null) {
+            return null;
+        }
+        return "/users/" + userId + "/avatar?v=" + avatarVersion;
+    }
+}
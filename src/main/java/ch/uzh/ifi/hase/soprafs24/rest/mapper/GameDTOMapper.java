@@ -29,7 +29,10 @@ public interface GameDTOMapper {
   @Mapping(target = "gameToken", source = "gameSession.gameToken")
   @Mapping(target = "twilioVideoChatToken", source = "player.twilioToken")
   @Mapping(target = "gameState", source = "gameSession.currentState")
-  @Mapping(target = "currentTurn", source = "gameSession.currentPlayerTurn.user.username")
+  @Mapping(target = "videoStatus", source = "gameSession.videoStatus")
+  @Mapping(target = "wordCategory", source = "gameSession.wordCategory")
+  // the turn order is only known to the live game, see AppService.getCurrentTurnPlayer
+  @Mapping(target = "currentTurn", ignore = true)
   @Mapping(target = "role", expression = "java(player.getIsChameleon() ? \"CHAMELEON\" : \"NORMAL\")")
   @Mapping(target = "admin", expression = "java(currentUser.getId().equals(gameSession.getCreator().getId()))")
   GameSessionGetDTO convertEntityToGameSessionGetDTO(GameSession gameSession, Player player, User currentUser);
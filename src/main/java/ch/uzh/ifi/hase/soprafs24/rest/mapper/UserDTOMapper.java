@@ -19,7 +19,7 @@ import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
  * Always created one mapper for getting information (GET) and one mapper for
  * creating information (POST).
  */
-@Mapper
+@Mapper(imports = AvatarUrls.class)
 public interface UserDTOMapper {
 
   UserDTOMapper INSTANCE = Mappers.getMapper(UserDTOMapper.class);
@@ -30,13 +30,14 @@ public interface UserDTOMapper {
   @Mapping(target = "token", ignore = true)  // Token is set during login
   @Mapping(target = "wins", ignore = true)
   @Mapping(target = "roundsPlayed", ignore = true)
-  @Mapping(target = "avatar", ignore = true)
+  @Mapping(target = "avatarVersion", ignore = true)
   User convertUserPostDTOtoEntity(UserPostDTO userPostDTO);
 
   @Mapping(source = "id", target = "id")
   @Mapping(source = "username", target = "username")
   @Mapping(source = "wins", target = "wins")
   @Mapping(source = "roundsPlayed", target = "roundsPlayed")
-  @Mapping(source = "avatar", target = "avatar")
+  @Mapping(source = "avatarVersion", target = "avatarVersion")
+  @Mapping(target = "avatarUrl", expression = "java(AvatarUrls.of(user.getId(), user.getAvatarVersion()))")
   UserGetDTO convertEntityToUserGetDTO(User user);
 }
@@ -1,5 +1,7 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
 import java.util.UUID;
 
@@ -8,16 +10,24 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
+import ch.uzh.ifi.hase.soprafs24.entity.AvatarBlob;
 import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
 import ch.uzh.ifi.hase.soprafs24.entity.Player;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.AvatarBlobRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
 import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.constant.VideoStatus;
 
 
 /**
@@ -37,17 +47,48 @@ public class AppService {
   private final GameSessionRepository gameSessionRepository;
   private final PlayerRepository playerRepository;
   private final TwilioService twilioService;
+  private final UserTokenCache userTokenCache;
+  private final AvatarBlobRepository avatarBlobRepository;
+  private final LeaderboardService leaderboardService;
+  private final LiveGameRegistry liveGames;
+  private final GameStateWriter gameStateWriter;
+  private final GameActionDispatcher gameActionDispatcher;
+  private final VideoProvisioner videoProvisioner;
+  private final RoomCloseQueue roomCloseQueue;
+  private final WordService wordService;
+  // for the writes made on the dispatcher thread of a game, see addToGameSession
+  private final TransactionTemplate transactionTemplate;
 
 
   @Autowired
   public AppService(UserRepository userRepository,
                     GameSessionRepository gameSessionRepository,
                     PlayerRepository playerRepository,
-                    TwilioService twilioService) {
+                    TwilioService twilioService,
+                    UserTokenCache userTokenCache,
+                    AvatarBlobRepository avatarBlobRepository,
+                    LeaderboardService leaderboardService,
+                    LiveGameRegistry liveGames,
+                    GameStateWriter gameStateWriter,
+                    GameActionDispatcher gameActionDispatcher,
+                    VideoProvisioner videoProvisioner,
+                    RoomCloseQueue roomCloseQueue,
+                    WordService wordService,
+                    PlatformTransactionManager transactionManager) {
     this.userRepository = userRepository;
     this.gameSessionRepository = gameSessionRepository;
     this.playerRepository = playerRepository;
     this.twilioService = twilioService;
+    this.userTokenCache = userTokenCache;
+    this.avatarBlobRepository = avatarBlobRepository;
+    this.leaderboardService = leaderboardService;
+    this.liveGames = liveGames;
+    this.gameStateWriter = gameStateWriter;
+    this.gameActionDispatcher = gameActionDispatcher;
+    this.videoProvisioner = videoProvisioner;
+    this.roomCloseQueue = roomCloseQueue;
+    this.wordService = wordService;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
   }
 
   public List<User> getUsers() {
@@ -66,6 +107,9 @@ public class AppService {
       userRepository.save(user);
     }
     userRepository.save(user);
+    // refresh the cached snapshot for this token
+    userTokenCache.invalidate(user.getToken());
+    userTokenCache.put(user);
     return user;
   }
 
@@ -76,6 +120,7 @@ public class AppService {
     User user = userRepository.findByToken(token)
         .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
     
+    userTokenCache.invalidate(token);
     user.setToken(null);
     userRepository.save(user);
   }
@@ -89,6 +134,7 @@ public class AppService {
     // flush() is called
     newUser = userRepository.save(newUser);
     userRepository.flush();
+    leaderboardService.upsert(newUser);
 
     log.debug("Created Information for User: {}", newUser);
     return newUser;
@@ -124,8 +170,24 @@ public class AppService {
   }
 
   public User getUserByToken(String token) {
-    // Assuming you have a token stored in the user entity, find the user by token
-    return userRepository.findByToken(token).orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found"));
+    User user = findUserByToken(token);
+    if (user == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User not found");
+    }
+    return user;
+  }
+
+  // the logged in user with this id, or null once it has logged out
+  public User getLoggedInUser(Long userId) {
+    if (userId == null) {
+      return null;
+    }
+    User user = userTokenCache.getByUserId(userId);
+    if (user == null) {
+      user = userRepository.findById(userId).filter(u -> u.getToken() != null).orElse(null);
+      userTokenCache.put(user);
+    }
+    return user;
   }
 
   // get User by Username
@@ -135,99 +197,146 @@ public class AppService {
 
   // check if user token (authToken) is valid
   public boolean isUserTokenValid(String token){
-    return userRepository.existsByToken(token);
+    return findUserByToken(token) != null;
+  }
+
+  // resolve the user owning the token, going to the database only on a cache miss
+  private User findUserByToken(String token) {
+    if (token == null) {
+      return null;
+    }
+    User user = userTokenCache.get(token);
+    if (user == null) {
+      user = userRepository.findByToken(token).orElse(null);
+      userTokenCache.put(user);
+    }
+    return user;
   }
 
   // check if game token is valid
   public boolean isGameTokenValid(String gameToken){
-    return gameSessionRepository.existsByGameToken(gameToken);
+    return liveGames.get(gameToken) != null;
   }
 
-  // get game session by game token
+  // get game session by game token, this is the live in-memory state of the game
   public GameSession getGameSessionByGameToken(String gameToken){
-    return gameSessionRepository.findByGameToken(gameToken).orElseThrow(
-      () -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Game not found")
-    );
+    return getLiveGame(gameToken).getGameSession();
+  }
+
+  private LiveGameSession getLiveGame(String gameToken) {
+    LiveGameSession live = liveGames.get(gameToken);
+    if (live == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Game not found");
+    }
+    return live;
   }
 
   //// createGameSession ////
   public GameSession createGameSession(User creator) {
+    return createGameSession(creator, null);
+  }
+
+  // the secret words of the game are taken from the category, or from all words if it is null
+  public GameSession createGameSession(User creator, String wordCategory) {
+    if (wordCategory != null && !wordService.hasCategory(wordCategory)) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown word category: " + wordCategory);
+    }
     // create GameSession entity
     GameSession gameSession = new GameSession();
     gameSession.setCreator(creator);
     gameSession.setGameToken(UUID.randomUUID().toString());
     gameSession.setCurrentState(GameState.WAITING_FOR_PLAYERS);
-    
-    // Create Twilio room
-    TwilioService.TwilioRoomInfo roomInfo = twilioService.createVideoRoom(gameSession.getGameToken());
-    gameSession.setTwilioRoomSid(roomInfo.roomSid());
+    gameSession.setWordCategory(wordCategory);
+    // the video room is created in the background, the players get their tokens once it is ready
+    VideoStatus videoStatus = videoProvisioner.initialVideoStatus();
+    gameSession.setVideoStatus(videoStatus);
 
     // Save game session
     gameSession = gameSessionRepository.save(gameSession);
     gameSessionRepository.flush();
-    
-    String creatorToken = twilioService.generateToken(creator.getUsername(), roomInfo.roomSid());
 
     // Create first player (creator)
     Player player = new Player();
     player.setUser(creator);
     player.setGameSession(gameSession);
-    player.setTwilioToken(creatorToken);
     playerRepository.save(player);
     playerRepository.flush();
+
+    if (videoStatus != VideoStatus.DISABLED) {
+      videoProvisioner.provision(gameSession.getGameToken());
+    }
     
     return gameSession;
   }
 
-  // add user to game session, making them a player
+  public List<String> getWordCategories() {
+    return wordService.getCategories();
+  }
+
+  // add user to game session, making them a player. Not transactional: the caller must not
+  // hold a connection while it waits for the game's thread, the player is stored there in a
+  // transaction of its own
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public Player addToGameSession(User participant, GameSession gameSession) {
-    // if user is already a player in the game session, return it
-    Player player = playerRepository.findByUserAndGameSession(participant, gameSession)
-                                    .orElse(null);
-    if (player != null) {
-        return player;
-    }
-    // get list of players in game session
-    List<Player> players = playerRepository.findByGameSession(gameSession);
-    // check that the game is not full
-    if (players.size() > 8) {
+    LiveGameSession live = getLiveGame(gameSession.getGameToken());
+    // the checks and the join are one task of the game, ordered with the other joins,
+    // START_GAME and the video room becoming ready
+    return gameActionDispatcher.call(gameSession.getGameToken(), () -> {
+      // if user is already a player in the game session, return it
+      Player existing = live.findPlayer(participant);
+      if (existing != null) {
+        return existing;
+      }
+      GameSession liveSession = live.getGameSession();
+      if (liveSession.getCurrentState() != GameState.WAITING_FOR_PLAYERS) {
+        throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Game session is not accepting players");
+      }
+      // check that the game is not full
+      if (live.getPlayers().size() > 8) {
         throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Game session is full");
-    }
-    
-    // Generate a new token for this participant to join the SAME room
-    String newToken = twilioService.generateToken(participant.getUsername(), gameSession.getTwilioRoomSid());
-    
-    // create player entity
-    player = new Player();
-    player.setUser(participant);
-    player.setGameSession(gameSession);
-    player.setTwilioToken(newToken);  // Store token per player
-    
-    playerRepository.save(player);
-    // flush the changes to the database
-    playerRepository.flush();
-    System.out.println("🔍 Adding user to room with SID: " + gameSession.getTwilioRoomSid());
-    System.out.println("🔗 Generating token for: " + participant.getUsername());
-    
-    return player;
+      }
+
+      // create player entity
+      Player player = new Player();
+      player.setUser(participant);
+      player.setGameSession(liveSession);
+      // without a room yet the token is pushed once the room is ready, see VideoProvisioner
+      if (liveSession.getTwilioRoomSid() != null) {
+        // a token for this participant to join the SAME room
+        player.setTwilioToken(twilioService.generateToken(participant.getUsername(), liveSession.getTwilioRoomSid()));
+      }
+      Player saved = transactionTemplate.execute(status -> {
+        Player stored = playerRepository.save(player);
+        // flush the changes to the database
+        playerRepository.flush();
+        return stored;
+      });
+      live.addPlayer(saved);
+      return saved;
+    });
   }
+
+  // waits for the game's thread without holding a connection, see addToGameSession
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public void removeFromGameSession(User user, GameSession gameSession) {
-    Player player = playerRepository.findByUserAndGameSession(user, gameSession)
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Player not found in game session"));
-    
+    LiveGameSession live = getLiveGame(gameSession.getGameToken());
     if (user.equals(gameSession.getCreator())) {
-        // Close video room first as admin is leaving
-        twilioService.closeVideoRoom(gameSession.getTwilioRoomSid());
-        // Delete all players
-        List<Player> allPlayers = playerRepository.findByGameSession(gameSession);
-        playerRepository.deleteAll(allPlayers);
-        // Delete game session
-        gameSessionRepository.delete(gameSession);
-        gameSessionRepository.flush();
+        // the admin is leaving, the game ends
+        gameActionDispatcher.run(gameSession.getGameToken(), () -> endGame(live));
         return;
     }
-    playerRepository.delete(player);
-    playerRepository.flush();
+    // looked up and removed in one task of the game, so a concurrent leave or join cannot interleave
+    gameActionDispatcher.run(gameSession.getGameToken(), () -> {
+      Player player = live.findPlayer(user);
+      if (player == null) {
+        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Player not found in game session");
+      }
+      transactionTemplate.executeWithoutResult(status -> {
+        playerRepository.delete(player);
+        playerRepository.flush();
+      });
+      live.removePlayer(player);
+    });
   }
 
 
@@ -242,53 +351,157 @@ public class AppService {
   //   }
   // }
 
+  // waits for the game's thread without holding a connection, see addToGameSession
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
   public void endGameSession(String gameToken, User admin) {
-    GameSession gameSession = getGameSessionByGameToken(gameToken);
-    if (!gameSession.getCreator().equals(admin)) {
-        throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only the game creator can end the game");
-    }
-    
-    // Close video room
-    twilioService.closeVideoRoom(gameSession.getTwilioRoomSid());
+    LiveGameSession live = getLiveGame(gameToken);
+    gameActionDispatcher.run(gameToken, () -> {
+      if (!live.getGameSession().getCreator().equals(admin)) {
+          throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only the game creator can end the game");
+      }
+      endGame(live);
+    });
+  }
 
-    // Delete all players
-    playerRepository.deleteAll(playerRepository.findByGameSession(gameSession));
-    playerRepository.flush();
-    
-    // Delete game session
-    gameSessionRepository.delete(gameSession);
-    gameSessionRepository.flush();
+  // runs on the thread of the game, so the video room becoming ready is either
+  // seen here or sees the game ended, see VideoProvisioner
+  private void endGame(LiveGameSession live) {
+    GameSession gameSession = live.getGameSession();
+    String gameToken = gameSession.getGameToken();
+    transactionTemplate.executeWithoutResult(status -> {
+      // Close video room, in the background once this commits
+      roomCloseQueue.enqueue(gameSession.getTwilioRoomSid());
+
+      // Delete all players
+      playerRepository.deleteAll(playerRepository.findByGameSession(gameSession));
+      playerRepository.flush();
+
+      // Delete game session
+      gameStateWriter.discard(gameToken);
+      gameSessionRepository.delete(gameSession);
+      gameSessionRepository.flush();
+      // only dropped once the delete is visible, a reload before would bring the game back
+      afterCommit(() -> {
+        live.setEnded(true);
+        liveGames.evict(gameToken);
+      });
+    });
+  }
+
+  /**
+   * @return the video token of the player for the room of the game, the same
+   *         one as before unless it is about to expire
+   */
+  // waits for the game's thread without holding a connection, see addToGameSession
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public VideoTokenCache.VideoToken refreshVideoToken(User user, GameSession gameSession) {
+    LiveGameSession live = getLiveGame(gameSession.getGameToken());
+    return gameActionDispatcher.call(gameSession.getGameToken(), () -> {
+      Player player = live.findPlayer(user);
+      if (player == null) {
+        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Player not found");
+      }
+      String roomSid = live.getGameSession().getTwilioRoomSid();
+      if (roomSid == null) {
+        throw new ResponseStatusException(HttpStatus.CONFLICT, "Video room is not ready");
+      }
+      VideoTokenCache.VideoToken token = twilioService.issueToken(user.getUsername(), roomSid);
+      // only a newly signed token has to be written
+      if (!token.token().equals(player.getTwilioToken())) {
+        player.setTwilioToken(token.token());
+        gameStateWriter.schedule(live);
+      }
+      return token;
+    });
   }
 
   public boolean isUserInGameSession(User user, GameSession gameSession) {
-    return playerRepository.findByUserAndGameSession(user, gameSession).isPresent();
+    return getLiveGame(gameSession.getGameToken()).findPlayer(user) != null;
   }
 
   public List<User> getGameSessionPlayers(GameSession gameSession) {
-    List<Player> players = playerRepository.findByGameSession(gameSession);
+    List<Player> players = getLiveGame(gameSession.getGameToken()).getPlayers();
     return players.stream()
                  .map(Player::getUser)
                  .toList();
   }
 
+  // player whose turn it is to give a hint, null outside of the hint phase
+  public Player getCurrentTurnPlayer(GameSession gameSession) {
+    return getLiveGame(gameSession.getGameToken()).getCurrentTurnPlayer();
+  }
+
   public Player getPlayerByUserAndGameSession(User user, GameSession gameSession) {
-    return playerRepository.findByUserAndGameSession(user, gameSession)
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Player not found"));
+    Player player = getLiveGame(gameSession.getGameToken()).findPlayer(user);
+    if (player == null) {
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Player not found");
+    }
+    return player;
   }
 
   public void storeAvatar(User user, byte[] avatar) {
-    user.setAvatar(avatar);
-    userRepository.save(user);
+    AvatarBlob blob = new AvatarBlob();
+    blob.setUserId(user.getId());
+    blob.setData(avatar);
+    avatarBlobRepository.save(blob);
+    // the content hash doubles as version and ETag of the avatar, written with a targeted
+    // UPDATE as the user may be a stale snapshot from the token cache
+    user.setAvatarVersion(contentHash(avatar));
+    userRepository.updateAvatarVersion(user.getId(), user.getAvatarVersion());
+    userTokenCache.invalidate(user.getToken());
+    leaderboardService.updateAvatarVersion(user.getId(), user.getAvatarVersion());
   }
 
-  public void incrementRoundsPlayed(User user) {
-    user.setRoundsPlayed(user.getRoundsPlayed() + 1);
-    userRepository.save(user);
+  private static String contentHash(byte[] data) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+      StringBuilder hex = new StringBuilder();
+      // the first 8 bytes are plenty to tell two avatars of the same user apart
+      for (int i = 0; i < 8; i++) {
+        hex.append(String.format("%02x", digest[i]));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      // every JVM is required to ship SHA-256
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
   }
 
-  public void incrementWins(User user) {
-    user.setWins(user.getWins() + 1);
-    userRepository.save(user);
+  // returns the avatar of the user, or null if none was uploaded
+  public byte[] getAvatar(Long userId) {
+    return avatarBlobRepository.findById(userId)
+        .map(AvatarBlob::getData)
+        .orElse(null);
+  }
+
+  /**
+   * Counts one played round for every player and one win for every winner,
+   * with a single bulk UPDATE each. The loaded User entities are not touched,
+   * so their stats are stale afterwards.
+   */
+  public void recordGameResults(List<User> players, List<User> winners) {
+    if (!players.isEmpty()) {
+      userRepository.incrementRoundsPlayed(players.stream().map(User::getId).toList());
+    }
+    if (!winners.isEmpty()) {
+      userRepository.incrementWins(winners.stream().map(User::getId).toList());
+    }
+    for (User player : players) {
+      userTokenCache.invalidate(player.getToken());
+    }
+  }
+
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
   }
 
 }
@@ -0,0 +1,93 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CircuitBreaker stops calling a remote service that keeps failing. After
+ * failureThreshold failures in a row the circuit opens and every call is
+ * refused for openDuration. Then a single trial call is let through
+ * (half-open): if it succeeds the circuit closes again, otherwise it stays
+ * open for another openDuration.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * @return true if the call may go ahead, its outcome must then be reported
+     *         with recordSuccess, recordFailure or releasePermission
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+        }
+        return true;
+    }
+
+    // the permitted call was not made after all, e.g. because the bulkhead was full
+    public synchronized void releasePermission() {
+        trialInFlight = false;
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        trialInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+
+    // true unless the circuit is open and still waiting for its trial call
+    public synchronized boolean isCallPermitted() {
+        return state != State.OPEN || System.nanoTime() - openedAt >= openNanos;
+    }
+
+    // how long calls are still refused, the whole open duration while a trial call decides
+    public synchronized Duration getRetryAfter() {
+        if (state == State.OPEN) {
+            return Duration.ofNanos(Math.max(0, openNanos - (System.nanoTime() - openedAt)));
+        }
+        if (state == State.HALF_OPEN && trialInFlight) {
+            return Duration.ofNanos(openNanos);
+        }
+        return Duration.ZERO;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
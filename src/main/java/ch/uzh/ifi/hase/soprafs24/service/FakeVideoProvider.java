@@ -0,0 +1,53 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process stand-in for Twilio, for tests, load tests and local runs
+ * without credentials. Creating and closing a room can be slowed down by
+ * video.fake.latency-millis to behave like the remote call it replaces.
+ */
+@Component
+@ConditionalOnProperty(name = "video.provider", havingValue = "fake")
+public class FakeVideoProvider implements VideoProvider {
+
+    private final long latencyMillis;
+    private final AtomicLong rooms = new AtomicLong();
+
+    public FakeVideoProvider(@Value("${video.fake.latency-millis:0}") long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public String createRoom(String uniqueName) {
+        pause();
+        return "RMfake" + rooms.incrementAndGet();
+    }
+
+    @Override
+    public void closeRoom(String roomSid) {
+        pause();
+    }
+
+    @Override
+    public String generateToken(String identity, String roomSid, int ttlSeconds) {
+        return "fake-token:" + roomSid + ":" + identity;
+    }
+
+    private void pause() {
+        if (latencyMillis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while creating a fake video room", e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * GameActionDispatcher runs everything that reads or changes a live game on a
+ * single thread picked by the game token. The threads are striped: every game
+ * is bound to one of a fixed number of single threaded executors, so the
+ * actions of one game run one at a time and in arrival order without any
+ * locking, while different games are spread over all stripes.
+ */
+@Component
+public class GameActionDispatcher {
+
+    private final Logger log = LoggerFactory.getLogger(GameActionDispatcher.class);
+
+    private final ExecutorService[] stripes;
+    // the current thread of every stripe, used to run nested calls inline
+    private final AtomicReferenceArray<Thread> stripeThreads;
+
+    public GameActionDispatcher(@Value("${game.dispatcher.threads:0}") int threads) {
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.stripes = new ExecutorService[size];
+        this.stripeThreads = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            int index = i;
+            stripes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "game-dispatcher-" + index);
+                thread.setDaemon(true);
+                stripeThreads.set(index, thread);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Queues the task on the stripe of the game and returns immediately.
+     */
+    public void execute(String gameToken, Runnable task) {
+        stripes[indexFor(gameToken)].execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Task for game {} failed", gameToken, e);
+            }
+        });
+    }
+
+    /**
+     * Runs the task on the stripe of the game and waits for its result.
+     * Exceptions thrown by the task are rethrown to the caller.
+     */
+    public <T> T call(String gameToken, Supplier<T> task) {
+        int index = indexFor(gameToken);
+        // already on the right thread, queueing would wait for ourselves
+        if (Thread.currentThread() == stripeThreads.get(index)) {
+            return task.get();
+        }
+        try {
+            return stripes[index].submit(task::get).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for game " + gameToken, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public void run(String gameToken, Runnable task) {
+        call(gameToken, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+        for (ExecutorService stripe : stripes) {
+            stripe.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private int indexFor(String gameToken) {
+        int hash = Objects.hashCode(gameToken);
+        // spread the high bits, tokens of similar games should not share a stripe
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % stripes.length;
+    }
+}
@@ -0,0 +1,37 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ActionType;
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerAction;
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerActionResult;
+
+/**
+ * Handles one type of player action. GameSessionService checks the declared
+ * preconditions before calling handle, on the dispatcher thread of the game.
+ * Handlers that are Spring beans replace the built-in handler of their action
+ * type.
+ */
+public interface GameActionHandler {
+
+    ActionType getActionType();
+
+    // the states of the game in which the action is allowed
+    default Set<GameState> getRequiredStates() {
+        return EnumSet.allOf(GameState.class);
+    }
+
+    // true if only the creator of the game may perform the action
+    default boolean isAdminOnly() {
+        return false;
+    }
+
+    default String getInvalidStateMessage() {
+        return "Game session is not in a valid state for " + getActionType();
+    }
+
+    PlayerActionResult handle(Player player, PlayerAction action, LiveGameSession live);
+}
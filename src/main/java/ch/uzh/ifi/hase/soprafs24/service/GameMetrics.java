@@ -0,0 +1,46 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+
+/**
+ * GameMetrics exposes the in-memory state of the games as gauges. They are
+ * computed when the metrics are scraped, nothing is counted on the game
+ * threads.
+ */
+@Component
+public class GameMetrics implements MeterBinder {
+
+    private final LiveGameRegistry liveGames;
+    private final TimerService timerService;
+
+    public GameMetrics(LiveGameRegistry liveGames, TimerService timerService) {
+        this.liveGames = liveGames;
+        this.timerService = timerService;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (GameState state : GameState.values()) {
+            Gauge.builder("game.sessions.active", liveGames, games -> games.countInState(state))
+                    .description("Live games per state")
+                    .tag("state", state.name())
+                    .register(registry);
+        }
+        Gauge.builder("game.voting.deadlines.pending", liveGames, LiveGameRegistry::countVotingDeadlines)
+                .description("Voting deadlines waiting on the timer")
+                .register(registry);
+        Gauge.builder("game.timer.pending", timerService, TimerService::getPendingTimeouts)
+                .description("Timeouts of any kind waiting on the timer")
+                .register(registry);
+        Gauge.builder("game.timer.lateness.max", timerService, TimerService::getMaxLatenessMillis)
+                .description("Largest delay of a timeout behind its deadline")
+                .baseUnit("milliseconds")
+                .register(registry);
+    }
+}
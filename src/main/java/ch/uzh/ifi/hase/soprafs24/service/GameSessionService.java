@@ -1,16 +1,17 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -21,12 +22,16 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ActionType;
+import ch.uzh.ifi.hase.soprafs24.constant.GameErrorCode;
 import ch.uzh.ifi.hase.soprafs24.constant.GameState;
 import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
 import ch.uzh.ifi.hase.soprafs24.entity.Player;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
-import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
-import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
+import ch.uzh.ifi.hase.soprafs24.exceptions.GameRuleViolation;
 import ch.uzh.ifi.hase.soprafs24.websocket.PlayerAction;
 import ch.uzh.ifi.hase.soprafs24.websocket.PlayerActionResult;
 
@@ -40,54 +45,126 @@ public class GameSessionService {
 
     private final Logger log = LoggerFactory.getLogger(GameSessionService.class);
 
-    private final GameSessionRepository gameSessionRepository;
-    private final PlayerRepository playerRepository;
     private final WordService wordService;
     private final AppService appService;
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final LeaderboardService leaderboardService;
+    private final LiveGameRegistry liveGames;
+    private final GameStateWriter gameStateWriter;
+    private final GameActionDispatcher gameActionDispatcher;
+    private final TimerService timerService;
     private final SimpMessagingTemplate messagingTemplate;
-    private final Set<String> votingSessions = ConcurrentHashMap.newKeySet();
+    // handling time per action type
+    private final Map<ActionType, Timer> actionTimers = new EnumMap<>(ActionType.class);
 
     @Autowired
 
     public GameSessionService(
-            GameSessionRepository gameSessionRepository,
-            PlayerRepository playerRepository,
             WordService wordService,
             AppService appService,
-            SimpMessagingTemplate messagingTemplate) {
-        this.gameSessionRepository = gameSessionRepository;
-        this.playerRepository = playerRepository;
+            LeaderboardService leaderboardService,
+            LiveGameRegistry liveGames,
+            GameStateWriter gameStateWriter,
+            GameActionDispatcher gameActionDispatcher,
+            TimerService timerService,
+            SimpMessagingTemplate messagingTemplate,
+            MeterRegistry meterRegistry) {
         this.wordService = wordService;
         this.appService = appService;
+        this.leaderboardService = leaderboardService;
+        this.liveGames = liveGames;
+        this.gameStateWriter = gameStateWriter;
+        this.gameActionDispatcher = gameActionDispatcher;
+        this.timerService = timerService;
         this.messagingTemplate = messagingTemplate;
+        for (ActionType type : ActionType.values()) {
+            actionTimers.put(type, Timer.builder("game.actions")
+                    .description("Time to handle a player action, including rejected ones")
+                    .tag("type", type.name())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+        registerBuiltInHandlers();
     }
 
-    private static final Set<String> ADMIN_ACTIONS = Set.of(
-            "TEST_ADMIN_ACTION", "START_GAME", "START_VOTING", "END_VOTING", "NEW_GAME"
-    );
+    // the handler of each action type, looked up once per action
+    private final Map<ActionType, GameActionHandler> handlers = new EnumMap<>(ActionType.class);
+
+    private void registerBuiltInHandlers() {
+        register(new BuiltInHandler(ActionType.TEST_ACTION, false, null, null,
+                (player, action, live) -> actionResult(action)));
+        register(new BuiltInHandler(ActionType.TEST_ADMIN_ACTION, true, null, null,
+                (player, action, live) -> actionResult(action)));
+        register(new BuiltInHandler(ActionType.START_GAME, true,
+                EnumSet.of(GameState.WAITING_FOR_PLAYERS),
+                "Game session is not in a valid state to start",
+                (player, action, live) -> startGame(action, live)));
+        register(new BuiltInHandler(ActionType.NEW_GAME, true,
+                EnumSet.of(GameState.CHAMELEON_WIN, GameState.PLAYERS_WIN),
+                "Game session is not in a valid state to start a new game",
+                this::newGame));
+        register(new BuiltInHandler(ActionType.GIVE_HINT, false,
+                EnumSet.of(GameState.STARTED),
+                "Game session is not in a valid state to give a hint",
+                this::giveHint));
+        register(new BuiltInHandler(ActionType.START_VOTING, true,
+                EnumSet.of(GameState.READY_FOR_VOTING),
+                "Game session is not in a valid state to start voting",
+                (player, action, live) -> startVoting(action, live)));
+        register(new BuiltInHandler(ActionType.VOTE, false,
+                EnumSet.of(GameState.VOTING),
+                "Game session is not in a valid state to vote",
+                this::doVote));
+        register(new BuiltInHandler(ActionType.CHAMELEON_GUESS, false,
+                EnumSet.of(GameState.CHAMELEON_TURN),
+                "Game session is not in a valid state for a chameleon guess",
+                this::handleChameleonGuess));
+    }
 
-    public boolean isAdminAction(PlayerAction action) {
-        return ADMIN_ACTIONS.contains(action.getActionType());
+    /**
+     * Registers the action handlers that are defined as beans. A bean replaces
+     * the built-in handler of its action type, so the behaviour of an action
+     * can be changed without touching this service.
+     */
+    @Autowired(required = false)
+    public void setActionHandlers(List<GameActionHandler> actionHandlers) {
+        Set<ActionType> overridden = EnumSet.noneOf(ActionType.class);
+        for (GameActionHandler handler : actionHandlers) {
+            ActionType type = handler.getActionType();
+            if (!overridden.add(type)) {
+                throw new IllegalStateException("Duplicate handler for action type " + type);
+            }
+            handlers.put(type, handler);
+            log.info("Action {} is handled by {} instead of the built-in handler", type, handler.getClass().getName());
+        }
     }
 
-    public PlayerActionResult startGame(PlayerAction action, GameSession gameSession) {
-        log.info("Starting game for session: {}", gameSession.getGameToken());
-        if (gameSession.getCurrentState() != GameState.WAITING_FOR_PLAYERS) {
-            log.error("Invalid game state: {}", gameSession.getCurrentState());
-            throw new IllegalStateException("Game session is not in a valid state to start");
+    private void register(GameActionHandler handler) {
+        GameActionHandler previous = handlers.putIfAbsent(handler.getActionType(), handler);
+        if (previous != null) {
+            throw new IllegalStateException("Duplicate handler for action type " + handler.getActionType());
         }
-        List<Player> players = playerRepository.findByGameSession(gameSession);
+    }
+
+    private static PlayerActionResult actionResult(PlayerAction action) {
+        PlayerActionResult result = new PlayerActionResult();
+        result.setActionType(action.getActionType());
+        return result;
+    }
+
+    public PlayerActionResult startGame(PlayerAction action, LiveGameSession live) {
+        GameSession gameSession = live.getGameSession();
+        log.info("Starting game for session: {}", gameSession.getGameToken());
+        List<Player> players = live.getPlayers();
 
         //////////// remember to change to 4 players ///////////////////
         if (players.size() < 1) {
             ///////////////////////////////////////////////////////////////////
-            throw new IllegalStateException("Not enough players to start the game");
+            throw new GameRuleViolation(GameErrorCode.NOT_ENOUGH_PLAYERS, "Not enough players to start the game");
         }
         gameSession.setCurrentState(GameState.STARTED);
 
         // Generate and set the secret word
-        String secretWord = wordService.getRandomWord();
+        String secretWord = wordService.getRandomWord(gameSession.getWordCategory());
         gameSession.setSecretWord(secretWord);
 
         // generate random player order list
@@ -101,69 +178,96 @@ public class GameSessionService {
         List<Boolean> playerRoles = new ArrayList<>(Collections.nCopies(players.size(), false));
         playerRoles.set(0, true);
         Collections.shuffle(playerRoles);
-        // for each player set the next player and the isChameleon
+        // the turn order is kept as player ids on the game, each player gets their role
+        List<Long> turnOrder = new ArrayList<>(players.size());
         for (int i = 0; i < players.size(); i++) {
             Player currentPlayer = players.get(playerOrder.get(i));
-            // last player has no next player
-            if (i < playerRoles.size() - 1) {
-                Player nextPlayer = players.get(playerOrder.get(i + 1));
-                currentPlayer.setNextPlayer(nextPlayer);
-                log.info("Set next player for {}: {}", currentPlayer.getId(), nextPlayer.getId());
-            }
+            turnOrder.add(currentPlayer.getId());
             currentPlayer.setIsChameleon(playerRoles.get(i));
-            playerRepository.save(currentPlayer);
         }
-        // set the first player as the current player turn
-        gameSession.setCurrentPlayerTurn(players.get(playerOrder.get(0)));
-        // save and return
-        gameSessionRepository.save(gameSession);
+        // the first player in the order starts
+        gameSession.setTurnOrder(turnOrder);
+        gameSession.setTurnCursor(0);
+        // persist the new round in the background and return
+        gameStateWriter.schedule(live);
         PlayerActionResult result = new PlayerActionResult();
         result.setActionType(action.getActionType());
         return result;
     }
 
-    public PlayerActionResult startVoting(PlayerAction action, GameSession gameSession) {
-        if (gameSession.getCurrentState() != GameState.READY_FOR_VOTING) {
-            throw new IllegalStateException("Game session is not in a valid state to start voting");
-        }
-        gameSession.setCurrentState(GameState.VOTING);
-        gameSessionRepository.save(gameSession);
-
+    public PlayerActionResult startVoting(PlayerAction action, LiveGameSession live) {
+        GameSession gameSession = live.getGameSession();
         int votingDuration = 90;
         long votingStartTime = System.currentTimeMillis();
 
+        gameSession.setCurrentState(GameState.VOTING);
+        live.clearVotes();
+        // persisted with the game, so that the deadline survives a restart
+        gameSession.setVotingDeadline(Instant.ofEpochMilli(votingStartTime).plusSeconds(votingDuration));
+        gameStateWriter.schedule(live);
+
         PlayerActionResult result = new PlayerActionResult();
         result.setActionType(action.getActionType());
         result.setActionContent("{\"votingStartTime\": " + votingStartTime + ", \"votingDuration\": " + votingDuration + "}");
-        votingSessions.add(gameSession.getGameToken());
-        scheduler.schedule(() -> endVoting(gameSession.getGameToken()), votingDuration, TimeUnit.SECONDS);
+        scheduleVotingDeadline(live, TimeUnit.SECONDS.toMillis(votingDuration));
         return result;
     }
 
-    public PlayerActionResult computeVotingResult(GameSession gameSession) {
-        if (!votingSessions.remove(gameSession.getGameToken())) {
+    /**
+     * Picks up the voting phase of a game that was in VOTING when the service
+     * was restarted: the deadline is scheduled again, or voting is ended right
+     * away if the deadline passed while the service was down. Must run on the
+     * dispatcher thread of the game.
+     */
+    public void resumeVoting(String gameToken) {
+        LiveGameSession live = liveGames.get(gameToken);
+        if (live == null || live.getGameSession().getCurrentState() != GameState.VOTING
+                || live.getVotingDeadline() != null) {
+            return;
+        }
+        Instant deadline = live.getGameSession().getVotingDeadline();
+        // games that went into VOTING before deadlines were stored are treated as expired
+        long remaining = deadline == null ? 0 : Duration.between(Instant.now(), deadline).toMillis();
+        if (remaining <= 0) {
+            log.info("Voting deadline of game {} passed during restart, ending voting", gameToken);
+            endVoting(gameToken);
+        } else {
+            scheduleVotingDeadline(live, remaining);
+        }
+    }
+
+    private void scheduleVotingDeadline(LiveGameSession live, long delayMillis) {
+        // the deadline is handled like any other action of the game, never concurrently with a vote
+        String gameToken = live.getGameToken();
+        live.setVotingDeadline(timerService.schedule(
+                () -> gameActionDispatcher.execute(gameToken, () -> endVoting(gameToken)),
+                delayMillis, TimeUnit.MILLISECONDS));
+    }
+
+    public PlayerActionResult computeVotingResult(LiveGameSession live) {
+        GameSession gameSession = live.getGameSession();
+        if (gameSession.getCurrentState() != GameState.VOTING) {
             log.info("Voting session already ended or not found for game token: {}", gameSession.getGameToken());
             return null;
         }
-        List<Player> players = playerRepository.findByGameSession(gameSession);
-        Map<Player, Long> voteCount = players.stream()
-                .filter(p -> p.getCurrentAccusedPlayer() != null)
-                .map(Player::getCurrentAccusedPlayer)
-                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
-
+        // voting may end before the deadline, which then has nothing left to do
+        TimerService.Timeout deadline = live.getVotingDeadline();
+        if (deadline != null) {
+            deadline.cancel();
+            live.setVotingDeadline(null);
+        }
+        gameSession.setVotingDeadline(null);
+        // the tally already knows the most voted players, a tie is broken at random
+        List<Long> mostVoted = live.getVoteTally().getMostVoted();
         Player mostVotedPlayer = null;
-
-        if (!voteCount.isEmpty()) {
-            long maxVotes = voteCount.values().stream().max(Long::compareTo).orElse(0L);
-            List<Player> mostVoted = voteCount.entrySet().stream()
-                    .filter(e -> e.getValue() == maxVotes)
-                    .map(Map.Entry::getKey)
-                    .collect(Collectors.toList());
-            mostVotedPlayer = mostVoted.get(ThreadLocalRandom.current().nextInt(mostVoted.size()));
+        if (!mostVoted.isEmpty()) {
+            Long userId = mostVoted.get(ThreadLocalRandom.current().nextInt(mostVoted.size()));
+            mostVotedPlayer = live.findPlayerByUserId(userId);
         }
 
         PlayerActionResult result = new PlayerActionResult();
         result.setActionType("END_VOTING");
+        result.setVoteCounts(voteCounts(live));
 
         if (mostVotedPlayer != null && mostVotedPlayer.getIsChameleon()) {
             result.setActionResult("CHAMELEON_FOUND");
@@ -171,82 +275,86 @@ public class GameSessionService {
         } else {
             result.setActionResult("CHAMELEON_WON");
             gameSession.setCurrentState(GameState.CHAMELEON_WIN);
-            recordGameSessionEnd(gameSession);
+            recordGameSessionEnd(live);
         }
-        Player chameleon = players.stream()
-                .filter(Player::getIsChameleon)
-                .findFirst()
-                .orElse(null);
+        Player chameleon = live.getChameleon();
 
         if (chameleon != null) {
             result.setChameleonUsername(chameleon.getUser().getUsername());
         }
 
-        gameSessionRepository.save(gameSession);
+        gameStateWriter.schedule(live);
         return result;
     }
 
     public void endVoting(String gameToken) {
-        GameSession gameSession = gameSessionRepository.findByGameToken(gameToken).orElse(null);
-        if (gameSession == null || gameSession.getCurrentState() != GameState.VOTING) {
+        LiveGameSession live = liveGames.get(gameToken);
+        if (live == null) {
             return;
         }
-        PlayerActionResult result = computeVotingResult(gameSession);
+        PlayerActionResult result = computeVotingResult(live);
         if (result != null) {
             messagingTemplate.convertAndSend("/game/topic/" + gameToken, result);
         }
     }
 
-    public PlayerActionResult doVote(Player player, PlayerAction action, GameSession gameSession) {
-        if (gameSession.getCurrentState() != GameState.VOTING) {
-            throw new IllegalStateException("Game session is not in a valid state to vote");
+    public PlayerActionResult doVote(Player player, PlayerAction action, LiveGameSession live) {
+        if (live.hasVoted(player)) {
+            throw new GameRuleViolation(GameErrorCode.ALREADY_VOTED, "Player has already voted");
         }
         String accused_username = action.getActionContent();
         // find player with matching username
-        List<Player> players = playerRepository.findByGameSession(gameSession);
-        Player accusedPlayer = players.stream()
-                .filter(p -> p.getUser().getUsername().equals(accused_username))
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("Accused player not found"));
+        Player accusedPlayer = live.findPlayerByUsername(accused_username);
+        if (accusedPlayer == null) {
+            throw new GameRuleViolation(GameErrorCode.PLAYER_NOT_FOUND, "Accused player not found");
+        }
         // if (accusedPlayer == player) {
         //     throw new IllegalArgumentException("Player cannot vote for themselves");
         // }
-        player.setCurrentAccusedPlayer(accusedPlayer);
-        playerRepository.save(player);
-        // check if all players have voted
-        boolean allPlayersVoted = players.stream()
-                .allMatch(p -> p.getCurrentAccusedPlayer() != null);
+        live.castVote(player, accusedPlayer);
 
-        if (!allPlayersVoted) {
+        // voting ends as soon as everybody voted or the outcome cannot change anymore
+        if (!live.getVoteTally().isDecided(live.getPlayers().size())) {
+            // every vote is persisted, coalesced per game, so a restart resumes voting with it
+            gameStateWriter.schedule(live);
             PlayerActionResult result = new PlayerActionResult();
             result.setActionType(action.getActionType());
             result.setActionContent(action.getActionContent());
+            result.setVoteCounts(voteCounts(live));
             return result;
         }
-
-        // if voting phase has already ended, this will return null
-        return computeVotingResult(gameSession);
+        return computeVotingResult(live);
     }
 
-    public PlayerActionResult giveHint(Player player, PlayerAction action, GameSession gameSession) {
-        if (gameSession.getCurrentState() != GameState.STARTED) {
-            throw new IllegalStateException("Game session is not in a valid state to give a hint");
+    // current votes per accused username, for the live count shown to the players
+    private static Map<String, Integer> voteCounts(LiveGameSession live) {
+        Map<String, Integer> voteCounts = new HashMap<>();
+        for (Map.Entry<Long, Integer> entry : live.getVoteTally().getCounts().entrySet()) {
+            Player accused = live.findPlayerByUserId(entry.getKey());
+            if (accused != null) {
+                voteCounts.put(accused.getUser().getUsername(), entry.getValue());
+            }
         }
+        return voteCounts;
+    }
+
+    public PlayerActionResult giveHint(Player player, PlayerAction action, LiveGameSession live) {
+        GameSession gameSession = live.getGameSession();
         // check if this is the player turn
-        if (!gameSession.getCurrentPlayerTurn().getId().equals(player.getId())) {
-            throw new IllegalStateException("Wrong player turn");
+        if (!player.getId().equals(gameSession.getCurrentTurnPlayerId())) {
+            throw new GameRuleViolation(GameErrorCode.WRONG_TURN, "Wrong player turn");
         }
 
         String hint = action.getActionContent();
 
         // check if the hint is null or empty
         if (hint == null || hint.trim().isEmpty()) {
-            throw new IllegalStateException("Hint cannot be empty");
+            throw new GameRuleViolation(GameErrorCode.EMPTY_HINT, "Hint cannot be empty");
         }
 
         // check that hint contains only one word
         if (hint.split("\\s+").length > 1) {
-            throw new IllegalStateException("Hint must be a single word");
+            throw new GameRuleViolation(GameErrorCode.INVALID_HINT, "Hint must be a single word");
         }
 
         hint = hint.toLowerCase();
@@ -254,22 +362,23 @@ public class GameSessionService {
 
         if (hint.contains(secretWord) && !player.getIsChameleon()) {
             // if the player is not the chameleon, they cannot give a hint that contains the secret word
-            throw new IllegalStateException("Hint cannot contain the secret word");
+            throw new GameRuleViolation(GameErrorCode.HINT_CONTAINS_SECRET_WORD, "Hint cannot contain the secret word");
         }
 
         player.setGivenHint(hint);
-        playerRepository.save(player);
         // set the next player turn
-        Player nextPlayer = player.getNextPlayer();
-        gameSession.setCurrentPlayerTurn(nextPlayer);
-        // nextPlayer is null -> all players have given their hint, time to vote!
-        if (nextPlayer == null) {
+        gameSession.advanceTurn();
+        Long nextPlayerId = gameSession.getCurrentTurnPlayerId();
+        // no next player -> all players have given their hint, time to vote!
+        if (nextPlayerId == null) {
             gameSession.setCurrentState(GameState.READY_FOR_VOTING);
             log.info("All players have given their hints, ready for voting");
         } else {
-            log.info("Next player: {}", nextPlayer.getId());
+            log.info("Next player: {}", nextPlayerId);
         }
-        gameSessionRepository.save(gameSession);
+        // every hint and the turn are persisted, coalesced per game, so an evicted or
+        // restarted game continues the round where it was
+        gameStateWriter.schedule(live);
         // return the result
         PlayerActionResult result = new PlayerActionResult();
         result.setActionType(action.getActionType());
@@ -278,18 +387,16 @@ public class GameSessionService {
         return result;
     }
 
-    public PlayerActionResult handleChameleonGuess(Player player, PlayerAction action, GameSession gameSession) {
-        if (gameSession.getCurrentState() != GameState.CHAMELEON_TURN) {
-            throw new IllegalStateException("Game session is not in a valid state for a chameleon guess");
-        }
+    public PlayerActionResult handleChameleonGuess(Player player, PlayerAction action, LiveGameSession live) {
+        GameSession gameSession = live.getGameSession();
         String guess = action.getActionContent();
         // check if the guess is null or empty
         if (guess == null || guess.trim().isEmpty()) {
-            throw new IllegalStateException("Hint cannot be empty");
+            throw new GameRuleViolation(GameErrorCode.EMPTY_HINT, "Hint cannot be empty");
         }
         // check that guess contains only one word
         if (guess.split("\\s+").length > 1) {
-            throw new IllegalStateException("Hint must be a single word");
+            throw new GameRuleViolation(GameErrorCode.INVALID_HINT, "Hint must be a single word");
         }
 
         guess = guess.toLowerCase();
@@ -302,29 +409,26 @@ public class GameSessionService {
         result.setActionResult(chameleon_win ? "CHAMELEON_WIN" : "PLAYERS_WIN");
 
         gameSession.setCurrentState(chameleon_win ? GameState.CHAMELEON_WIN : GameState.PLAYERS_WIN);
-        Player chameleon = playerRepository.findByGameSession(gameSession).stream()
-                .filter(Player::getIsChameleon)
-                .findFirst()
-                .orElse(null);
+        Player chameleon = live.getChameleon();
 
         if (chameleon != null) {
             result.setChameleonUsername(chameleon.getUser().getUsername());
         }
-        gameSessionRepository.save(gameSession);
+        gameStateWriter.schedule(live);
 
-        recordGameSessionEnd(gameSession);
+        recordGameSessionEnd(live);
         return result;
     }
 
-    public PlayerActionResult newGame(Player admin, PlayerAction action, GameSession gameSession) {
-        if (gameSession.getCurrentState() != GameState.CHAMELEON_WIN && gameSession.getCurrentState() != GameState.PLAYERS_WIN) {
-            throw new IllegalStateException("Game session is not in a valid state to start a new game");
-        }
-        GameSession newGameSession = appService.createGameSession(gameSession.getCreator());
-        // delete this game session in 10 seconds
-        scheduler.schedule(() -> {
-            appService.endGameSession(gameSession.getGameToken(), admin.getUser());
-        }, 10, TimeUnit.SECONDS);
+    public PlayerActionResult newGame(Player admin, PlayerAction action, LiveGameSession live) {
+        GameSession gameSession = live.getGameSession();
+        // the next game keeps the word category
+        GameSession newGameSession = appService.createGameSession(gameSession.getCreator(), gameSession.getWordCategory());
+        // delete this game session in 10 seconds, queued behind its remaining actions
+        String gameToken = gameSession.getGameToken();
+        timerService.schedule(() -> gameActionDispatcher.execute(gameToken, () -> {
+            appService.endGameSession(gameToken, admin.getUser());
+        }), 10, TimeUnit.SECONDS);
         // send the new game session token to the players
         PlayerActionResult result = new PlayerActionResult();
         result.setActionType(action.getActionType());
@@ -332,76 +436,115 @@ public class GameSessionService {
         return result;
     }
 
+    /**
+     * Applies the action to the live game. Must run on the dispatcher thread of
+     * the game (see GameActionDispatcher), which is what keeps the actions of
+     * one game ordered without locking. The preconditions declared by the
+     * handler of the action are checked here, before it is called.
+     */
     public PlayerActionResult handlePlayerAction(User user, PlayerAction action, GameSession gameSession) throws Exception {
-        log.info("Handling player action: {}", action.getActionType());
-        log.info("User attempting action - ID: {}, Username: {}", user.getId(), user.getUsername());
-        log.info("Game creator - ID: {}, Username: {}", gameSession.getCreator().getId(), gameSession.getCreator().getUsername());
+        LiveGameSession live = liveGames.get(gameSession.getGameToken());
+        if (live == null) {
+            throw new GameRuleViolation(GameErrorCode.GAME_NOT_FOUND, "Game session not found");
+        }
+        gameSession = live.getGameSession();
 
         // get the player performing the action
-        Player player = playerRepository.findByUserAndGameSession(user, gameSession).orElseThrow(
-                () -> new Exception("User not part of the game session")
-        );
-        log.info("Found player in game session, ID: {}, Username: {}", player.getId(), player.getUser().getUsername());
+        Player player = live.findPlayer(user);
+        if (player == null) {
+            throw new GameRuleViolation(GameErrorCode.NOT_IN_GAME, "User not part of the game session");
+        }
+        GameActionHandler handler = handlers.get(action.getType());
+        if (handler == null) {
+            throw new GameRuleViolation(GameErrorCode.INVALID_ACTION, "Invalid action type: " + action.getActionType());
+        }
+        log.debug("Handling {} of user {} in game {}", action.getType(), user.getId(), gameSession.getGameToken());
 
         // in case of an admin action, check if the user is the creator
-        if (isAdminAction(action) && !gameSession.getCreator().equals(user)) {
-            log.error("User is not game creator");
-            throw new Exception("Only the game session creator can perform this action");
+        if (handler.isAdminOnly() && !gameSession.getCreator().equals(user)) {
+            throw new GameRuleViolation(GameErrorCode.NOT_GAME_CREATOR, "Only the game session creator can perform this action");
         }
-
-        switch (action.getActionType()) {
-            case "TEST_ACTION" -> {
-                PlayerActionResult result = new PlayerActionResult();
-                result.setActionType(action.getActionType());
-                return result;
-            }
-            case "TEST_ADMIN_ACTION" -> {
-                PlayerActionResult result = new PlayerActionResult();
-                result.setActionType(action.getActionType());
-                return result;
-            }
-            case "START_GAME" -> {
-                log.info("Processing START_GAME action");
-                return startGame(action, gameSession);
-            }
-            case "NEW_GAME" -> {
-                log.info("Processing NEW_GAME action");
-                return newGame(player, action, gameSession);
-            }
-            case "GIVE_HINT" -> {
-                return giveHint(player, action, gameSession);
-            }
-            case "START_VOTING" -> {
-                return startVoting(action, gameSession);
-            }
-            case "VOTE" -> {
-                return doVote(player, action, gameSession);
-            }
-            case "CHAMELEON_GUESS" -> {
-                return handleChameleonGuess(player, action, gameSession);
-            }
-            default -> {
-                throw new IllegalArgumentException("Invalid action type: " + action.getActionType());
+        long start = System.nanoTime();
+        try {
+            if (!handler.getRequiredStates().contains(gameSession.getCurrentState())) {
+                throw new GameRuleViolation(GameErrorCode.INVALID_STATE, handler.getInvalidStateMessage());
             }
+            return handler.handle(player, action, live);
+        } finally {
+            actionTimers.get(handler.getActionType()).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
 
-    public void recordGameSessionEnd(GameSession gameSession) {
-        // Get all players in the game
-        List<Player> players = playerRepository.findByGameSession(gameSession);
+    public void recordGameSessionEnd(LiveGameSession live) {
+        GameSession gameSession = live.getGameSession();
+        List<Player> players = live.getPlayers();
 
-        // Increment rounds played for each player
+        List<User> users = new ArrayList<>();
+        List<User> winners = new ArrayList<>();
         for (Player player : players) {
             User user = player.getUser();
-            appService.incrementRoundsPlayed(user);
-
+            users.add(user);
             if (gameSession.getCurrentState() == GameState.CHAMELEON_WIN && player.getIsChameleon()) {
-                appService.incrementWins(user);  // Chameleon wins
+                winners.add(user);  // Chameleon wins
             } else if (gameSession.getCurrentState() == GameState.PLAYERS_WIN && !player.getIsChameleon()) {
-                appService.incrementWins(user);  // Players win
+                winners.add(user);  // Players win
             }
+        }
+        // one UPDATE for the rounds played and one for the wins
+        appService.recordGameResults(users, winners);
 
+        // move the players on the leaderboard once the result is committed
+        for (User user : users) {
+            leaderboardService.recordGameResult(user.getId(), winners.contains(user));
         }
+    }
 
+    @FunctionalInterface
+    private interface Action {
+        PlayerActionResult apply(Player player, PlayerAction action, LiveGameSession live);
+    }
+
+    // the actions of the game itself, a null state set allows the action in any state
+    private static final class BuiltInHandler implements GameActionHandler {
+
+        private final ActionType actionType;
+        private final boolean adminOnly;
+        private final Set<GameState> requiredStates;
+        private final String invalidStateMessage;
+        private final Action action;
+
+        BuiltInHandler(ActionType actionType, boolean adminOnly, Set<GameState> requiredStates,
+                String invalidStateMessage, Action action) {
+            this.actionType = actionType;
+            this.adminOnly = adminOnly;
+            this.requiredStates = requiredStates == null ? EnumSet.allOf(GameState.class) : requiredStates;
+            this.invalidStateMessage = invalidStateMessage;
+            this.action = action;
+        }
+
+        @Override
+        public ActionType getActionType() {
+            return actionType;
+        }
+
+        @Override
+        public Set<GameState> getRequiredStates() {
+            return requiredStates;
+        }
+
+        @Override
+        public boolean isAdminOnly() {
+            return adminOnly;
+        }
+
+        @Override
+        public String getInvalidStateMessage() {
+            return invalidStateMessage;
+        }
+
+        @Override
+        public PlayerActionResult handle(Player player, PlayerAction action, LiveGameSession live) {
+            return this.action.apply(player, action, live);
+        }
     }
 }
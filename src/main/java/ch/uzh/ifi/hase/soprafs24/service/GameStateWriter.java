@@ -0,0 +1,195 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.constant.VideoStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
+
+/**
+ * GameStateWriter persists live games in the background. The caller takes a
+ * snapshot of the game on the game's dispatcher thread, the snapshot is written
+ * on a single writer thread. Snapshots of the same game that are still queued
+ * are coalesced, only the latest one is written.
+ */
+@Component
+public class GameStateWriter {
+
+    private final Logger log = LoggerFactory.getLogger(GameStateWriter.class);
+
+    private final GameSessionRepository gameSessionRepository;
+    private final PlayerRepository playerRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final ConcurrentHashMap<String, Snapshot> pending = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "game-state-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    record PlayerSnapshot(Long playerId, boolean isChameleon, String givenHint, String twilioToken) {
+
+    }
+
+    record Snapshot(Long gameSessionId, GameState currentState, String secretWord, List<Long> turnOrder,
+            int turnCursor, Instant votingDeadline, Map<Long, Long> votes, String twilioRoomSid,
+            VideoStatus videoStatus, List<PlayerSnapshot> players) {
+
+    }
+
+    public GameStateWriter(
+            GameSessionRepository gameSessionRepository,
+            PlayerRepository playerRepository,
+            PlatformTransactionManager transactionManager) {
+        this.gameSessionRepository = gameSessionRepository;
+        this.playerRepository = playerRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Queues the current state of the game to be written. Must be called on the
+     * dispatcher thread of the game.
+     */
+    public void schedule(LiveGameSession live) {
+        // the game has been deleted, there is nothing to write it to
+        if (live.isEnded()) {
+            return;
+        }
+        String gameToken = live.getGameToken();
+        // a write that is already queued for this game will pick up the newer snapshot
+        if (pending.put(gameToken, snapshot(live)) == null) {
+            executor.execute(() -> write(gameToken));
+        }
+    }
+
+    // drops a queued write, e.g. because the game is being deleted
+    public void discard(String gameToken) {
+        pending.remove(gameToken);
+    }
+
+    /**
+     * Blocks until everything queued so far has been written.
+     */
+    public void flush() {
+        try {
+            executor.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Blocks until the queued snapshot of the game, if any, has been written.
+     */
+    public void flush(String gameToken) {
+        if (!pending.containsKey(gameToken)) {
+            return;
+        }
+        try {
+            executor.submit(() -> write(gameToken)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // let queued writes finish, so that a restart recovers the latest state
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("{} game states were not persisted before shutdown", pending.size());
+        }
+    }
+
+    private void write(String gameToken) {
+        Snapshot snapshot = pending.remove(gameToken);
+        if (snapshot == null) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> apply(gameToken, snapshot));
+        } catch (RuntimeException e) {
+            // the game may have been deleted in the meantime
+            log.warn("Could not persist game {}: {}", gameToken, e.getMessage());
+        }
+    }
+
+    private void apply(String gameToken, Snapshot snapshot) {
+        // players that left in the meantime are missing here and are skipped
+        Map<Long, Player> players = new HashMap<>();
+        for (Player player : playerRepository.findWithUsersByGameToken(gameToken)) {
+            players.put(player.getId(), player);
+        }
+        // usually already loaded with the players, no select of its own
+        GameSession gameSession = gameSessionRepository.findById(snapshot.gameSessionId()).orElse(null);
+        if (gameSession == null) {
+            return;
+        }
+
+        // managed entities, the changes are flushed when the transaction commits
+        gameSession.setCurrentState(snapshot.currentState());
+        gameSession.setSecretWord(snapshot.secretWord());
+        gameSession.setTurnOrder(new ArrayList<>(snapshot.turnOrder()));
+        gameSession.setTurnCursor(snapshot.turnCursor());
+        gameSession.setVotingDeadline(snapshot.votingDeadline());
+        gameSession.setTwilioRoomSid(snapshot.twilioRoomSid());
+        gameSession.setVideoStatus(snapshot.videoStatus());
+        // the collection is only rewritten when votes came in or were cleared
+        if (!gameSession.getVotes().equals(snapshot.votes())) {
+            gameSession.getVotes().clear();
+            gameSession.getVotes().putAll(snapshot.votes());
+        }
+        for (PlayerSnapshot playerSnapshot : snapshot.players()) {
+            Player player = players.get(playerSnapshot.playerId());
+            if (player == null) {
+                continue;
+            }
+            player.setIsChameleon(playerSnapshot.isChameleon());
+            player.setGivenHint(playerSnapshot.givenHint());
+            player.setTwilioToken(playerSnapshot.twilioToken());
+        }
+    }
+
+    private static Snapshot snapshot(LiveGameSession live) {
+        GameSession gameSession = live.getGameSession();
+        List<PlayerSnapshot> players = new ArrayList<>();
+        for (Player player : live.getPlayers()) {
+            players.add(new PlayerSnapshot(player.getId(), player.getIsChameleon(), player.getGivenHint(),
+                    player.getTwilioToken()));
+        }
+        // the turn order is copied, the live game keeps changing after the snapshot
+        List<Long> turnOrder = gameSession.getTurnOrder() == null
+                ? new ArrayList<>()
+                : new ArrayList<>(gameSession.getTurnOrder());
+        return new Snapshot(gameSession.getId(), gameSession.getCurrentState(), gameSession.getSecretWord(),
+                turnOrder, gameSession.getTurnCursor(), gameSession.getVotingDeadline(),
+                new HashMap<>(gameSession.getVotes()), gameSession.getTwilioRoomSid(), gameSession.getVideoStatus(),
+                players);
+    }
+}
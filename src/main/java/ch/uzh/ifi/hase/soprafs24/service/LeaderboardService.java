@@ -0,0 +1,395 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+
+/**
+ * LeaderboardService keeps every user ranked by win rate in memory. The ranking
+ * is held in an order statistic tree, so a page of the leaderboard or the rank
+ * of a single user is answered in logarithmic time instead of loading and
+ * sorting all users on every request. The index is rebuilt from the database
+ * at startup and is then maintained incrementally as users register and games
+ * end.
+ */
+@Service
+public class LeaderboardService {
+
+    private final Logger log = LoggerFactory.getLogger(LeaderboardService.class);
+
+    // best win rate first, ties keep the registration order (user id)
+    static final Comparator<Entry> RANKING = Comparator
+            .comparingDouble(Entry::winRate).reversed()
+            .thenComparing(Entry::userId);
+
+    private final UserRepository userRepository;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Entry> entriesByUser = new HashMap<>();
+    private final RankTree tree = new RankTree(RANKING);
+    // users changed while rebuild reads the users, null when no rebuild is running
+    private Set<Long> changedDuringRebuild;
+
+    public record Entry(Long userId, String username, int wins, int roundsPlayed, String avatarVersion) {
+
+        public double winRate() {
+            return roundsPlayed > 0 ? (double) wins / roundsPlayed : 0.0;
+        }
+    }
+
+    public record RankedEntry(int rank, Entry entry) {
+
+    }
+
+    public LeaderboardService(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            changedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<User> users;
+        Set<Long> changed;
+        try {
+            users = userRepository.findAll();
+            lock.writeLock().lock();
+            try {
+                entriesByUser.clear();
+                tree.clear();
+                for (User user : users) {
+                    put(toEntry(user));
+                }
+                changed = takeChanged();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            // the users were read without the lock, a change that committed meanwhile may or
+            // may not be in what was read, so the changed users are read again rather than
+            // their changes replayed, until no more changes come in
+            int reread = 0;
+            while (!changed.isEmpty()) {
+                reread += changed.size();
+                List<User> current = userRepository.findAllById(changed);
+                lock.writeLock().lock();
+                try {
+                    for (User user : current) {
+                        put(toEntry(user));
+                    }
+                    changed = takeChanged();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            log.info("Leaderboard rebuilt with {} users, {} changed users read again", users.size(), reread);
+        } finally {
+            lock.writeLock().lock();
+            try {
+                changedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // caller holds the write lock, an empty set ends the rebuild
+    private Set<Long> takeChanged() {
+        Set<Long> changed = changedDuringRebuild;
+        if (changed.isEmpty()) {
+            changedDuringRebuild = null;
+        } else {
+            changedDuringRebuild = new HashSet<>();
+        }
+        return changed;
+    }
+
+    /**
+     * Adds the user to the leaderboard, or replaces its entry with the current
+     * state of the entity. Applied once the surrounding transaction commits.
+     */
+    public void upsert(User user) {
+        Entry entry = toEntry(user);
+        afterCommit(() -> apply(entry.userId(), () -> put(entry)));
+    }
+
+    public void updateAvatarVersion(Long userId, String avatarVersion) {
+        afterCommit(() -> update(userId, old -> new Entry(old.userId(), old.username(), old.wins(),
+                old.roundsPlayed(), avatarVersion)));
+    }
+
+    /**
+     * Counts one more played round for the user, and a win if it won. Applied
+     * once the surrounding transaction commits.
+     */
+    public void recordGameResult(Long userId, boolean won) {
+        afterCommit(() -> update(userId, old -> new Entry(old.userId(), old.username(),
+                old.wins() + (won ? 1 : 0), old.roundsPlayed() + 1, old.avatarVersion())));
+    }
+
+    /**
+     * @param offset number of entries to skip from the top
+     * @param limit  maximum number of entries to return
+     * @return the entries ranked offset + 1 to offset + limit
+     */
+    public List<RankedEntry> getPage(int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Entry> entries = tree.range(offset, limit);
+            List<RankedEntry> page = new ArrayList<>(entries.size());
+            for (int i = 0; i < entries.size(); i++) {
+                page.add(new RankedEntry(offset + i + 1, entries.get(i)));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the 1-based rank of the user, or null if the user is unknown
+     */
+    public RankedEntry getRank(Long userId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entriesByUser.get(userId);
+            if (entry == null) {
+                return null;
+            }
+            return new RankedEntry(tree.rank(entry) + 1, entry);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return tree.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void update(Long userId, UnaryOperator<Entry> change) {
+        apply(userId, () -> {
+            Entry old = entriesByUser.get(userId);
+            if (old != null) {
+                put(change.apply(old));
+            }
+        });
+    }
+
+    // applies the change now, during a rebuild the user is also read again afterwards
+    private void apply(Long userId, Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.add(userId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // caller holds the write lock
+    private void put(Entry entry) {
+        Entry old = entriesByUser.put(entry.userId(), entry);
+        if (old != null) {
+            tree.remove(old);
+        }
+        tree.insert(entry);
+    }
+
+    private static Entry toEntry(User user) {
+        return new Entry(user.getId(), user.getUsername(), user.getWins(), user.getRoundsPlayed(),
+                user.getAvatarVersion());
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        // a rolled back transaction must not show up on the leaderboard
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Treap augmented with subtree sizes. Entries are unique under the
+     * comparator (ties are broken by user id), insert and remove are expected
+     * O(log n), rank is O(log n) and reading a range is O(log n + limit).
+     * Not thread safe, LeaderboardService guards it with its lock.
+     */
+    static final class RankTree {
+
+        private static final class Node {
+
+            private final Entry entry;
+            private final int priority;
+            private Node left;
+            private Node right;
+            private int size = 1;
+
+            private Node(Entry entry, int priority) {
+                this.entry = entry;
+                this.priority = priority;
+            }
+        }
+
+        private final Comparator<Entry> comparator;
+        private final Random random = new Random();
+        private Node root;
+
+        RankTree(Comparator<Entry> comparator) {
+            this.comparator = comparator;
+        }
+
+        int size() {
+            return size(root);
+        }
+
+        void clear() {
+            root = null;
+        }
+
+        void insert(Entry entry) {
+            Node[] parts = split(root, entry, false);
+            root = merge(merge(parts[0], new Node(entry, random.nextInt())), parts[1]);
+        }
+
+        void remove(Entry entry) {
+            Node[] lower = split(root, entry, false);
+            Node[] upper = split(lower[1], entry, true);
+            // upper[0] now only holds the node equal to entry
+            root = merge(lower[0], upper[1]);
+        }
+
+        /**
+         * @return the number of entries ranked before the given one, or -1 if
+         *         it is not in the tree
+         */
+        int rank(Entry entry) {
+            int before = 0;
+            Node node = root;
+            while (node != null) {
+                int cmp = comparator.compare(entry, node.entry);
+                if (cmp < 0) {
+                    node = node.left;
+                } else if (cmp > 0) {
+                    before += size(node.left) + 1;
+                    node = node.right;
+                } else {
+                    return before + size(node.left);
+                }
+            }
+            return -1;
+        }
+
+        List<Entry> range(int offset, int limit) {
+            List<Entry> result = new ArrayList<>(Math.max(0, Math.min(limit, size() - offset)));
+            // walk down to the entry at offset, remembering the ancestors still to be visited
+            Deque<Node> stack = new ArrayDeque<>();
+            Node node = root;
+            int skip = offset;
+            while (node != null) {
+                int leftSize = size(node.left);
+                if (skip < leftSize) {
+                    stack.push(node);
+                    node = node.left;
+                } else if (skip == leftSize) {
+                    stack.push(node);
+                    node = null;
+                } else {
+                    skip -= leftSize + 1;
+                    node = node.right;
+                }
+            }
+            // then continue as a regular in-order traversal
+            while (!stack.isEmpty() && result.size() < limit) {
+                Node current = stack.pop();
+                result.add(current.entry);
+                Node next = current.right;
+                while (next != null) {
+                    stack.push(next);
+                    next = next.left;
+                }
+            }
+            return result;
+        }
+
+        // splits into (entries < key, entries >= key), or (<= key, > key) if inclusive
+        private Node[] split(Node node, Entry key, boolean inclusive) {
+            if (node == null) {
+                return new Node[] {null, null};
+            }
+            int cmp = comparator.compare(node.entry, key);
+            if (cmp < 0 || (inclusive && cmp == 0)) {
+                Node[] parts = split(node.right, key, inclusive);
+                node.right = parts[0];
+                update(node);
+                return new Node[] {node, parts[1]};
+            }
+            Node[] parts = split(node.left, key, inclusive);
+            node.left = parts[1];
+            update(node);
+            return new Node[] {parts[0], node};
+        }
+
+        // every entry of a must be ranked before every entry of b
+        private Node merge(Node a, Node b) {
+            if (a == null) {
+                return b;
+            }
+            if (b == null) {
+                return a;
+            }
+            if (a.priority > b.priority) {
+                a.right = merge(a.right, b);
+                update(a);
+                return a;
+            }
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+
+        private static int size(Node node) {
+            return node == null ? 0 : node.size;
+        }
+
+        private static void update(Node node) {
+            node.size = size(node.left) + size(node.right) + 1;
+        }
+    }
+}
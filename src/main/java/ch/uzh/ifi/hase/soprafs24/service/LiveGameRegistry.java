@@ -0,0 +1,185 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
+
+/**
+ * LiveGameRegistry maps game tokens to the LiveGameSession of every game that
+ * has been touched since startup. A game is loaded from the database on first
+ * access, which is also how running games are recovered after a restart, and
+ * stays in memory until it is ended or has been idle for a while.
+ */
+@Component
+public class LiveGameRegistry {
+
+    private final Logger log = LoggerFactory.getLogger(LiveGameRegistry.class);
+
+    private final GameSessionRepository gameSessionRepository;
+    private final PlayerRepository playerRepository;
+    private final TransactionTemplate loadTransaction;
+    private final GameActionDispatcher gameActionDispatcher;
+    private final GameStateWriter gameStateWriter;
+    private final long idleNanos;
+
+    private final ConcurrentHashMap<String, LiveGameSession> games = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    public LiveGameRegistry(
+            GameSessionRepository gameSessionRepository,
+            PlayerRepository playerRepository,
+            PlatformTransactionManager transactionManager,
+            GameActionDispatcher gameActionDispatcher,
+            GameStateWriter gameStateWriter,
+            @Value("${game.live.idle-minutes:60}") long idleMinutes) {
+        this.gameSessionRepository = gameSessionRepository;
+        this.playerRepository = playerRepository;
+        this.gameActionDispatcher = gameActionDispatcher;
+        this.gameStateWriter = gameStateWriter;
+        // loads run in their own read-only transaction, so the entities are detached
+        // right away and never flushed by the transaction of whoever asked for them
+        this.loadTransaction = new TransactionTemplate(transactionManager);
+        this.loadTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.loadTransaction.setReadOnly(true);
+        this.idleNanos = TimeUnit.MINUTES.toNanos(idleMinutes);
+    }
+
+    @PostConstruct
+    public void startSweeper() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "live-game-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleAtFixedRate(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * @param gameToken the game token
+     * @return the live state of the game, loaded from the database on first
+     *         access, or null if there is no such game
+     */
+    public LiveGameSession get(String gameToken) {
+        if (gameToken == null) {
+            return null;
+        }
+        while (true) {
+            LiveGameSession live = games.get(gameToken);
+            if (live == null) {
+                live = load(gameToken);
+                if (live == null) {
+                    return null;
+                }
+                // another thread may have loaded the game meanwhile, the first one wins
+                LiveGameSession existing = games.putIfAbsent(gameToken, live);
+                if (existing != null) {
+                    live = existing;
+                }
+            }
+            live.touch();
+            // being dropped by the sweeper right now, the next lookup loads it again
+            if (!live.isEvicted()) {
+                return live;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // true if the game is in memory, unlike get this never loads it
+    public boolean isLoaded(String gameToken) {
+        return games.containsKey(gameToken);
+    }
+
+    public void evict(String gameToken) {
+        games.remove(gameToken);
+    }
+
+    public int size() {
+        return games.size();
+    }
+
+    // for metrics only, reads the state of each game outside of its dispatcher thread
+    public long countInState(GameState state) {
+        return games.values().stream()
+                .filter(live -> live.getGameSession().getCurrentState() == state)
+                .count();
+    }
+
+    // live games whose voting deadline is scheduled on the timer
+    public long countVotingDeadlines() {
+        return games.values().stream()
+                .filter(live -> live.getVotingDeadline() != null)
+                .count();
+    }
+
+    // drops games nobody touched for a while, they are reloaded if they come back
+    void evictIdle() {
+        long now = System.nanoTime();
+        int idle = 0;
+        for (LiveGameSession live : games.values()) {
+            if (now - live.getLastAccess() > idleNanos) {
+                gameActionDispatcher.execute(live.getGameToken(), () -> evictIfIdle(live));
+                idle++;
+            }
+        }
+        if (idle > 0) {
+            log.info("Evicting {} idle live games", idle);
+        }
+    }
+
+    // runs on the dispatcher thread of the game, so none of its actions is half done
+    private void evictIfIdle(LiveGameSession live) {
+        if (System.nanoTime() - live.getLastAccess() <= idleNanos) {
+            return;
+        }
+        // the next load has to read the latest state of the game
+        gameStateWriter.flush(live.getGameToken());
+        live.setEvicted(true);
+        // a get that touched the game meanwhile keeps it, one that comes later sees the flag
+        if (System.nanoTime() - live.getLastAccess() <= idleNanos) {
+            live.setEvicted(false);
+            return;
+        }
+        games.remove(live.getGameToken(), live);
+    }
+
+    private LiveGameSession load(String gameToken) {
+        return loadTransaction.execute(status -> {
+            // players first, the game is then already in the persistence context
+            // and none of its associations needs a select of its own
+            List<Player> players = playerRepository.findWithUsersByGameToken(gameToken);
+            return gameSessionRepository.findByGameToken(gameToken)
+                    .map(gameSession -> {
+                        Hibernate.initialize(gameSession.getVotes());
+                        return new LiveGameSession(gameSession, players);
+                    })
+                    .orElse(null);
+        });
+    }
+}
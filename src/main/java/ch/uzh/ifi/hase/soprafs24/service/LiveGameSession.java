@@ -0,0 +1,168 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+/**
+ * LiveGameSession is the in-memory state of a running game: the GameSession
+ * and its players as detached entities. While the game is live this object is
+ * the source of truth, the database copy is brought up to date in the
+ * background by GameStateWriter. Mutations run on the dispatcher thread of the
+ * game, see GameActionDispatcher.
+ */
+public class LiveGameSession {
+
+    private final GameSession gameSession;
+    // readers such as the REST endpoints iterate from other threads
+    private final List<Player> players;
+    private volatile long lastAccess = System.nanoTime();
+    // set while the sweeper drops the game, callers then load it again
+    private volatile boolean evicted;
+    // set once the game has been deleted, it is about to be dropped
+    private volatile boolean ended;
+    // pending end of the current voting phase, null outside of VOTING
+    private TimerService.Timeout votingDeadline;
+    // counts of GameSession.votes, kept up to date with every vote
+    private final VoteTally voteTally = new VoteTally();
+
+    LiveGameSession(GameSession gameSession, List<Player> players) {
+        this.gameSession = gameSession;
+        this.players = new CopyOnWriteArrayList<>(players);
+        // a game loaded in the middle of voting continues with the votes cast so far,
+        // every vote is written through GameStateWriter
+        if (gameSession.getVotes() == null) {
+            gameSession.setVotes(new HashMap<>());
+        }
+        for (Long accusedUserId : gameSession.getVotes().values()) {
+            voteTally.add(accusedUserId);
+        }
+    }
+
+    public GameSession getGameSession() {
+        return gameSession;
+    }
+
+    public String getGameToken() {
+        return gameSession.getGameToken();
+    }
+
+    public List<Player> getPlayers() {
+        return Collections.unmodifiableList(players);
+    }
+
+    // returns the player of the given user, or null if the user is not in the game
+    public Player findPlayer(User user) {
+        for (Player player : players) {
+            if (player.getUser().equals(user)) {
+                return player;
+            }
+        }
+        return null;
+    }
+
+    public Player findPlayerById(Long playerId) {
+        for (Player player : players) {
+            if (player.getId().equals(playerId)) {
+                return player;
+            }
+        }
+        return null;
+    }
+
+    // the player whose turn it is to give a hint, or null outside of the hint phase
+    public Player getCurrentTurnPlayer() {
+        Long playerId = gameSession.getCurrentTurnPlayerId();
+        return playerId == null ? null : findPlayerById(playerId);
+    }
+
+    public Player findPlayerByUserId(Long userId) {
+        for (Player player : players) {
+            if (player.getUser().getId().equals(userId)) {
+                return player;
+            }
+        }
+        return null;
+    }
+
+    public Player findPlayerByUsername(String username) {
+        for (Player player : players) {
+            if (player.getUser().getUsername().equals(username)) {
+                return player;
+            }
+        }
+        return null;
+    }
+
+    public Player getChameleon() {
+        for (Player player : players) {
+            if (player.getIsChameleon()) {
+                return player;
+            }
+        }
+        return null;
+    }
+
+    public VoteTally getVoteTally() {
+        return voteTally;
+    }
+
+    public boolean hasVoted(Player voter) {
+        return gameSession.getVotes().containsKey(voter.getUser().getId());
+    }
+
+    void castVote(Player voter, Player accused) {
+        gameSession.getVotes().put(voter.getUser().getId(), accused.getUser().getId());
+        voteTally.add(accused.getUser().getId());
+    }
+
+    void clearVotes() {
+        gameSession.getVotes().clear();
+        voteTally.clear();
+    }
+
+    void addPlayer(Player player) {
+        players.add(player);
+    }
+
+    void removePlayer(Player player) {
+        players.removeIf(p -> p.getId().equals(player.getId()));
+    }
+
+    TimerService.Timeout getVotingDeadline() {
+        return votingDeadline;
+    }
+
+    void setVotingDeadline(TimerService.Timeout votingDeadline) {
+        this.votingDeadline = votingDeadline;
+    }
+
+    void touch() {
+        lastAccess = System.nanoTime();
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    boolean isEvicted() {
+        return evicted;
+    }
+
+    void setEvicted(boolean evicted) {
+        this.evicted = evicted;
+    }
+
+    public boolean isEnded() {
+        return ended;
+    }
+
+    void setEnded(boolean ended) {
+        this.ended = ended;
+    }
+}
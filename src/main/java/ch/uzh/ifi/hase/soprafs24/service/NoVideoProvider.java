@@ -0,0 +1,33 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Games without video. No room is ever created, new games are marked
+ * VideoStatus.DISABLED instead.
+ */
+@Component
+@ConditionalOnProperty(name = "video.provider", havingValue = "none")
+public class NoVideoProvider implements VideoProvider {
+
+    @Override
+    public String createRoom(String uniqueName) {
+        throw new IllegalStateException("Video is disabled");
+    }
+
+    @Override
+    public void closeRoom(String roomSid) {
+        // there are no rooms
+    }
+
+    @Override
+    public String generateToken(String identity, String roomSid, int ttlSeconds) {
+        return null;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,188 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import ch.uzh.ifi.hase.soprafs24.entity.PendingRoomClosure;
+import ch.uzh.ifi.hase.soprafs24.exceptions.VideoCircuitOpenException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.VideoUnavailableException;
+import ch.uzh.ifi.hase.soprafs24.repository.PendingRoomClosureRepository;
+
+/**
+ * RoomCloseQueue closes the video rooms of ended games in the background, so
+ * ending a game never waits for the video provider. The rooms to close are
+ * stored in PENDING_ROOM_CLOSURE with the game's deletion and closed by a
+ * single worker in batches. Failed closes are retried with exponential
+ * backoff. Closes refused by the open circuit of VideoCallGuard are not
+ * counted as attempts and are retried once the circuit lets calls through.
+ * Closures left over from before a crash or restart are due right away and
+ * are reaped by the first run after startup.
+ */
+@Component
+public class RoomCloseQueue {
+
+    private final Logger log = LoggerFactory.getLogger(RoomCloseQueue.class);
+
+    private final PendingRoomClosureRepository pendingRoomClosureRepository;
+    private final TwilioService twilioService;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long intervalSeconds;
+    private final int maxAttempts;
+    private final Duration backoffBase;
+    private final Duration backoffMax;
+
+    // set while a run is queued, so a burst of ended games wakes the worker once
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+    private ScheduledExecutorService worker;
+
+    public RoomCloseQueue(
+            PendingRoomClosureRepository pendingRoomClosureRepository,
+            TwilioService twilioService,
+            PlatformTransactionManager transactionManager,
+            @Value("${video.close.batch-size:50}") int batchSize,
+            @Value("${video.close.interval-seconds:30}") long intervalSeconds,
+            @Value("${video.close.max-attempts:8}") int maxAttempts,
+            @Value("${video.close.backoff-base-seconds:2}") long backoffBaseSeconds,
+            @Value("${video.close.backoff-max-seconds:600}") long backoffMaxSeconds) {
+        this.pendingRoomClosureRepository = pendingRoomClosureRepository;
+        this.twilioService = twilioService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.intervalSeconds = intervalSeconds;
+        this.maxAttempts = maxAttempts;
+        this.backoffBase = Duration.ofSeconds(backoffBaseSeconds);
+        this.backoffMax = Duration.ofSeconds(backoffMaxSeconds);
+    }
+
+    @PostConstruct
+    public void startWorker() {
+        worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "video-room-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the first run right away picks up what a crash left behind
+        worker.scheduleWithFixedDelay(this::drain, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stopWorker() {
+        if (worker != null) {
+            // whatever is left is closed after the restart
+            worker.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues the room to be closed. Stored with the surrounding transaction,
+     * the worker is woken up once it commits.
+     */
+    public void enqueue(String roomSid) {
+        if (roomSid == null) {
+            return;
+        }
+        PendingRoomClosure closure = new PendingRoomClosure();
+        closure.setRoomSid(roomSid);
+        closure.setEnqueuedAt(Instant.now());
+        closure.setNextAttemptAt(closure.getEnqueuedAt());
+        pendingRoomClosureRepository.save(closure);
+        afterCommit(this::wake);
+    }
+
+    private void wake() {
+        if (worker != null && drainRequested.compareAndSet(false, true)) {
+            worker.execute(this::drain);
+        }
+    }
+
+    // runs on the worker thread, closes everything that is due batch by batch
+    void drain() {
+        drainRequested.set(false);
+        try {
+            List<PendingRoomClosure> batch;
+            do {
+                Instant now = Instant.now();
+                batch = pendingRoomClosureRepository.findByNextAttemptAtLessThanEqualOrderByNextAttemptAt(
+                        now, PageRequest.of(0, batchSize));
+                closeBatch(batch, now);
+            } while (batch.size() == batchSize);
+        } catch (RuntimeException e) {
+            // e.g. the database is not reachable, the next run tries again
+            log.warn("Could not close pending video rooms: {}", e.getMessage());
+        }
+    }
+
+    private void closeBatch(List<PendingRoomClosure> batch, Instant now) {
+        List<PendingRoomClosure> done = new ArrayList<>();
+        List<PendingRoomClosure> retries = new ArrayList<>();
+        for (PendingRoomClosure closure : batch) {
+            try {
+                twilioService.closeVideoRoom(closure.getRoomSid());
+                done.add(closure);
+            } catch (VideoCircuitOpenException e) {
+                // never reached Twilio, tried again once the circuit lets calls through
+                closure.setNextAttemptAt(now.plus(e.getRetryAfter()));
+                retries.add(closure);
+            } catch (VideoUnavailableException e) {
+                closure.setAttempts(closure.getAttempts() + 1);
+                if (closure.getAttempts() >= maxAttempts) {
+                    // Twilio ends the room itself once everybody left
+                    log.warn("Giving up closing video room {} after {} attempts: {}", closure.getRoomSid(),
+                            closure.getAttempts(), e.getMessage());
+                    done.add(closure);
+                } else {
+                    closure.setNextAttemptAt(now.plus(backoff(closure.getAttempts())));
+                    retries.add(closure);
+                }
+            }
+        }
+        // the outcome of the whole batch is written at once
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!done.isEmpty()) {
+                pendingRoomClosureRepository.deleteInBatch(done);
+            }
+            if (!retries.isEmpty()) {
+                pendingRoomClosureRepository.saveAll(retries);
+            }
+        });
+    }
+
+    // base, 2 * base, 4 * base, ... up to the maximum
+    Duration backoff(int attempts) {
+        Duration backoff = backoffBase.multipliedBy(1L << Math.min(attempts - 1, 30));
+        return backoff.compareTo(backoffMax) > 0 ? backoffMax : backoff;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
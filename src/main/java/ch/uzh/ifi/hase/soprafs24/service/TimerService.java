@@ -0,0 +1,295 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * TimerService runs delayed tasks such as voting deadlines on a hashed timing
+ * wheel. A single ticker thread advances the wheel, every slot holds a linked
+ * list of the timeouts due in it, so scheduling and cancelling are O(1) no
+ * matter how many timeouts are pending. Due tasks are handed to a small worker
+ * pool, the ticker itself never runs user code. Timeouts fire at most one tick
+ * late, which is fine for deadlines measured in seconds.
+ */
+@Component
+public class TimerService {
+
+    private final Logger log = LoggerFactory.getLogger(TimerService.class);
+
+    // bounds the work of one tick when a burst of timeouts comes in
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public interface Timeout {
+
+        /**
+         * @return true if the task was cancelled, false if it already fired or
+         *         was cancelled before
+         */
+        boolean cancel();
+
+        boolean isCancelled();
+
+        boolean isExpired();
+    }
+
+    private final long tickNanos;
+    private final WheelTimeout[] heads;
+    private final int mask;
+    private final long startTime;
+
+    // new and cancelled timeouts are queued and applied to the wheel by the
+    // ticker, so the slots are only ever touched by one thread
+    private final Queue<WheelTimeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<WheelTimeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final ExecutorService workers;
+    private final Thread ticker;
+    private volatile boolean running = true;
+    private long tick;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong fired = new AtomicLong();
+    private final AtomicLong totalLatenessNanos = new AtomicLong();
+    private final AtomicLong maxLatenessNanos = new AtomicLong();
+
+    public TimerService(
+            @Value("${game.timer.tick-millis:100}") long tickMillis,
+            @Value("${game.timer.wheel-size:512}") int wheelSize,
+            @Value("${game.timer.worker-threads:2}") int workerThreads) {
+        if (tickMillis < 1) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        // round up to a power of two, the slot index is then a simple mask
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.heads = new WheelTimeout[size];
+        this.mask = size - 1;
+
+        AtomicInteger workerIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, workerThreads), runnable -> {
+            Thread thread = new Thread(runnable, "timer-worker-" + workerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.startTime = System.nanoTime();
+        this.ticker = new Thread(this::runTicker, "timer-ticker");
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * Runs the task on the worker pool once the delay has passed.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new RejectedExecutionException("Timer has been stopped");
+        }
+        long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay));
+        WheelTimeout timeout = new WheelTimeout(task, deadline);
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    public long getPendingTimeouts() {
+        return pending.get();
+    }
+
+    public long getFiredTimeouts() {
+        return fired.get();
+    }
+
+    // how late the timeouts fired compared to their deadline, in milliseconds
+    public double getAverageLatenessMillis() {
+        long count = fired.get();
+        return count == 0 ? 0 : totalLatenessNanos.get() / (double) count / 1_000_000;
+    }
+
+    public double getMaxLatenessMillis() {
+        return maxLatenessNanos.get() / 1_000_000.0;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        ticker.interrupt();
+        ticker.join(TimeUnit.SECONDS.toMillis(5));
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void runTicker() {
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            try {
+                removeCancelled();
+                transferScheduled();
+                expire((int) (tick & mask));
+            } catch (RuntimeException e) {
+                log.error("Timer tick failed", e);
+            }
+            tick++;
+        }
+    }
+
+    private void transferScheduled() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            WheelTimeout timeout = scheduled.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() == WheelTimeout.CANCELLED) {
+                continue;
+            }
+            long dueTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (dueTick - tick) / heads.length;
+            // a timeout that is already due goes into the current slot
+            long slotTick = Math.max(dueTick, tick);
+            add((int) (slotTick & mask), timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        WheelTimeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            // still in the scheduled queue if it never made it into a slot
+            if (timeout.slot >= 0) {
+                remove(timeout);
+            }
+        }
+    }
+
+    private void expire(int slot) {
+        WheelTimeout timeout = heads[slot];
+        while (timeout != null) {
+            WheelTimeout next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                remove(timeout);
+                fire(timeout);
+            } else if (timeout.state.get() == WheelTimeout.CANCELLED) {
+                remove(timeout);
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    private void fire(WheelTimeout timeout) {
+        if (!timeout.state.compareAndSet(WheelTimeout.INIT, WheelTimeout.EXPIRED)) {
+            return;
+        }
+        pending.decrementAndGet();
+        long lateness = Math.max(0, System.nanoTime() - startTime - timeout.deadline);
+        fired.incrementAndGet();
+        totalLatenessNanos.addAndGet(lateness);
+        maxLatenessNanos.accumulateAndGet(lateness, Math::max);
+        try {
+            workers.execute(() -> {
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    log.error("Timer task failed", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Timer task dropped, the timer is shutting down");
+        }
+    }
+
+    private void add(int slot, WheelTimeout timeout) {
+        timeout.slot = slot;
+        timeout.next = heads[slot];
+        if (heads[slot] != null) {
+            heads[slot].prev = timeout;
+        }
+        heads[slot] = timeout;
+    }
+
+    private void remove(WheelTimeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else if (heads[timeout.slot] == timeout) {
+            heads[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+    }
+
+    private final class WheelTimeout implements Timeout {
+
+        static final int INIT = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        private final Runnable task;
+        // nanoseconds since the timer was started
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(INIT);
+
+        // only touched by the ticker thread
+        private long remainingRounds;
+        private int slot = -1;
+        private WheelTimeout prev;
+        private WheelTimeout next;
+
+        WheelTimeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(INIT, CANCELLED)) {
+                return false;
+            }
+            pending.decrementAndGet();
+            // unlinked by the ticker on its next tick
+            cancelled.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+}
@@ -1,89 +1,272 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
-import com.twilio.Twilio;
-import com.twilio.jwt.accesstoken.AccessToken;
-import com.twilio.jwt.accesstoken.VideoGrant;
-import com.twilio.rest.video.v1.Room;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
-// if we want to implement multiple rooms --> add a map here to match lobby name and unique id or sth....
+import ch.uzh.ifi.hase.soprafs24.exceptions.VideoUnavailableException;
+
+/**
+ * TwilioService hands out video rooms and the tokens to join them. Creating a
+ * room is a remote call of a few hundred milliseconds, so a pool of idle rooms
+ * is kept warm in the background: creating a game claims the oldest idle room
+ * and only falls back to creating one when the pool is empty. Idle rooms are
+ * retired before the provider closes them for being unused. All calls to the
+ * provider go through VideoCallGuard, a failing or slow provider is answered
+ * with a VideoUnavailableException.
+ */
 @Service
 public class TwilioService {
 
-    @Value("${TWILIO_ACCOUNT_SID:default_value}")
-    private String accountSid;
+    private final Logger log = LoggerFactory.getLogger(TwilioService.class);
+
+    private final VideoProvider videoProvider;
+    private final VideoCallGuard callGuard;
+    private final VideoTokenCache tokenCache;
 
-    @Value("${TWILIO_AUTH_TOKEN:default_value}")
-    private String authToken;
+    // duration of the calls to Twilio, token generation is local but on every join
+    private final Timer createRoomTimer;
+    private final Timer generateTokenTimer;
+    private final Timer closeRoomTimer;
+    private final Counter poolHits;
+    private final Counter poolMisses;
 
-    @Value("${TWILIO_API_KEY:default_value}")
-    private String apiKey;
+    // idle rooms, oldest first
+    private final ConcurrentLinkedQueue<PooledRoom> idleRooms = new ConcurrentLinkedQueue<>();
+    // size of idleRooms, the queue itself counts in O(n)
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final int poolSize;
+    private final long maxIdleNanos;
+    private final long refillIntervalSeconds;
+    // creates and retires pooled rooms, one at a time
+    private final ScheduledExecutorService poolExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "video-room-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    @Value("${TWILIO_API_SECRET:default_value}")
-    private String apiSecret;
+    private record PooledRoom(String roomSid, long createdNanos) {
+
+    }
+
+    public TwilioService(
+            MeterRegistry meterRegistry,
+            VideoProvider videoProvider,
+            VideoCallGuard callGuard,
+            VideoTokenCache tokenCache,
+            @Value("${video.pool.size:0}") int poolSize,
+            @Value("${video.pool.max-idle-seconds:3000}") long maxIdleSeconds,
+            @Value("${video.pool.refill-interval-seconds:30}") long refillIntervalSeconds) {
+        this.videoProvider = videoProvider;
+        this.callGuard = callGuard;
+        this.tokenCache = tokenCache;
+        this.poolSize = poolSize;
+        this.maxIdleNanos = TimeUnit.SECONDS.toNanos(maxIdleSeconds);
+        this.refillIntervalSeconds = refillIntervalSeconds;
+        this.createRoomTimer = twilioTimer(meterRegistry, "createVideoRoom");
+        this.generateTokenTimer = twilioTimer(meterRegistry, "generateToken");
+        this.closeRoomTimer = twilioTimer(meterRegistry, "closeVideoRoom");
+        this.poolHits = poolCounter(meterRegistry, "hit");
+        this.poolMisses = poolCounter(meterRegistry, "miss");
+        Gauge.builder("twilio.rooms.idle", idleCount, AtomicInteger::get)
+                .description("Pre-created video rooms waiting for a game")
+                .register(meterRegistry);
+    }
+
+    private static Counter poolCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("twilio.rooms.claimed")
+                .description("Video rooms requested from the pool")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void startPool() {
+        if (poolSize > 0 && videoProvider.isEnabled()) {
+            poolExecutor.scheduleWithFixedDelay(this::maintainPool, 0, refillIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void stopPool() throws InterruptedException {
+        poolExecutor.shutdownNow();
+        poolExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        // nobody will claim them anymore
+        PooledRoom room;
+        while ((room = idleRooms.poll()) != null) {
+            idleCount.decrementAndGet();
+            closeQuietly(room.roomSid());
+        }
+    }
+
+    private static Timer twilioTimer(MeterRegistry meterRegistry, String operation) {
+        return Timer.builder("twilio.requests")
+                .description("Duration of Twilio video operations")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
 
     public record TwilioRoomInfo(String roomSid, String token) {
 
     }
 
     public TwilioRoomInfo createVideoRoom(String gameToken) {
-        try {
-            Twilio.init(accountSid, authToken);
+        return createRoomTimer.record(() -> doCreateVideoRoom(gameToken));
+    }
 
-            Room room = Room.creator()
-                    .setUniqueName(gameToken) // Use gameToken as room name
-                    .setType(Room.RoomType.GROUP)
-                    .setMaxParticipants(8)
-                    .setRecordParticipantsOnConnect(false)
-                    .create();
+    private TwilioRoomInfo doCreateVideoRoom(String gameToken) {
+        String roomSid = claimRoom();
+        if (roomSid == null) {
+            roomSid = createRoom(gameToken);
+        }
+        String token = generateToken(gameToken, roomSid);
+        // the token is a credential and is never logged
+        log.debug("Created video room {} for game {}", roomSid, gameToken);
+        return new TwilioRoomInfo(roomSid, token);
+    }
 
-            String token = generateToken(gameToken, room.getSid());
-            System.out.println("Created Twilio room: " + room.getSid() + " with token: " + token);
+    private String createRoom(String uniqueName) {
+        return callGuard.call(() -> videoProvider.createRoom(uniqueName));
+    }
 
-            return new TwilioRoomInfo(room.getSid(), token);
+    /**
+     * Takes the oldest idle room of the pool. Rooms that sat in the pool for
+     * too long are retired on the way.
+     *
+     * @return the sid of the claimed room, or null if the pool has none
+     */
+    String claimRoom() {
+        long now = System.nanoTime();
+        PooledRoom room;
+        while ((room = idleRooms.poll()) != null) {
+            idleCount.decrementAndGet();
+            if (now - room.createdNanos() < maxIdleNanos) {
+                poolHits.increment();
+                requestRefill();
+                return room.roomSid();
+            }
+            retire(room);
+        }
+        if (poolSize > 0) {
+            poolMisses.increment();
+            requestRefill();
+        }
+        return null;
+    }
 
-        } catch (Exception e) {
-            System.out.println("Error creating Twilio room: " + e.getMessage());
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
-                    "Failed to create video room: " + e.getMessage());
+    public boolean isVideoEnabled() {
+        return videoProvider.isEnabled();
+    }
+
+    // false while the provider is failing and calls to it are refused
+    public boolean isVideoAvailable() {
+        return videoProvider.isEnabled() && callGuard.isCallPermitted();
+    }
+
+    public int getIdleRoomCount() {
+        return idleCount.get();
+    }
+
+    // runs on the pool thread
+    void maintainPool() {
+        long now = System.nanoTime();
+        // the queue is ordered by age, expired rooms are at its head
+        PooledRoom oldest;
+        while ((oldest = idleRooms.peek()) != null && now - oldest.createdNanos() >= maxIdleNanos) {
+            if (idleRooms.remove(oldest)) {
+                idleCount.decrementAndGet();
+                closeQuietly(oldest.roomSid());
+            }
         }
-        // String mockRoomSid = "RM" + UUID.randomUUID().toString().substring(0, 10);
-        // System.out.println("Created mock video room: " + mockRoomSid);
-        // return mockRoomSid;
+        refillPool();
     }
 
-    public String generateToken(String identity, String roomId) {
+    // runs on the pool thread
+    void refillPool() {
+        while (idleCount.get() < poolSize) {
+            String roomSid;
+            try {
+                // pooled rooms are not bound to a game yet, their name only has to be unique
+                roomSid = createRoom("pool-" + UUID.randomUUID());
+            } catch (VideoUnavailableException e) {
+                // tried again with the next refill
+                log.warn("Could not refill the video room pool: {}", e.getMessage());
+                return;
+            }
+            idleRooms.add(new PooledRoom(roomSid, System.nanoTime()));
+            idleCount.incrementAndGet();
+        }
+    }
+
+    private void requestRefill() {
+        if (poolSize > 0 && !poolExecutor.isShutdown()) {
+            poolExecutor.execute(this::refillPool);
+        }
+    }
+
+    private void retire(PooledRoom room) {
+        if (poolExecutor.isShutdown()) {
+            return;
+        }
+        poolExecutor.execute(() -> closeQuietly(room.roomSid()));
+    }
+
+    private void closeQuietly(String roomSid) {
         try {
-            VideoGrant grant = new VideoGrant();
-            grant.setRoom(roomId);
+            callGuard.run(() -> videoProvider.closeRoom(roomSid));
+        } catch (VideoUnavailableException e) {
+            log.warn("Could not close idle video room {}: {}", roomSid, e.getMessage());
+        }
+    }
+
+    public String generateToken(String identity, String roomId) {
+        return issueToken(identity, roomId).token();
+    }
 
-            AccessToken token = new AccessToken.Builder(accountSid, apiKey, apiSecret)    
-                    .identity(identity)
-                    .grant(grant)
-                    .build();
+    /**
+     * @return the token of the identity for the room, reused until it is about
+     *         to expire, see VideoTokenCache
+     */
+    public VideoTokenCache.VideoToken issueToken(String identity, String roomId) {
+        return tokenCache.get(identity, roomId, () -> generateTokenTimer.record(() -> doGenerateToken(identity, roomId)));
+    }
 
-            return token.toJwt();
+    // tokens are signed locally, this is not a remote call and not guarded
+    private String doGenerateToken(String identity, String roomId) {
+        try {
+            return videoProvider.generateToken(identity, roomId, tokenCache.getTtlSeconds());
         } catch (Exception e) {
-            System.out.println("Error generating Twilio token: " + e.getMessage());
+            log.warn("Error generating video token for room {}: {}", roomId, e.getMessage());
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
                     "Failed to generate video token: " + e.getMessage());
         }
     }
 
+    /**
+     * @throws VideoUnavailableException if the room could not be closed, see
+     *         RoomCloseQueue for retries
+     */
     public void closeVideoRoom(String roomSid) {
-        if (roomSid != null) {
-            try {
-                Twilio.init(accountSid, authToken);
-                Room.updater(roomSid, Room.RoomStatus.COMPLETED).update();
-            } catch (Exception e) {
-                System.out.println("Error closing video room: " + e.getMessage());
-            }
-        }
-        System.out.println("Video room closed: " + roomSid);
+        closeRoomTimer.record(() -> callGuard.run(() -> videoProvider.closeRoom(roomSid)));
     }
 }
 
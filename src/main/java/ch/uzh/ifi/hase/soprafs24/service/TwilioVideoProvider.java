@@ -0,0 +1,123 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.twilio.exception.ApiException;
+import com.twilio.http.NetworkHttpClient;
+import com.twilio.http.TwilioRestClient;
+import com.twilio.jwt.accesstoken.AccessToken;
+import com.twilio.jwt.accesstoken.VideoGrant;
+import com.twilio.rest.video.v1.Room;
+
+/**
+ * Rooms created with the Twilio REST API. The client is built once, on a
+ * pooled HTTP connection manager with connect and read timeouts, so a slow
+ * Twilio can not hold a thread forever. Rooms nobody joins are closed by
+ * Twilio after the unused room timeout, pooled rooms have to be claimed or
+ * retired before that.
+ */
+@Component
+@ConditionalOnProperty(name = "video.provider", havingValue = "twilio", matchIfMissing = true)
+public class TwilioVideoProvider implements VideoProvider {
+
+    // Twilio error code for updating a room that is already completed
+    private static final int ROOM_COMPLETED = 53118;
+
+    @Value("${TWILIO_ACCOUNT_SID:default_value}")
+    private String accountSid;
+
+    @Value("${TWILIO_AUTH_TOKEN:default_value}")
+    private String authToken;
+
+    @Value("${TWILIO_API_KEY:default_value}")
+    private String apiKey;
+
+    @Value("${TWILIO_API_SECRET:default_value}")
+    private String apiSecret;
+
+    // Twilio allows at most 60 minutes
+    @Value("${video.twilio.unused-room-timeout-minutes:60}")
+    private int unusedRoomTimeoutMinutes;
+
+    @Value("${video.twilio.connect-timeout-millis:2000}")
+    private int connectTimeoutMillis;
+
+    @Value("${video.twilio.read-timeout-millis:5000}")
+    private int readTimeoutMillis;
+
+    @Value("${video.twilio.max-connections:20}")
+    private int maxConnections;
+
+    private TwilioRestClient restClient;
+
+    @PostConstruct
+    public void init() {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                // waiting for a free pooled connection counts as connecting
+                .setConnectionRequestTimeout(connectTimeoutMillis)
+                .build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        // every call goes to the same host
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        HttpClientBuilder clientBuilder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig);
+        restClient = new TwilioRestClient.Builder(accountSid, authToken)
+                .httpClient(new NetworkHttpClient(clientBuilder))
+                .build();
+    }
+
+    @Override
+    public String createRoom(String uniqueName) {
+        Room room = Room.creator()
+                .setUniqueName(uniqueName)
+                .setType(Room.RoomType.GROUP)
+                .setMaxParticipants(8)
+                .setRecordParticipantsOnConnect(false)
+                .setUnusedRoomTimeout(unusedRoomTimeoutMinutes)
+                .create(restClient);
+        return room.getSid();
+    }
+
+    @Override
+    public void closeRoom(String roomSid) {
+        try {
+            Room.updater(roomSid, Room.RoomStatus.COMPLETED).update(restClient);
+        } catch (ApiException e) {
+            // Twilio completes a room itself once everybody left, the room is closed either way
+            if (isRoomGone(e)) {
+                return;
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isRoomGone(ApiException e) {
+        return Integer.valueOf(404).equals(e.getStatusCode()) || Integer.valueOf(ROOM_COMPLETED).equals(e.getCode());
+    }
+
+    // signed locally, no call to Twilio
+    @Override
+    public String generateToken(String identity, String roomSid, int ttlSeconds) {
+        VideoGrant grant = new VideoGrant();
+        grant.setRoom(roomSid);
+
+        AccessToken token = new AccessToken.Builder(accountSid, apiKey, apiSecret)
+                .identity(identity)
+                .ttl(ttlSeconds)
+                .grant(grant)
+                .build();
+
+        return token.toJwt();
+    }
+}
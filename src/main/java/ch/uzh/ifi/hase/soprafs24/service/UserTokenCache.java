@@ -0,0 +1,171 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+/**
+ * UserTokenCache keeps a bounded token -> user mapping in front of the
+ * UserRepository, so that authenticating a REST request or a websocket message
+ * does not need a database round trip every time. Entries expire after a fixed
+ * time to live and the least recently used entry is evicted once the cache is
+ * full. The cached users are detached snapshots and should only be used to
+ * identify the caller, never be saved back. A user can also be looked up by id,
+ * for websocket sessions which only keep the id of the user they belong to.
+ */
+@Component
+public class UserTokenCache implements MeterBinder {
+
+  private final int maxSize;
+  private final long ttlNanos;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  // access ordered, so the eldest entry is always the least recently used one
+  private final LinkedHashMap<String, Entry> entries;
+  // user id -> token of the cached entry, kept in step with entries
+  private final Map<Long, String> tokensByUserId = new HashMap<>();
+
+  private record Entry(User user, long expiresAt) {
+
+  }
+
+  public UserTokenCache(
+      @Value("${auth.token-cache.max-size:10000}") int maxSize,
+      @Value("${auth.token-cache.ttl-seconds:300}") long ttlSeconds) {
+    this.maxSize = maxSize;
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        if (size() > UserTokenCache.this.maxSize) {
+          tokensByUserId.remove(eldest.getValue().user().getId(), eldest.getKey());
+          evictions.incrementAndGet();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("cache.gets", this, UserTokenCache::getHits)
+        .description("Token lookups answered from the cache")
+        .tags("cache", "auth-tokens", "result", "hit")
+        .register(registry);
+    FunctionCounter.builder("cache.gets", this, UserTokenCache::getMisses)
+        .description("Token lookups that had to go to the database")
+        .tags("cache", "auth-tokens", "result", "miss")
+        .register(registry);
+    FunctionCounter.builder("cache.evictions", this, UserTokenCache::getEvictions)
+        .description("Entries dropped because the cache was full or they expired")
+        .tag("cache", "auth-tokens")
+        .register(registry);
+    Gauge.builder("cache.size", this, UserTokenCache::size)
+        .description("Cached tokens")
+        .tag("cache", "auth-tokens")
+        .register(registry);
+  }
+
+  /**
+   * Looks up the user owning the given token.
+   *
+   * @param token the auth token
+   * @return the cached user, or null if the token is unknown or expired
+   */
+  public synchronized User get(String token) {
+    if (token == null) {
+      return null;
+    }
+    Entry entry = entries.get(token);
+    if (entry == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    if (entry.expiresAt() - System.nanoTime() <= 0) {
+      remove(token);
+      evictions.incrementAndGet();
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return entry.user();
+  }
+
+  /**
+   * Looks up a user by id, counted as a token lookup.
+   *
+   * @param userId the user id
+   * @return the cached user, or null if none of its tokens is cached
+   */
+  public synchronized User getByUserId(Long userId) {
+    String token = userId == null ? null : tokensByUserId.get(userId);
+    if (token == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    return get(token);
+  }
+
+  public synchronized void put(User user) {
+    if (user == null || user.getToken() == null) {
+      return;
+    }
+    Entry previous = entries.put(user.getToken(), new Entry(user, System.nanoTime() + ttlNanos));
+    if (previous != null) {
+      tokensByUserId.remove(previous.user().getId(), user.getToken());
+    }
+    if (user.getId() != null) {
+      tokensByUserId.put(user.getId(), user.getToken());
+    }
+  }
+
+  public synchronized void invalidate(String token) {
+    if (token != null) {
+      remove(token);
+    }
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    tokensByUserId.clear();
+  }
+
+  private void remove(String token) {
+    Entry entry = entries.remove(token);
+    if (entry != null) {
+      tokensByUserId.remove(entry.user().getId(), token);
+    }
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+}
@@ -0,0 +1,168 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.twilio.exception.ApiConnectionException;
+import com.twilio.exception.ApiException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.VideoCircuitOpenException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.VideoUnavailableException;
+
+/**
+ * VideoCallGuard runs the calls to the video provider on threads of its own,
+ * so a slow provider never holds the thread that asked for a room:
+ * <ul>
+ * <li>bulkhead: at most maxConcurrent calls run at the same time, further
+ * calls are refused right away instead of queueing</li>
+ * <li>timeout: the caller waits at most callTimeoutMillis for the result</li>
+ * <li>circuit breaker: after repeated timeouts, I/O errors or 5xx answers
+ * calls are refused for a while, see CircuitBreaker</li>
+ * </ul>
+ * Every refusal and failure is reported as a VideoUnavailableException, a
+ * refusal by the open circuit as its VideoCircuitOpenException subclass.
+ */
+@Component
+public class VideoCallGuard {
+
+    private enum Rejection {
+        CIRCUIT_OPEN,
+        BULKHEAD_FULL,
+        TIMEOUT,
+        FAILED
+    }
+
+    private final long callTimeoutMillis;
+    private final CircuitBreaker circuitBreaker;
+    private final ThreadPoolExecutor executor;
+    private final Map<Rejection, Counter> rejections = new EnumMap<>(Rejection.class);
+
+    public VideoCallGuard(
+            MeterRegistry meterRegistry,
+            @Value("${video.bulkhead.max-concurrent:8}") int maxConcurrent,
+            @Value("${video.call-timeout-millis:3000}") long callTimeoutMillis,
+            @Value("${video.circuit.failure-threshold:5}") int failureThreshold,
+            @Value("${video.circuit.open-seconds:30}") long openSeconds) {
+        this.callTimeoutMillis = callTimeoutMillis;
+        this.circuitBreaker = new CircuitBreaker(failureThreshold, openSeconds, TimeUnit.SECONDS);
+        AtomicInteger threadCount = new AtomicInteger();
+        // no queue, a call either gets a thread right away or is refused
+        this.executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 0L, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "video-call-" + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        for (Rejection rejection : Rejection.values()) {
+            rejections.put(rejection, Counter.builder("twilio.requests.rejected")
+                    .description("Video provider calls that were refused, timed out or failed")
+                    .tag("reason", rejection.name())
+                    .register(meterRegistry));
+        }
+        Gauge.builder("twilio.circuit.open", circuitBreaker, breaker -> breaker.isCallPermitted() ? 0 : 1)
+                .description("1 while calls to the video provider are refused")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the result of the call
+     * @throws VideoUnavailableException if the call was refused, timed out or failed
+     */
+    public <T> T call(Callable<T> call) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            rejections.get(Rejection.CIRCUIT_OPEN).increment();
+            throw new VideoCircuitOpenException("Video provider unavailable, circuit open",
+                    circuitBreaker.getRetryAfter());
+        }
+        Future<T> future;
+        try {
+            future = executor.submit(call);
+        } catch (RejectedExecutionException e) {
+            circuitBreaker.releasePermission();
+            throw reject(Rejection.BULKHEAD_FULL, "Too many concurrent video provider calls", null);
+        }
+        try {
+            T result = future.get(callTimeoutMillis, TimeUnit.MILLISECONDS);
+            circuitBreaker.recordSuccess();
+            return result;
+        } catch (TimeoutException e) {
+            // the thread stays taken until the provider's own read timeout gives up
+            future.cancel(true);
+            circuitBreaker.recordFailure();
+            throw reject(Rejection.TIMEOUT, "Video provider did not answer within " + callTimeoutMillis + " ms", null);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (isProviderFault(cause)) {
+                circuitBreaker.recordFailure();
+            } else if (cause instanceof ApiException) {
+                // the provider answered, it only refused this request
+                circuitBreaker.recordSuccess();
+            } else {
+                circuitBreaker.releasePermission();
+            }
+            throw reject(Rejection.FAILED, "Video provider call failed: " + cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            circuitBreaker.releasePermission();
+            throw new VideoUnavailableException("Interrupted while waiting for the video provider", e);
+        }
+    }
+
+    public void run(Runnable call) {
+        call(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    // false while the circuit is open, calls would be refused right away
+    public boolean isCallPermitted() {
+        return circuitBreaker.isCallPermitted();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // only a provider that is down or overloaded opens the circuit: I/O errors and 5xx
+    // answers, a 4xx answer such as an unknown or completed room means it is up
+    static boolean isProviderFault(Throwable cause) {
+        if (cause instanceof ApiException apiException) {
+            Integer status = apiException.getStatusCode();
+            return status == null || status >= 500;
+        }
+        return cause instanceof ApiConnectionException || cause instanceof IOException
+                || cause instanceof UncheckedIOException;
+    }
+
+    private VideoUnavailableException reject(Rejection rejection, String message, Throwable cause) {
+        rejections.get(rejection).increment();
+        return new VideoUnavailableException(message, cause);
+    }
+}
@@ -0,0 +1,26 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+/**
+ * Creates the video rooms TwilioService hands out and the tokens to join them.
+ * Picked with video.provider: "twilio" (default) talks to Twilio, "fake" keeps
+ * everything in process, e.g. to measure game creation without a network, and
+ * "none" runs games without video.
+ */
+public interface VideoProvider {
+
+    /**
+     * @param uniqueName name of the room, unique among the open rooms
+     * @return the sid of the new, empty room
+     */
+    String createRoom(String uniqueName);
+
+    void closeRoom(String roomSid);
+
+    // a token for the identity to join the room, valid for ttlSeconds
+    String generateToken(String identity, String roomSid, int ttlSeconds);
+
+    // false if games have no video at all
+    default boolean isEnabled() {
+        return true;
+    }
+}
@@ -0,0 +1,238 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import ch.uzh.ifi.hase.soprafs24.constant.VideoStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerActionResult;
+import ch.uzh.ifi.hase.soprafs24.websocket.VideoTokenMessage;
+
+/**
+ * VideoProvisioner creates the video room of a new game in the background, so
+ * that creating a game does not wait for Twilio. Rooms are created on a small
+ * bounded pool; once a room is ready every player of the game gets its token
+ * pushed to "/user" + VIDEO_TOKEN_DESTINATION and the game is told with a
+ * VIDEO_READY result. Players joining later get their token when they join.
+ * While the provider is failing games are DEGRADED, they run without video
+ * and are upgraded the same way as soon as rooms can be created again.
+ */
+@Component
+public class VideoProvisioner {
+
+    // clients subscribe to "/user" + VIDEO_TOKEN_DESTINATION
+    public static final String VIDEO_TOKEN_DESTINATION = "/game/topic/video";
+
+    private final Logger log = LoggerFactory.getLogger(VideoProvisioner.class);
+
+    private final TwilioService twilioService;
+    private final LiveGameRegistry liveGames;
+    private final GameActionDispatcher gameActionDispatcher;
+    private final GameStateWriter gameStateWriter;
+    private final RoomCloseQueue roomCloseQueue;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ThreadPoolExecutor executor;
+    private final long upgradeIntervalSeconds;
+    // games waiting for the provider to come back
+    private final Set<String> degradedGames = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService upgrader;
+
+    public VideoProvisioner(
+            TwilioService twilioService,
+            LiveGameRegistry liveGames,
+            GameActionDispatcher gameActionDispatcher,
+            GameStateWriter gameStateWriter,
+            RoomCloseQueue roomCloseQueue,
+            // the broker is built after the services the STOMP interceptors depend on
+            @Lazy SimpMessagingTemplate messagingTemplate,
+            @Value("${video.provisioning.threads:4}") int threads,
+            @Value("${video.provisioning.queue-capacity:200}") int queueCapacity,
+            @Value("${video.upgrade-interval-seconds:10}") long upgradeIntervalSeconds) {
+        this.twilioService = twilioService;
+        this.liveGames = liveGames;
+        this.gameActionDispatcher = gameActionDispatcher;
+        this.gameStateWriter = gameStateWriter;
+        this.roomCloseQueue = roomCloseQueue;
+        this.messagingTemplate = messagingTemplate;
+        this.upgradeIntervalSeconds = upgradeIntervalSeconds;
+        AtomicInteger threadCount = new AtomicInteger();
+        // a full queue rejects instead of piling up games that wait for minutes
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "video-provisioner-" + threadCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PostConstruct
+    public void startUpgrader() {
+        upgrader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "video-upgrader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        upgrader.scheduleWithFixedDelay(this::upgradeDegraded, upgradeIntervalSeconds, upgradeIntervalSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (upgrader != null) {
+            upgrader.shutdownNow();
+        }
+        executor.shutdownNow();
+    }
+
+    // video status of a new game, a game that is not DISABLED must then be provisioned
+    public VideoStatus initialVideoStatus() {
+        if (!twilioService.isVideoEnabled()) {
+            return VideoStatus.DISABLED;
+        }
+        return twilioService.isVideoAvailable() ? VideoStatus.PROVISIONING : VideoStatus.DEGRADED;
+    }
+
+    /**
+     * Creates the video room of the game once the surrounding transaction
+     * commits, or queues the game for an upgrade while the provider is failing.
+     */
+    public void provision(String gameToken) {
+        afterCommit(() -> {
+            if (twilioService.isVideoAvailable()) {
+                submit(gameToken);
+            } else {
+                degrade(gameToken);
+            }
+        });
+    }
+
+    public int getQueuedRooms() {
+        return executor.getQueue().size();
+    }
+
+    public int getDegradedGames() {
+        return degradedGames.size();
+    }
+
+    // runs on the upgrader thread
+    void upgradeDegraded() {
+        if (degradedGames.isEmpty() || !twilioService.isVideoAvailable()) {
+            return;
+        }
+        log.info("Video provider available again, upgrading {} games", degradedGames.size());
+        for (String gameToken : degradedGames) {
+            if (!degradedGames.remove(gameToken)) {
+                continue;
+            }
+            // games that ended or went idle meanwhile do not need a room anymore
+            if (liveGames.isLoaded(gameToken)) {
+                submit(gameToken);
+            }
+        }
+    }
+
+    private void submit(String gameToken) {
+        try {
+            executor.execute(() -> createRoom(gameToken));
+        } catch (RejectedExecutionException e) {
+            log.warn("Video provisioning queue full, game {} continues without video", gameToken);
+            degrade(gameToken);
+        }
+    }
+
+    private void degrade(String gameToken) {
+        gameActionDispatcher.execute(gameToken, () -> roomDegraded(gameToken));
+    }
+
+    private void createRoom(String gameToken) {
+        TwilioService.TwilioRoomInfo roomInfo;
+        try {
+            roomInfo = twilioService.createVideoRoom(gameToken);
+        } catch (RuntimeException e) {
+            log.warn("Could not create video room for game {}: {}", gameToken, e.getMessage());
+            degrade(gameToken);
+            return;
+        }
+        // the players are only touched on the dispatcher thread of the game
+        gameActionDispatcher.execute(gameToken, () -> roomReady(gameToken, roomInfo.roomSid()));
+    }
+
+    private void roomReady(String gameToken, String roomSid) {
+        LiveGameSession live = liveGames.get(gameToken);
+        if (live == null || live.isEnded()) {
+            // the game ended while the room was being created
+            roomCloseQueue.enqueue(roomSid);
+            return;
+        }
+        GameSession gameSession = live.getGameSession();
+        gameSession.setTwilioRoomSid(roomSid);
+        gameSession.setVideoStatus(VideoStatus.READY);
+        for (Player player : live.getPlayers()) {
+            String token = twilioService.generateToken(player.getUser().getUsername(), roomSid);
+            player.setTwilioToken(token);
+
+            VideoTokenMessage message = new VideoTokenMessage();
+            message.setGameSessionToken(gameToken);
+            message.setRoomSid(roomSid);
+            message.setToken(token);
+            messagingTemplate.convertAndSendToUser(String.valueOf(player.getUser().getId()),
+                    VIDEO_TOKEN_DESTINATION, message);
+        }
+        gameStateWriter.schedule(live);
+        broadcast(gameToken, "VIDEO_READY");
+    }
+
+    private void roomDegraded(String gameToken) {
+        LiveGameSession live = liveGames.get(gameToken);
+        if (live == null || live.isEnded()) {
+            return;
+        }
+        GameSession gameSession = live.getGameSession();
+        degradedGames.add(gameToken);
+        if (gameSession.getVideoStatus() != VideoStatus.DEGRADED) {
+            gameSession.setVideoStatus(VideoStatus.DEGRADED);
+            gameStateWriter.schedule(live);
+            broadcast(gameToken, "VIDEO_DEGRADED");
+        }
+    }
+
+    private void broadcast(String gameToken, String actionType) {
+        PlayerActionResult result = new PlayerActionResult();
+        result.setActionType(actionType);
+        messagingTemplate.convertAndSend("/game/topic/" + gameToken, result);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        // a game that was rolled back has nothing to create a room for
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,97 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * VideoTokenCache hands out the same signed video token for an identity and
+ * room until it is about to expire, instead of signing a new one on every
+ * join, reconnect or refresh. A token is replaced once less than
+ * refreshBefore of its lifetime is left, so a client always gets one that is
+ * good for a while. Bounded, the least recently used entry is evicted once the
+ * cache is full.
+ */
+@Component
+public class VideoTokenCache {
+
+    private final int maxSize;
+    private final Duration ttl;
+    private final Duration refreshBefore;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // access ordered, so the eldest entry is always the least recently used one
+    private final LinkedHashMap<Key, VideoToken> entries;
+
+    private record Key(String identity, String roomSid) {
+
+    }
+
+    public record VideoToken(String token, Instant expiresAt) {
+
+    }
+
+    public VideoTokenCache(
+            @Value("${video.token.cache-max-size:10000}") int maxSize,
+            @Value("${video.token.ttl-seconds:3600}") long ttlSeconds,
+            @Value("${video.token.refresh-before-seconds:300}") long refreshBeforeSeconds) {
+        this.maxSize = maxSize;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.refreshBefore = Duration.ofSeconds(refreshBeforeSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, VideoToken> eldest) {
+                return size() > VideoTokenCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param sign signs a new token valid for getTtlSeconds, called without
+     *             holding the lock of the cache
+     * @return the cached token of the identity for the room, or a newly signed
+     *         one if there is none or it expires soon
+     */
+    public VideoToken get(String identity, String roomSid, Supplier<String> sign) {
+        Key key = new Key(identity, roomSid);
+        synchronized (this) {
+            VideoToken cached = entries.get(key);
+            if (cached != null && Instant.now().plus(refreshBefore).isBefore(cached.expiresAt())) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        // the expiry is taken before signing, so it is never later than the token's own
+        Instant expiresAt = Instant.now().plus(ttl);
+        VideoToken token = new VideoToken(sign.get(), expiresAt);
+        synchronized (this) {
+            entries.put(key, token);
+        }
+        return token;
+    }
+
+    public int getTtlSeconds() {
+        return (int) ttl.getSeconds();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+}
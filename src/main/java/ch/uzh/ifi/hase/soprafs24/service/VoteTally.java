@@ -0,0 +1,90 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * VoteTally counts the votes of the current voting phase as they come in.
+ * Every vote updates the count of the accused and the two highest counts, so
+ * the leader and whether the outcome is already decided are known in O(1)
+ * without going over the votes again. Votes are final, counts only grow.
+ */
+public class VoteTally {
+
+    // accused user id -> number of votes
+    private final Map<Long, Integer> counts = new HashMap<>();
+    private int voterCount;
+    private int leaderVotes;
+    // highest count of anybody but the leader, equal to leaderVotes on a tie
+    private int runnerUpVotes;
+    private Long leader;
+
+    void add(Long accusedUserId) {
+        int votes = counts.merge(accusedUserId, 1, Integer::sum);
+        voterCount++;
+        if (accusedUserId.equals(leader)) {
+            leaderVotes = votes;
+        } else if (votes > leaderVotes) {
+            runnerUpVotes = leaderVotes;
+            leaderVotes = votes;
+            leader = accusedUserId;
+        } else if (votes > runnerUpVotes) {
+            runnerUpVotes = votes;
+        }
+    }
+
+    void clear() {
+        counts.clear();
+        voterCount = 0;
+        leaderVotes = 0;
+        runnerUpVotes = 0;
+        leader = null;
+    }
+
+    public int getVoterCount() {
+        return voterCount;
+    }
+
+    public int getVotes(Long userId) {
+        return counts.getOrDefault(userId, 0);
+    }
+
+    public int getLeaderVotes() {
+        return leaderVotes;
+    }
+
+    public Map<Long, Integer> getCounts() {
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * @param electorate the number of players that may vote
+     * @return true once everybody voted or nobody can catch up with the leader
+     *         with the votes that are left
+     */
+    public boolean isDecided(int electorate) {
+        int remaining = electorate - voterCount;
+        return remaining <= 0 || leaderVotes - runnerUpVotes > remaining;
+    }
+
+    // the user ids with the highest count, more than one on a tie
+    public List<Long> getMostVoted() {
+        List<Long> mostVoted = new ArrayList<>();
+        if (leaderVotes == 0) {
+            return mostVoted;
+        }
+        if (runnerUpVotes < leaderVotes) {
+            mostVoted.add(leader);
+            return mostVoted;
+        }
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() == leaderVotes) {
+                mostVoted.add(entry.getKey());
+            }
+        }
+        return mostVoted;
+    }
+}
@@ -0,0 +1,49 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
+
+/**
+ * VotingDeadlineRecovery resumes the voting phases that were running when the
+ * service was stopped. Voting deadlines are only timers in memory, without
+ * this sweep a game in VOTING would wait forever after a redeploy.
+ */
+@Component
+public class VotingDeadlineRecovery {
+
+    private final Logger log = LoggerFactory.getLogger(VotingDeadlineRecovery.class);
+
+    private final GameSessionRepository gameSessionRepository;
+    private final GameSessionService gameSessionService;
+    private final GameActionDispatcher gameActionDispatcher;
+
+    public VotingDeadlineRecovery(
+            GameSessionRepository gameSessionRepository,
+            GameSessionService gameSessionService,
+            GameActionDispatcher gameActionDispatcher) {
+        this.gameSessionRepository = gameSessionRepository;
+        this.gameSessionService = gameSessionService;
+        this.gameActionDispatcher = gameActionDispatcher;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        List<GameSession> voting = gameSessionRepository.findByCurrentState(GameState.VOTING);
+        if (!voting.isEmpty()) {
+            log.info("Resuming voting in {} games", voting.size());
+        }
+        for (GameSession gameSession : voting) {
+            String gameToken = gameSession.getGameToken();
+            gameActionDispatcher.execute(gameToken, () -> gameSessionService.resumeVoting(gameToken));
+        }
+    }
+}
@@ -1,34 +1,219 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
-import org.springframework.stereotype.Service;
-import java.util.Random;
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * WordService picks the secret words from a word corpus file with one entry
+ * per line, "word TAB category TAB difficulty", difficulty 1 (easy) to 3
+ * (hard). Lines starting with # are comments. The file is memory mapped and
+ * only the offsets of its lines are kept on the heap, indexed by category, so
+ * a word of a category is picked in O(1) however large the corpus is.
+ * Without words.corpus-path the small corpus bundled with the app is used.
+ */
 @Service
 public class WordService {
-    private final Random random = new Random();
-    
-    // List of words that are good for the Chameleon game
-    private final List<String> wordList = Arrays.asList(
-        "apple", "banana", "orange", "grape", "strawberry",
-        "computer", "keyboard", "mouse", "monitor", "laptop",
-        "book", "pencil", "paper", "desk", "chair",
-        "dog", "cat", "bird", "fish", "rabbit",
-        "car", "bike", "bus", "train", "plane",
-        "house", "apartment", "building", "room", "garden",
-        "pizza", "burger", "sandwich", "salad", "soup",
-        "movie", "music", "game", "sport", "art",
-        "sun", "moon", "star", "cloud", "rain",
-        "beach", "mountain", "forest", "river", "lake"
-    );
+
+    private static final String BUNDLED_CORPUS = "/words.tsv";
+
+    private final Logger log = LoggerFactory.getLogger(WordService.class);
+
+    private final MappedByteBuffer corpus;
+    // offsets of the lines of every category, and of all lines
+    private final Map<String, int[]> offsetsByCategory = new HashMap<>();
+    private final int[] allOffsets;
+    private final List<String> categories;
+
+    public WordService(@Value("${words.corpus-path:}") String corpusPath) {
+        Path path = corpusPath.isBlank() ? extractBundledCorpus() : Path.of(corpusPath);
+        this.corpus = map(path);
+
+        Map<String, OffsetList> index = new HashMap<>();
+        OffsetList all = new OffsetList();
+        int skipped = indexLines(index, all);
+        if (all.size == 0) {
+            throw new IllegalStateException("Word corpus " + path + " has no entries");
+        }
+        index.forEach((category, offsets) -> offsetsByCategory.put(category, offsets.toArray()));
+        this.allOffsets = all.toArray();
+        List<String> sorted = new ArrayList<>(offsetsByCategory.keySet());
+        Collections.sort(sorted);
+        this.categories = Collections.unmodifiableList(sorted);
+
+        log.info("Loaded {} words in {} categories from {}", allOffsets.length, categories.size(), path);
+        if (skipped > 0) {
+            log.warn("Skipped {} malformed lines of the word corpus {}", skipped, path);
+        }
+    }
 
     /**
-     * Gets a random word from the word list
+     * Gets a random word from the whole corpus
      * @return A random word
      */
     public String getRandomWord() {
-        int randomIndex = random.nextInt(wordList.size());
-        return wordList.get(randomIndex);
+        return wordAt(pick(allOffsets));
+    }
+
+    /**
+     * Gets a random word of the category
+     * @param category a category of getCategories, or null for any word
+     * @return A random word
+     * @throws IllegalArgumentException if there is no such category
+     */
+    public String getRandomWord(String category) {
+        if (category == null) {
+            return getRandomWord();
+        }
+        int[] offsets = offsetsByCategory.get(normalize(category));
+        if (offsets == null) {
+            throw new IllegalArgumentException("Unknown word category: " + category);
+        }
+        return wordAt(pick(offsets));
+    }
+
+    public boolean hasCategory(String category) {
+        return category != null && offsetsByCategory.containsKey(normalize(category));
+    }
+
+    // sorted, lower case
+    public List<String> getCategories() {
+        return categories;
+    }
+
+    public int getWordCount() {
+        return allOffsets.length;
+    }
+
+    private static int pick(int[] offsets) {
+        return offsets[ThreadLocalRandom.current().nextInt(offsets.length)];
+    }
+
+    // the word runs from the start of its line up to the first tab
+    private String wordAt(int offset) {
+        int end = offset;
+        while (corpus.get(end) != '\t') {
+            end++;
+        }
+        byte[] word = new byte[end - offset];
+        // absolute get, the position of the shared buffer is never touched
+        corpus.get(offset, word);
+        return new String(word, StandardCharsets.UTF_8);
+    }
+
+    // a single pass over the mapped file, the words themselves are not decoded
+    private int indexLines(Map<String, OffsetList> index, OffsetList all) {
+        int skipped = 0;
+        int limit = corpus.limit();
+        int lineStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = lineStart;
+            int firstTab = -1;
+            int secondTab = -1;
+            while (lineEnd < limit && corpus.get(lineEnd) != '\n') {
+                if (corpus.get(lineEnd) == '\t') {
+                    if (firstTab < 0) {
+                        firstTab = lineEnd;
+                    } else if (secondTab < 0) {
+                        secondTab = lineEnd;
+                    }
+                }
+                lineEnd++;
+            }
+            int contentEnd = lineEnd > lineStart && corpus.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            if (contentEnd > lineStart && corpus.get(lineStart) != '#') {
+                if (firstTab > lineStart && secondTab > firstTab + 1 && isDifficulty(secondTab + 1, contentEnd)) {
+                    String category = normalize(decode(firstTab + 1, secondTab));
+                    index.computeIfAbsent(category, c -> new OffsetList()).add(lineStart);
+                    all.add(lineStart);
+                } else {
+                    skipped++;
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        return skipped;
+    }
+
+    private boolean isDifficulty(int start, int end) {
+        if (end - start != 1) {
+            return false;
+        }
+        byte difficulty = corpus.get(start);
+        return difficulty >= '1' && difficulty <= '3';
+    }
+
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        corpus.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String normalize(String category) {
+        return category.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static MappedByteBuffer map(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Word corpus " + path + " is larger than 2 GB");
+            }
+            // the mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map word corpus " + path, e);
+        }
+    }
+
+    // a resource inside the jar cannot be mapped, it is copied to a temporary file first
+    private static Path extractBundledCorpus() {
+        try (InputStream in = WordService.class.getResourceAsStream(BUNDLED_CORPUS)) {
+            if (in == null) {
+                throw new IllegalStateException("Bundled word corpus " + BUNDLED_CORPUS + " is missing");
+            }
+            Path file = Files.createTempFile("words", ".tsv");
+            file.toFile().deleteOnExit();
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not extract the bundled word corpus", e);
+        }
+    }
+
+    private static final class OffsetList {
+
+        private int[] offsets = new int[64];
+        private int size;
+
+        void add(int offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(offsets, size);
+        }
     }
-} 
\ No newline at end of file
+}
@@ -1,12 +1,23 @@
 package ch.uzh.ifi.hase.soprafs24.websocket;
 
+import ch.uzh.ifi.hase.soprafs24.constant.GameErrorCode;
+
 public class GameSessionErrorMessage {
 
+    private GameErrorCode errorCode;
     private String errorMessage;
 
     // public GameSessionErrorMessages(String errorMessage) {
     //     this.errorMessage = errorMessage;
     // }
+    public GameErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    public void setErrorCode(GameErrorCode errorCode) {
+        this.errorCode = errorCode;
+    }
+
     public String getErrorMessage() {
         return errorMessage;
     }
@@ -1,10 +1,17 @@
 package ch.uzh.ifi.hase.soprafs24.websocket;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ActionType;
+import ch.uzh.ifi.hase.soprafs24.exceptions.GameRuleViolation;
+
 public class PlayerAction {
 
     private String gameSessionToken;
     private String actionType;
     private String actionContent;
+    // parsed from actionType on first use
+    private ActionType type;
 
     public String getGameSessionToken() {
         return gameSessionToken;
@@ -20,6 +27,19 @@ public class PlayerAction {
 
     public void setActionType(String actionType) {
         this.actionType = actionType;
+        this.type = null;
+    }
+
+    /**
+     * @return the action type as enum
+     * @throws GameRuleViolation if the action type is unknown
+     */
+    @JsonIgnore
+    public ActionType getType() {
+        if (type == null) {
+            type = ActionType.parse(actionType);
+        }
+        return type;
     }
 
     public String getActionContent() {
@@ -1,5 +1,7 @@
 package ch.uzh.ifi.hase.soprafs24.websocket;
 
+import java.util.Map;
+
 public class PlayerActionResult {
 
     private String actionType;
@@ -7,6 +9,7 @@ public class PlayerActionResult {
     private String actionResult;
     private String username;
     private String chameleonUsername;
+    private Map<String, Integer> voteCounts; // accused username -> votes so far, set on VOTE and END_VOTING
 
     public String getActionType() {
         return actionType;
@@ -47,4 +50,12 @@ public class PlayerActionResult {
     public void setChameleonUsername(String chameleonUsername) {
         this.chameleonUsername = chameleonUsername;
     }
+
+    public Map<String, Integer> getVoteCounts() {
+        return voteCounts;
+    }
+
+    public void setVoteCounts(Map<String, Integer> voteCounts) {
+        this.voteCounts = voteCounts;
+    }
 }
@@ -0,0 +1,34 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+import java.security.Principal;
+
+/**
+ * Principal bound to a websocket session once its auth token has been
+ * verified at CONNECT time. The name is the user id, which is also what
+ * per-user destinations (/user/...) are resolved against. Only the id and the
+ * username are kept, the user itself is resolved again for every message so a
+ * logout or a changed profile is seen by open connections.
+ */
+public class StompPrincipal implements Principal {
+
+    private final Long userId;
+    private final String username;
+
+    public StompPrincipal(Long userId, String username) {
+        this.userId = userId;
+        this.username = username;
+    }
+
+    @Override
+    public String getName() {
+        return String.valueOf(userId);
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+}
@@ -0,0 +1,33 @@
+package ch.uzh.ifi.hase.soprafs24.websocket;
+
+// sent to a single player once the video room of its game is ready
+public class VideoTokenMessage {
+
+    private String gameSessionToken;
+    private String roomSid;
+    private String token;
+
+    public String getGameSessionToken() {
+        return gameSessionToken;
+    }
+
+    public void setGameSessionToken(String gameSessionToken) {
+        this.gameSessionToken = gameSessionToken;
+    }
+
+    public String getRoomSid() {
+        return roomSid;
+    }
+
+    public void setRoomSid(String roomSid) {
+        this.roomSid = roomSid;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+}
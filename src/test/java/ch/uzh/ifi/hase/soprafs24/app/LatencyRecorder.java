@@ -0,0 +1,59 @@
+package ch.uzh.ifi.hase.soprafs24.app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects latencies per name, e.g. per REST endpoint or action type, and
+ * prints throughput and percentiles. Every sample is kept, which is fine for
+ * the size of a load test run.
+ */
+public class LatencyRecorder {
+
+    private final Map<String, List<Long>> samples = new ConcurrentHashMap<>();
+
+    public void record(String name, long nanos) {
+        List<Long> list = samples.computeIfAbsent(name, key -> new ArrayList<>());
+        synchronized (list) {
+            list.add(nanos);
+        }
+    }
+
+    public int count() {
+        int count = 0;
+        for (List<Long> list : samples.values()) {
+            synchronized (list) {
+                count += list.size();
+            }
+        }
+        return count;
+    }
+
+    public String report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-36s %8s %8s %9s %9s %9s%n", "name", "count", "per s", "p50 ms", "p99 ms",
+                "p999 ms"));
+        for (Map.Entry<String, List<Long>> entry : new TreeMap<>(samples).entrySet()) {
+            long[] sorted;
+            synchronized (entry.getValue()) {
+                sorted = entry.getValue().stream().mapToLong(Long::longValue).toArray();
+            }
+            Arrays.sort(sorted);
+            report.append(String.format("%-36s %8d %8.1f %9.2f %9.2f %9.2f%n", entry.getKey(), sorted.length,
+                    sorted.length / seconds, millis(sorted, 0.5), millis(sorted, 0.99), millis(sorted, 0.999)));
+        }
+        report.append(String.format("%-36s %8d %8.1f%n", "total", count(), count() / seconds));
+        return report.toString();
+    }
+
+    private static double millis(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,161 @@
+package ch.uzh.ifi.hase.soprafs24.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.test.annotation.DirtiesContext;
+
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerActionResult;
+
+/**
+ * Plays many games at the same time against a locally started server, over
+ * REST and STOMP like the real clients, and prints throughput and latency
+ * percentiles per REST endpoint and per action type. Not part of the normal
+ * test run:
+ *
+ * ./gradlew loadTest -Pload.games=50 -Pload.players=6 -Pload.think-millis=200
+ *
+ * Every game runs on its own thread and sends one action at a time, with a
+ * random think time of up to twice load.think-millis between two actions.
+ * Video rooms come from the in-process fake provider, which takes
+ * load.video-latency-millis per room like a remote call would, from a pool of
+ * load.video-pool rooms.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "video.provider=fake",
+        "video.fake.latency-millis=${load.video-latency-millis:300}",
+        "video.pool.size=${load.video-pool:4}"
+})
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class LoadTest {
+
+    private static final int GAMES = Integer.getInteger("load.games", 20);
+    private static final int PLAYERS = Integer.getInteger("load.players", 4);
+    private static final long THINK_MILLIS = Long.getLong("load.think-millis", 100);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    private final LatencyRecorder latencies = new LatencyRecorder();
+
+    @Test
+    public void concurrentGames() throws Exception {
+        ExecutorService games = Executors.newFixedThreadPool(GAMES);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> rounds = new ArrayList<>();
+            for (int game = 0; game < GAMES; game++) {
+                int id = game;
+                rounds.add(games.submit(() -> {
+                    playRound(id);
+                    return null;
+                }));
+            }
+            int failed = 0;
+            for (Future<?> round : rounds) {
+                try {
+                    round.get(10, TimeUnit.MINUTES);
+                } catch (Exception e) {
+                    failed++;
+                    e.printStackTrace();
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%d games of %d players in %.1f s, %.2f games/s%n", GAMES, PLAYERS, elapsed / 1e9,
+                    GAMES / (elapsed / 1e9));
+            System.out.print(latencies.report(elapsed));
+            assertEquals(0, failed, "games that did not finish");
+        } finally {
+            games.shutdownNow();
+        }
+    }
+
+    private void playRound(int game) throws Exception {
+        List<MockClient> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < PLAYERS; i++) {
+                MockClient client = new MockClient(port, restTemplate);
+                client.setLatencyRecorder(latencies);
+                client.createUser("load" + game + "x" + i + "x" + System.nanoTime());
+                clients.add(client);
+            }
+            MockClient admin = clients.get(0);
+            admin.createGame();
+            String gameToken = admin.getGameSession().getGameToken();
+            for (MockClient client : clients.subList(1, clients.size())) {
+                client.joinGame(gameToken, restTemplate);
+            }
+            for (MockClient client : clients) {
+                client.connectWebSocket();
+            }
+
+            expectResult(admin.sendPlayerActionAndWait("START_GAME", null));
+            think();
+
+            // each player looks up its role
+            MockClient chameleon = null;
+            for (MockClient client : clients) {
+                if ("CHAMELEON".equals(client.refreshGameState().getRole())) {
+                    chameleon = client;
+                }
+            }
+            assertNotNull(chameleon, "game " + game + " has no chameleon");
+
+            for (int i = 0; i < PLAYERS; i++) {
+                String turn = admin.refreshGameState().getCurrentTurn();
+                MockClient current = clients.stream()
+                        .filter(client -> client.getUsername().equals(turn))
+                        .findFirst()
+                        .orElseThrow();
+                expectResult(current.sendPlayerActionAndWait("GIVE_HINT", "hint" + i));
+                think();
+            }
+
+            expectResult(admin.sendPlayerActionAndWait("START_VOTING", null));
+            think();
+            // everybody accuses the chameleon, until the outcome is decided
+            for (MockClient client : clients) {
+                PlayerActionResult result = expectResult(
+                        client.sendPlayerActionAndWait("VOTE", chameleon.getUsername()));
+                think();
+                if ("END_VOTING".equals(result.getActionType())) {
+                    break;
+                }
+            }
+
+            expectResult(chameleon.sendPlayerActionAndWait("CHAMELEON_GUESS", "wrongguess"));
+        } finally {
+            clients.forEach(MockClient::disconnect);
+        }
+    }
+
+    private static PlayerActionResult expectResult(Object reply) {
+        if (!(reply instanceof PlayerActionResult)) {
+            throw new IllegalStateException("Expected a result but got " + reply);
+        }
+        return (PlayerActionResult) reply;
+    }
+
+    private static void think() throws InterruptedException {
+        if (THINK_MILLIS > 0) {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(2 * THINK_MILLIS + 1));
+        }
+    }
+}
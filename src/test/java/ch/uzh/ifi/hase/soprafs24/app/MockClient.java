@@ -2,6 +2,7 @@ package ch.uzh.ifi.hase.soprafs24.app;
 
 import java.lang.reflect.Type;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -18,15 +19,18 @@ import org.springframework.messaging.simp.stomp.StompFrameHandler;
 import org.springframework.messaging.simp.stomp.StompHeaders;
 import org.springframework.messaging.simp.stomp.StompSession;
 import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
 import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 import org.springframework.web.socket.messaging.WebSocketStompClient;
 import org.springframework.web.socket.sockjs.client.SockJsClient;
 import org.springframework.web.socket.sockjs.client.WebSocketTransport;
 
 import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.controller.GameSessionController;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.GameSessionGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserGetDTO;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
+import ch.uzh.ifi.hase.soprafs24.websocket.GameSessionErrorMessage;
 import ch.uzh.ifi.hase.soprafs24.websocket.PlayerAction;
 import ch.uzh.ifi.hase.soprafs24.websocket.PlayerActionResult;
 
@@ -43,6 +47,11 @@ public class MockClient {
     private WebSocketStompClient stompClient;
     private StompSession stompSession;
 
+    // set by the load test to time REST calls and player actions, and to keep quiet
+    private LatencyRecorder latencyRecorder;
+    // completed by the next result or error this client receives
+    private volatile CompletableFuture<Object> pendingReply;
+
     // getters and setters
     public String getUsername() {
         return username;
@@ -69,14 +78,18 @@ public class MockClient {
         this.restTemplate = restTemplate;
     }
 
+    public void setLatencyRecorder(LatencyRecorder latencyRecorder) {
+        this.latencyRecorder = latencyRecorder;
+    }
+
     public void createUser(String username) {
         this.username = username;
         UserPostDTO dto = new UserPostDTO();
         dto.setUsername(username);
         dto.setPassword(username + "Password");
 
-        ResponseEntity<UserGetDTO> registerResp = restTemplate.exchange(
-                url("/register"),
+        ResponseEntity<UserGetDTO> registerResp = exchange(restTemplate,
+                "/register",
                 HttpMethod.POST,
                 new HttpEntity<>(dto, jsonHeaders()),
                 UserGetDTO.class
@@ -90,8 +103,8 @@ public class MockClient {
     public void createGame() {
         HttpHeaders authHeaders1 = bearerHeaders(this.authToken);
 
-        ResponseEntity<GameSessionGetDTO> createResp = restTemplate.exchange(
-                url("/game"),
+        ResponseEntity<GameSessionGetDTO> createResp = exchange(restTemplate,
+                "/game",
                 HttpMethod.POST,
                 new HttpEntity<>(null, authHeaders1),
                 GameSessionGetDTO.class
@@ -106,8 +119,8 @@ public class MockClient {
 
     public void joinGame(String gameSessionToken, TestRestTemplate restTemplate) {
         HttpHeaders headers = bearerHeaders(this.authToken);
-        ResponseEntity<GameSessionGetDTO> joinResp = restTemplate.exchange(
-                url("/game/join/{gameToken}"),
+        ResponseEntity<GameSessionGetDTO> joinResp = exchange(restTemplate,
+                "/game/join/{gameToken}",
                 HttpMethod.POST,
                 new HttpEntity<>(null, headers),
                 GameSessionGetDTO.class,
@@ -128,8 +141,11 @@ public class MockClient {
         stompClient.setMessageConverter(new MappingJackson2MessageConverter());
 
         String ws_endpoint = "ws://localhost:" + port + "/game-ws";
+        // authenticate once on the CONNECT frame
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("auth-token", this.authToken);
         stompSession = stompClient
-                .connect(ws_endpoint, new StompSessionHandlerAdapter() {
+                .connect(ws_endpoint, new WebSocketHttpHeaders(), connectHeaders, new StompSessionHandlerAdapter() {
                 }).get(3, TimeUnit.SECONDS);
 
         // Subscribe to the game session topic
@@ -144,6 +160,29 @@ public class MockClient {
                 handleWsMessage((PlayerActionResult) payload);
             }
         });
+        // errors are only sent to the client whose action failed
+        stompSession.subscribe("/user" + GameSessionController.USER_ERROR_DESTINATION, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return GameSessionErrorMessage.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                GameSessionErrorMessage error = (GameSessionErrorMessage) payload;
+                print(username + ": received error " + error.getErrorCode() + " : " + error.getErrorMessage());
+                completePendingReply(error);
+            }
+        });
+    }
+
+    public void disconnect() {
+        if (stompSession != null) {
+            stompSession.disconnect();
+        }
+        if (stompClient != null) {
+            stompClient.stop();
+        }
     }
 
     public void sendPlayerAction(String actionType, String actionContent) {
@@ -154,15 +193,46 @@ public class MockClient {
 
         StompHeaders stompHeaders = new StompHeaders();
         stompHeaders.setDestination("/game/player-action");
-        stompHeaders.add("auth-token", this.authToken);
         stompSession.send(stompHeaders, action);
-        System.out.println(username + ": sent action type: " + actionType);
+        print(username + ": sent action type: " + actionType);
+    }
+
+    /**
+     * Sends the action and waits for the result broadcast to the game or the
+     * error sent back to this client. Only correct as long as no other action
+     * of the game is in flight at the same time.
+     *
+     * @return the PlayerActionResult or GameSessionErrorMessage received
+     */
+    public Object sendPlayerActionAndWait(String actionType, String actionContent) throws Exception {
+        CompletableFuture<Object> reply = new CompletableFuture<>();
+        pendingReply = reply;
+        long start = System.nanoTime();
+        sendPlayerAction(actionType, actionContent);
+        Object result = reply.get(10, TimeUnit.SECONDS);
+        if (latencyRecorder != null) {
+            latencyRecorder.record("STOMP " + actionType, System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    private void completePendingReply(Object reply) {
+        CompletableFuture<Object> pending = pendingReply;
+        if (pending != null) {
+            pendingReply = null;
+            pending.complete(reply);
+        }
+    }
+
+    public GameSessionGetDTO refreshGameState() {
+        updateGameState();
+        return gameSession;
     }
 
     private void updateGameState() {
         HttpHeaders headers = bearerHeaders(this.authToken);
-        ResponseEntity<GameSessionGetDTO> result = restTemplate.exchange(
-                url("/game/info/{gameToken}"),
+        ResponseEntity<GameSessionGetDTO> result = exchange(restTemplate,
+                "/game/info/{gameToken}",
                 HttpMethod.GET,
                 new HttpEntity<>(null, headers),
                 GameSessionGetDTO.class,
@@ -171,22 +241,27 @@ public class MockClient {
         gameSession = result.getBody();
         assertNotNull(gameSession);
         // log the current turn
-        System.out.println(username + " updated game state. Current turn: " + gameSession.getCurrentTurn());
+        print(username + " updated game state. Current turn: " + gameSession.getCurrentTurn());
     }
 
     private void handleWsMessage(PlayerActionResult playActionResult) {
         // Handle the message received from the server
-        System.out.println(username + ": received action " + playActionResult.getActionType() + " : " + playActionResult.getActionContent());
+        print(username + ": received action " + playActionResult.getActionType() + " : " + playActionResult.getActionContent());
+        // VIDEO_READY and VIDEO_DEGRADED come from the background, they answer no action
+        if (playActionResult.getActionType().startsWith("VIDEO_")) {
+            return;
+        }
+        completePendingReply(playActionResult);
         updateGameState();
         switch (playActionResult.getActionType()) {
             case "START_GAME":
             if (!GameState.STARTED.equals(gameSession.getGameState())) {
-            System.out.println(username + ": Error: Expected game state STARTED but was " + gameSession.getGameState());
+            print(username + ": Error: Expected game state STARTED but was " + gameSession.getGameState());
             }
             break;
             case "START_VOTING":
             if (!GameState.VOTING.equals(gameSession.getGameState())) {
-            System.out.println(username + ": Error: Expected game state VOTING but was " + gameSession.getGameState());
+            print(username + ": Error: Expected game state VOTING but was " + gameSession.getGameState());
             }
             break;
         }
@@ -197,6 +272,24 @@ public class MockClient {
         return "http://localhost:" + port + path;
     }
 
+    // REST call, timed per endpoint when recording latencies
+    private <T> ResponseEntity<T> exchange(TestRestTemplate template, String path, HttpMethod method,
+            HttpEntity<?> entity, Class<T> responseType, Object... uriVariables) {
+        long start = System.nanoTime();
+        ResponseEntity<T> response = template.exchange(url(path), method, entity, responseType, uriVariables);
+        if (latencyRecorder != null) {
+            latencyRecorder.record(method.name() + " " + path, System.nanoTime() - start);
+        }
+        return response;
+    }
+
+    // the load test runs quietly, thousands of these lines would only slow it down
+    private void print(String line) {
+        if (latencyRecorder == null) {
+            System.out.println(line);
+        }
+    }
+
     // JSON content headers
     private HttpHeaders jsonHeaders() {
         HttpHeaders h = new HttpHeaders();
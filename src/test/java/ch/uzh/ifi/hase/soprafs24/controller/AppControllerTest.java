@@ -1,5 +1,6 @@
 package ch.uzh.ifi.hase.soprafs24.controller;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -22,6 +23,8 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import org.springframework.web.server.ResponseStatusException;
@@ -35,7 +38,9 @@ import ch.uzh.ifi.hase.soprafs24.entity.Player;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
 import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import ch.uzh.ifi.hase.soprafs24.service.AppService;
+import ch.uzh.ifi.hase.soprafs24.service.LeaderboardService;
 import ch.uzh.ifi.hase.soprafs24.service.TwilioService;
+import ch.uzh.ifi.hase.soprafs24.service.VideoTokenCache;
 
 /**
  * UserControllerTest This is a WebMvcTest which allows to test the
@@ -54,6 +59,9 @@ public class AppControllerTest {
     @MockBean
     private TwilioService twilioService;
 
+    @MockBean
+    private LeaderboardService leaderboardService;
+
     /// GET /users
     /// successfully gets list of all users
     /// 200 OK
@@ -350,7 +358,7 @@ public class AppControllerTest {
 
         given(appService.isUserTokenValid(Mockito.anyString())).willReturn(true);
         given(appService.getUserByToken(Mockito.anyString())).willReturn(user);
-        given(appService.createGameSession(Mockito.any())).willReturn(gameSession);
+        given(appService.createGameSession(Mockito.any(), Mockito.any())).willReturn(gameSession);
         given(appService.addToGameSession(Mockito.any(), Mockito.any())).willReturn(player);
 
         MockHttpServletRequestBuilder postRequest = post("/game")
@@ -387,7 +395,7 @@ public class AppControllerTest {
 
         given(appService.isUserTokenValid(Mockito.anyString())).willReturn(true);
         given(appService.getUserByToken(Mockito.anyString())).willReturn(user);
-        given(appService.createGameSession(Mockito.any())).willReturn(gameSession);
+        given(appService.createGameSession(Mockito.any(), Mockito.any())).willReturn(gameSession);
         given(appService.addToGameSession(Mockito.any(), Mockito.any())).willReturn(player);
 
         // when/then
@@ -402,6 +410,53 @@ public class AppControllerTest {
                 .andExpect(jsonPath("$.twilioRoomSid", is(gameSession.getTwilioRoomSid())));
     }
 
+    /// POST /game?category=animals
+    /// game session created with the words of the chosen category
+    /// 201 Created
+    @Test
+    public void createGameSession_withCategory_success() throws Exception {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("testUser");
+
+        GameSession gameSession = new GameSession();
+        gameSession.setId(1L);
+        gameSession.setCreator(user);
+        gameSession.setGameToken("testGameToken");
+        gameSession.setWordCategory("animals");
+        gameSession.setCurrentState(GameState.WAITING_FOR_PLAYERS);
+
+        Player player = new Player();
+        player.setUser(user);
+        player.setGameSession(gameSession);
+
+        given(appService.isUserTokenValid(Mockito.anyString())).willReturn(true);
+        given(appService.getUserByToken(Mockito.anyString())).willReturn(user);
+        given(appService.createGameSession(user, "animals")).willReturn(gameSession);
+        given(appService.addToGameSession(Mockito.any(), Mockito.any())).willReturn(player);
+
+        MockHttpServletRequestBuilder postRequest = post("/game")
+                .param("category", "animals")
+                .header("Authorization", "validToken");
+
+        mockMvc.perform(postRequest)
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.wordCategory", is("animals")));
+    }
+
+    /// GET /game/categories
+    /// lists the word categories
+    /// 200 OK
+    @Test
+    public void getWordCategories_success() throws Exception {
+        given(appService.getWordCategories()).willReturn(List.of("animals", "food"));
+
+        mockMvc.perform(get("/game/categories"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0]", is("animals")));
+    }
+
     /// POST /game
     /// Invalid game creation request
     /// 401 Unauthorized
@@ -428,7 +483,7 @@ public class AppControllerTest {
 
         given(appService.isUserTokenValid("validToken")).willReturn(true);
         given(appService.getUserByToken("validToken")).willReturn(user);
-        given(appService.createGameSession(user))
+        given(appService.createGameSession(user, null))
                 .willThrow(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid game creation request"));
 
         MockHttpServletRequestBuilder postRequest = post("/game")
@@ -646,7 +701,7 @@ public class AppControllerTest {
 
         Player currentTurnPlayer = new Player();
         currentTurnPlayer.setUser(user);
-        gameSession.setCurrentPlayerTurn(currentTurnPlayer);
+        given(appService.getCurrentTurnPlayer(gameSession)).willReturn(currentTurnPlayer);
 
         given(appService.isUserTokenValid(Mockito.anyString())).willReturn(true);
         given(appService.getUserByToken(Mockito.anyString())).willReturn(user);
@@ -693,7 +748,7 @@ public class AppControllerTest {
         // Set up current turn player
         Player currentTurnPlayer = new Player();
         currentTurnPlayer.setUser(user);
-        gameSession.setCurrentPlayerTurn(currentTurnPlayer);
+        given(appService.getCurrentTurnPlayer(gameSession)).willReturn(currentTurnPlayer);
 
         given(appService.isUserTokenValid(Mockito.anyString())).willReturn(true);
         given(appService.getUserByToken(Mockito.anyString())).willReturn(user);
@@ -765,6 +820,83 @@ public class AppControllerTest {
                 .andExpect(status().isUnauthorized());
     }
 
+    /// GET /game/video-token/{gameToken}
+    /// successfully gets the video token of the player
+    /// 200 OK
+    @Test
+    public void getVideoToken_success() throws Exception {
+        // given
+        User user = new User();
+        user.setUsername("user");
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("testToken");
+        gameSession.setTwilioRoomSid("RM123");
+        Instant expiresAt = Instant.ofEpochMilli(1700000000000L);
+
+        given(appService.isUserTokenValid(Mockito.anyString())).willReturn(true);
+        given(appService.getUserByToken(Mockito.anyString())).willReturn(user);
+        given(appService.getGameSessionByGameToken("testToken")).willReturn(gameSession);
+        given(appService.isUserInGameSession(user, gameSession)).willReturn(true);
+        given(appService.refreshVideoToken(user, gameSession))
+                .willReturn(new VideoTokenCache.VideoToken("video-token", expiresAt));
+
+        MockHttpServletRequestBuilder getRequest = get("/game/video-token/testToken")
+                .header("Authorization", "validToken");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.roomSid", is("RM123")))
+                .andExpect(jsonPath("$.token", is("video-token")))
+                .andExpect(jsonPath("$.expiresAt", is(1700000000000L)));
+    }
+
+    /// GET /game/video-token/{gameToken}
+    /// fail while the video room is still being created
+    /// 409 Conflict
+    @Test
+    public void getVideoToken_roomNotReady() throws Exception {
+        // given
+        User user = new User();
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("testToken");
+
+        given(appService.isUserTokenValid(Mockito.anyString())).willReturn(true);
+        given(appService.getUserByToken(Mockito.anyString())).willReturn(user);
+        given(appService.getGameSessionByGameToken("testToken")).willReturn(gameSession);
+        given(appService.isUserInGameSession(user, gameSession)).willReturn(true);
+        given(appService.refreshVideoToken(user, gameSession))
+                .willThrow(new ResponseStatusException(HttpStatus.CONFLICT, "Video room is not ready"));
+
+        MockHttpServletRequestBuilder getRequest = get("/game/video-token/testToken")
+                .header("Authorization", "validToken");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isConflict());
+    }
+
+    /// GET /game/video-token/{gameToken}
+    /// fail to retrieve due to user not in game session
+    /// 401 Unauthorized
+    @Test
+    public void getVideoToken_userNotInGame() throws Exception {
+        // given
+        User user = new User();
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("testToken");
+
+        given(appService.isUserTokenValid(Mockito.anyString())).willReturn(true);
+        given(appService.getUserByToken(Mockito.anyString())).willReturn(user);
+        given(appService.getGameSessionByGameToken("testToken")).willReturn(gameSession);
+        given(appService.isUserInGameSession(user, gameSession)).willReturn(false);
+
+        MockHttpServletRequestBuilder getRequest = get("/game/video-token/testToken")
+                .header("Authorization", "validToken");
+
+        mockMvc.perform(getRequest)
+                .andExpect(status().isUnauthorized());
+        Mockito.verify(appService, Mockito.never()).refreshVideoToken(Mockito.any(), Mockito.any());
+    }
+
     /// GET /users
     /// successfully gets list of all users with their stats
     /// 200 OK
@@ -849,35 +981,77 @@ public class AppControllerTest {
                 .andExpect(status().isUnsupportedMediaType());
     }
 
+    /// GET /users/{id}/avatar
+    /// returns the image with its content hash as ETag
+    /// 200 OK
     @Test
-    public void getLeaderboard_success() throws Exception {
+    public void getAvatar_success() throws Exception {
         // given
-        List<User> users = new ArrayList<>();
+        User user = new User();
+        user.setId(1L);
+        user.setAvatarVersion("abc123");
+        byte[] avatar = "testAvatar".getBytes();
 
-        // Create test users with different win rates
-        User user1 = new User();
-        user1.setId(1L);
-        user1.setUsername("player1");
-        user1.setWins(10);
-        user1.setRoundsPlayed(20);
-        users.add(user1);
+        given(appService.getUserById(1L)).willReturn(user);
+        given(appService.getAvatar(1L)).willReturn(avatar);
 
-        User user2 = new User();
-        user2.setId(2L);
-        user2.setUsername("player2");
-        user2.setWins(5);
-        user2.setRoundsPlayed(10);
-        users.add(user2);
-
-        User user3 = new User();
-        user3.setId(3L);
-        user3.setUsername("player3");
-        user3.setWins(0);
-        user3.setRoundsPlayed(5);
-        users.add(user3);
+        // when/then
+        mockMvc.perform(get("/users/1/avatar"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"abc123\""))
+                .andExpect(header().string("Cache-Control", org.hamcrest.Matchers.containsString("max-age")))
+                .andExpect(content().contentType(MediaType.IMAGE_JPEG))
+                .andExpect(content().bytes(avatar));
+    }
+
+    /// GET /users/{id}/avatar
+    /// client already has the current version, the blob is not loaded
+    /// 304 Not Modified
+    @Test
+    public void getAvatar_notModified() throws Exception {
+        // given
+        User user = new User();
+        user.setId(1L);
+        user.setAvatarVersion("abc123");
+
+        given(appService.getUserById(1L)).willReturn(user);
+
+        // when/then
+        mockMvc.perform(get("/users/1/avatar").header("If-None-Match", "\"abc123\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"abc123\""));
+        verify(appService, Mockito.never()).getAvatar(Mockito.any());
+    }
+
+    /// GET /users/{id}/avatar
+    /// user has not uploaded an avatar
+    /// 404 Not Found
+    @Test
+    public void getAvatar_noAvatar_notFound() throws Exception {
+        User user = new User();
+        user.setId(1L);
+
+        given(appService.getUserById(1L)).willReturn(user);
+
+        mockMvc.perform(get("/users/1/avatar"))
+                .andExpect(status().isNotFound());
+    }
+
+    /// GET /leaderboard
+    /// returns the requested page of the ranking
+    /// 200 OK
+    @Test
+    public void getLeaderboard_success() throws Exception {
+        // given
+        LeaderboardService.Entry user1 = new LeaderboardService.Entry(1L, "player1", 10, 20, "abc");
+        LeaderboardService.Entry user2 = new LeaderboardService.Entry(2L, "player2", 5, 10, null);
+        LeaderboardService.Entry user3 = new LeaderboardService.Entry(3L, "player3", 0, 5, null);
 
         // when
-        given(appService.getUsers()).willReturn(users);
+        given(leaderboardService.getPage(0, 100)).willReturn(List.of(
+                new LeaderboardService.RankedEntry(1, user1),
+                new LeaderboardService.RankedEntry(2, user2),
+                new LeaderboardService.RankedEntry(3, user3)));
 
         // then
         mockMvc.perform(get("/leaderboard")
@@ -885,30 +1059,27 @@ public class AppControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(3)))
                 // Check first place (player1)
-                .andExpect(jsonPath("$[0].id", is(user1.getId().intValue())))
-                .andExpect(jsonPath("$[0].username", is(user1.getUsername())))
-                .andExpect(jsonPath("$[0].wins", is(user1.getWins())))
-                .andExpect(jsonPath("$[0].roundsPlayed", is(user1.getRoundsPlayed())))
+                .andExpect(jsonPath("$[0].rank", is(1)))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[0].username", is("player1")))
+                .andExpect(jsonPath("$[0].wins", is(10)))
+                .andExpect(jsonPath("$[0].roundsPlayed", is(20)))
                 .andExpect(jsonPath("$[0].winRate", is(0.5)))
+                .andExpect(jsonPath("$[0].avatarUrl", is("/users/1/avatar?v=abc")))
                 // Check second place (player2)
-                .andExpect(jsonPath("$[1].id", is(user2.getId().intValue())))
-                .andExpect(jsonPath("$[1].username", is(user2.getUsername())))
-                .andExpect(jsonPath("$[1].wins", is(user2.getWins())))
-                .andExpect(jsonPath("$[1].roundsPlayed", is(user2.getRoundsPlayed())))
+                .andExpect(jsonPath("$[1].rank", is(2)))
+                .andExpect(jsonPath("$[1].id", is(2)))
                 .andExpect(jsonPath("$[1].winRate", is(0.5)))
                 // Check third place (player3)
-                .andExpect(jsonPath("$[2].id", is(user3.getId().intValue())))
-                .andExpect(jsonPath("$[2].username", is(user3.getUsername())))
-                .andExpect(jsonPath("$[2].wins", is(user3.getWins())))
-                .andExpect(jsonPath("$[2].roundsPlayed", is(user3.getRoundsPlayed())))
+                .andExpect(jsonPath("$[2].rank", is(3)))
+                .andExpect(jsonPath("$[2].id", is(3)))
                 .andExpect(jsonPath("$[2].winRate", is(0.0)));
     }
 
     @Test
     public void getLeaderboard_emptyList() throws Exception {
         // given
-        List<User> emptyList = new ArrayList<>();
-        given(appService.getUsers()).willReturn(emptyList);
+        given(leaderboardService.getPage(0, 100)).willReturn(new ArrayList<>());
 
         // when/then
         mockMvc.perform(get("/leaderboard")
@@ -920,29 +1091,62 @@ public class AppControllerTest {
     @Test
     public void getLeaderboard_zeroRoundsPlayed() throws Exception {
         // given
-        List<User> users = new ArrayList<>();
-
-        User user = new User();
-        user.setId(1L);
-        user.setUsername("player1");
-        user.setWins(0);
-        user.setRoundsPlayed(0);
-        users.add(user);
-
-        given(appService.getUsers()).willReturn(users);
+        LeaderboardService.Entry user = new LeaderboardService.Entry(1L, "player1", 0, 0, null);
+        given(leaderboardService.getPage(0, 100)).willReturn(List.of(new LeaderboardService.RankedEntry(1, user)));
 
         // when/then
         mockMvc.perform(get("/leaderboard")
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(1)))
-                .andExpect(jsonPath("$[0].id", is(user.getId().intValue())))
-                .andExpect(jsonPath("$[0].username", is(user.getUsername())))
-                .andExpect(jsonPath("$[0].wins", is(user.getWins())))
-                .andExpect(jsonPath("$[0].roundsPlayed", is(user.getRoundsPlayed())))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[0].username", is("player1")))
+                .andExpect(jsonPath("$[0].wins", is(0)))
+                .andExpect(jsonPath("$[0].roundsPlayed", is(0)))
                 .andExpect(jsonPath("$[0].winRate", is(0.0)));
     }
 
+    @Test
+    public void getLeaderboard_pagination_limitIsCapped() throws Exception {
+        given(leaderboardService.getPage(50, 1000)).willReturn(new ArrayList<>());
+
+        mockMvc.perform(get("/leaderboard?offset=50&limit=5000"))
+                .andExpect(status().isOk());
+
+        verify(leaderboardService).getPage(50, 1000);
+    }
+
+    @Test
+    public void getLeaderboard_negativeOffset_badRequest() throws Exception {
+        mockMvc.perform(get("/leaderboard?offset=-1"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /// GET /users/{id}/rank
+    /// returns the rank of a single user
+    /// 200 OK
+    @Test
+    public void getUserRank_success() throws Exception {
+        LeaderboardService.Entry user = new LeaderboardService.Entry(7L, "player7", 3, 4, null);
+        given(leaderboardService.getRank(7L)).willReturn(new LeaderboardService.RankedEntry(42, user));
+
+        mockMvc.perform(get("/users/7/rank"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rank", is(42)))
+                .andExpect(jsonPath("$.id", is(7)))
+                .andExpect(jsonPath("$.winRate", is(0.75)));
+    }
+
+    /// GET /users/{id}/rank
+    /// 404 NOT FOUND
+    @Test
+    public void getUserRank_unknownUser_notFound() throws Exception {
+        given(leaderboardService.getRank(7L)).willReturn(null);
+
+        mockMvc.perform(get("/users/7/rank"))
+                .andExpect(status().isNotFound());
+    }
+
     /**
      * Helper Method to convert userPostDTO into a JSON string such that the
      * input can be processed Input will look like this: {"name": "Test User",
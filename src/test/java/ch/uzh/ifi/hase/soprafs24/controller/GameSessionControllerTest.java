@@ -6,6 +6,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -14,6 +15,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import static org.mockito.BDDMockito.given;
 import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.web.server.LocalServerPort;
@@ -24,11 +26,17 @@ import org.springframework.messaging.simp.stomp.StompSession;
 import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
 import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 import org.springframework.web.socket.messaging.WebSocketStompClient;
 import org.springframework.web.socket.sockjs.client.SockJsClient;
 import org.springframework.web.socket.sockjs.client.WebSocketTransport;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameErrorCode;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.GameRuleViolation;
 import ch.uzh.ifi.hase.soprafs24.service.AppService;
 import ch.uzh.ifi.hase.soprafs24.service.GameSessionService;
 import ch.uzh.ifi.hase.soprafs24.service.TwilioService;
@@ -53,6 +61,9 @@ public class GameSessionControllerTest {
     @MockBean
     private TwilioService twilioService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     private WebSocketStompClient stompClient;
 
     @BeforeEach
@@ -212,4 +223,152 @@ public class GameSessionControllerTest {
         assertNotNull("Error message should not be null", errorMsg);
         assertTrue(errorMsg.contains("Service error"), "Unexpected error message");
     }
+
+    @Test
+    public void testPlayerAction_ruleViolation_receivesErrorCode() throws Exception {
+        // given
+        String token = "ruleToken";
+        given(appService.isUserTokenValid(token)).willReturn(true);
+        given(appService.isGameTokenValid(Mockito.any())).willReturn(true);
+        given(gameSessionService.handlePlayerAction(Mockito.any(), Mockito.any(), Mockito.any()))
+                .willThrow(new GameRuleViolation(GameErrorCode.WRONG_TURN, "Wrong player turn"));
+        double rejectedBefore = meterRegistry.counter("game.actions.rejected", "code", "WRONG_TURN").count();
+
+        String url = "ws://localhost:" + port + "/game-ws";
+        StompSession session = stompClient.connect(url, new StompSessionHandlerAdapter() {
+        }).get(3, TimeUnit.SECONDS);
+
+        final CountDownLatch errorReceived = new CountDownLatch(1);
+        final AtomicReference<GameSessionErrorMessage> errorMessageRef = new AtomicReference<>();
+        session.subscribe("/game/topic/user/" + token, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return GameSessionErrorMessage.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                errorMessageRef.set((GameSessionErrorMessage) payload);
+                errorReceived.countDown();
+            }
+        });
+
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination("/game/player-action");
+        headers.add("auth-token", token);
+        session.send(headers, new PlayerAction());
+
+        if (!errorReceived.await(3, TimeUnit.SECONDS)) {
+            fail("Expected error message was not received.");
+        }
+        assertEquals(GameErrorCode.WRONG_TURN, errorMessageRef.get().getErrorCode());
+        assertTrue(errorMessageRef.get().getErrorMessage().contains("Wrong player turn"), "Unexpected error message");
+        assertEquals(rejectedBefore + 1,
+                meterRegistry.counter("game.actions.rejected", "code", "WRONG_TURN").count());
+    }
+
+    @Test
+    public void testPlayerAction_authenticatedAtConnect_errorOnUserDestination() throws Exception {
+        // given
+        String token = "connectToken";
+        User user = new User();
+        user.setId(7L);
+        user.setUsername("connectUser");
+        user.setToken(token);
+
+        given(appService.isUserTokenValid(token)).willReturn(true);
+        given(appService.getUserByToken(token)).willReturn(user);
+        given(appService.getLoggedInUser(7L)).willReturn(user);
+        given(appService.isGameTokenValid(Mockito.any())).willReturn(true);
+        given(gameSessionService.handlePlayerAction(Mockito.any(), Mockito.any(), Mockito.any()))
+                .willThrow(new Exception("Service error"));
+
+        // Connect to the WebSocket server, authenticating on the CONNECT frame.
+        String url = "ws://localhost:" + port + "/game-ws";
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("auth-token", token);
+        StompSession session = stompClient.connect(url, new WebSocketHttpHeaders(), connectHeaders,
+                new StompSessionHandlerAdapter() {
+        }).get(3, TimeUnit.SECONDS);
+
+        final CountDownLatch errorReceived = new CountDownLatch(1);
+        final AtomicReference<String> errorMessageRef = new AtomicReference<>();
+
+        // Subscribe to the per-user error destination.
+        session.subscribe("/user" + GameSessionController.USER_ERROR_DESTINATION, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return GameSessionErrorMessage.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                GameSessionErrorMessage errorMessage = (GameSessionErrorMessage) payload;
+                errorMessageRef.set(errorMessage.getErrorMessage());
+                errorReceived.countDown();
+            }
+        });
+
+        // Send a message without any per-message auth header.
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination("/game/player-action");
+        session.send(headers, new PlayerAction());
+
+        if (!errorReceived.await(3, TimeUnit.SECONDS)) {
+            fail("Expected error message was not received.");
+        }
+        assertTrue(errorMessageRef.get().contains("Service error"), "Unexpected error message");
+        // the token was only resolved once, at CONNECT, the message resolved the user by id
+        Mockito.verify(appService, Mockito.times(1)).getUserByToken(token);
+        Mockito.verify(appService).getLoggedInUser(7L);
+    }
+
+    @Test
+    public void testPlayerAction_loggedOutAfterConnect_receivesError() throws Exception {
+        // given
+        String token = "loggedOutToken";
+        User user = new User();
+        user.setId(8L);
+        user.setUsername("loggedOutUser");
+        user.setToken(token);
+
+        given(appService.isUserTokenValid(token)).willReturn(true);
+        given(appService.getUserByToken(token)).willReturn(user);
+        // the user logged out after the connection was opened
+        given(appService.getLoggedInUser(8L)).willReturn(null);
+
+        String url = "ws://localhost:" + port + "/game-ws";
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("auth-token", token);
+        StompSession session = stompClient.connect(url, new WebSocketHttpHeaders(), connectHeaders,
+                new StompSessionHandlerAdapter() {
+        }).get(3, TimeUnit.SECONDS);
+
+        final CountDownLatch errorReceived = new CountDownLatch(1);
+        final AtomicReference<GameSessionErrorMessage> errorMessageRef = new AtomicReference<>();
+
+        session.subscribe("/user" + GameSessionController.USER_ERROR_DESTINATION, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return GameSessionErrorMessage.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                errorMessageRef.set((GameSessionErrorMessage) payload);
+                errorReceived.countDown();
+            }
+        });
+
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination("/game/player-action");
+        session.send(headers, new PlayerAction());
+
+        if (!errorReceived.await(3, TimeUnit.SECONDS)) {
+            fail("Expected error message was not received.");
+        }
+        assertEquals(GameErrorCode.INVALID_AUTH_TOKEN, errorMessageRef.get().getErrorCode());
+        Mockito.verify(gameSessionService, Mockito.never())
+                .handlePlayerAction(Mockito.any(), Mockito.any(), Mockito.any());
+    }
 }
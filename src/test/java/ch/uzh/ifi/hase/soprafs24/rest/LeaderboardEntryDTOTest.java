@@ -18,8 +18,8 @@ public class LeaderboardEntryDTOTest {
         dto.setWins(10);
         dto.setRoundsPlayed(20);
         dto.setWinRate(0.5);
-        byte[] avatar = new byte[]{1, 2, 3};
-        dto.setAvatar(avatar);
+        dto.setAvatarVersion("abc123");
+        dto.setAvatarUrl("/users/1/avatar?v=abc123");
 
         // then
         assertNotNull(dto);
@@ -28,6 +28,7 @@ public class LeaderboardEntryDTOTest {
         assertEquals(10, dto.getWins());
         assertEquals(20, dto.getRoundsPlayed());
         assertEquals(0.5, dto.getWinRate());
-        assertEquals(avatar, dto.getAvatar());
+        assertEquals("abc123", dto.getAvatarVersion());
+        assertEquals("/users/1/avatar?v=abc123", dto.getAvatarUrl());
     }
 }
\ No newline at end of file
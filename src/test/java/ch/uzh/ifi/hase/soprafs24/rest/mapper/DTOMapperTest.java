@@ -6,6 +6,7 @@ import ch.uzh.ifi.hase.soprafs24.rest.dto.UserPostDTO;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 /**
  * DTOMapperTest
@@ -44,4 +45,28 @@ public class DTOMapperTest {
     // assertEquals(user.getName(), userGetDTO.getName());
     assertEquals(user.getUsername(), userGetDTO.getUsername());
   }
+
+  @Test
+  public void testGetUser_withAvatar_mapsAvatarUrl() {
+    User user = new User();
+    user.setId(3L);
+    user.setUsername("username");
+    user.setAvatarVersion("0a1b2c3d");
+
+    UserGetDTO userGetDTO = UserDTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+
+    assertEquals("0a1b2c3d", userGetDTO.getAvatarVersion());
+    assertEquals("/users/3/avatar?v=0a1b2c3d", userGetDTO.getAvatarUrl());
+  }
+
+  @Test
+  public void testGetUser_withoutAvatar_noAvatarUrl() {
+    User user = new User();
+    user.setId(3L);
+    user.setUsername("username");
+
+    UserGetDTO userGetDTO = UserDTOMapper.INSTANCE.convertEntityToUserGetDTO(user);
+
+    assertNull(userGetDTO.getAvatarUrl());
+  }
 }
@@ -1,5 +1,13 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
@@ -77,4 +85,65 @@ public class AppServiceIntegrationTest {
     // check that an error is thrown
     assertThrows(ResponseStatusException.class, () -> appService.createUser(testUser2));
   }
+
+  @Test
+  public void recordGameResults_parallelGames_noLostIncrements() throws Exception {
+    User winner = new User();
+    winner.setUsername("winner");
+    winner.setPassword("password");
+    winner = appService.createUser(winner);
+    User loser = new User();
+    loser.setUsername("loser");
+    loser.setPassword("password");
+    loser = appService.createUser(loser);
+
+    int threads = 8;
+    int gamesPerThread = 25;
+    List<User> players = List.of(winner, loser);
+    List<User> winners = List.of(winner);
+
+    // every thread ends its own games, all of them sharing the same two users
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      futures.add(executor.submit(() -> {
+        start.await();
+        for (int game = 0; game < gamesPerThread; game++) {
+          appService.recordGameResults(players, winners);
+        }
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get(30, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    User storedWinner = userRepository.findById(winner.getId()).orElseThrow();
+    User storedLoser = userRepository.findById(loser.getId()).orElseThrow();
+    assertEquals(threads * gamesPerThread, storedWinner.getRoundsPlayed());
+    assertEquals(threads * gamesPerThread, storedWinner.getWins());
+    assertEquals(threads * gamesPerThread, storedLoser.getRoundsPlayed());
+    assertEquals(0, storedLoser.getWins());
+  }
+
+  @Test
+  public void storeAvatar_staleCachedUser_keepsGameStats() {
+    User user = new User();
+    user.setUsername("avatarUser");
+    user.setPassword("password");
+    user = appService.createUser(user);
+    // the snapshot the token cache hands out, taken before the game ended
+    User cached = appService.getUserByToken(user.getToken());
+    appService.recordGameResults(List.of(cached), List.of(cached));
+
+    appService.storeAvatar(cached, new byte[]{1, 2, 3});
+
+    User stored = userRepository.findById(user.getId()).orElseThrow();
+    assertEquals(1, stored.getRoundsPlayed());
+    assertEquals(1, stored.getWins());
+    assertEquals(cached.getAvatarVersion(), stored.getAvatarVersion());
+  }
 }
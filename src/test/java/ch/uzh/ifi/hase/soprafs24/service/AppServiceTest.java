@@ -1,7 +1,13 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -11,13 +17,16 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
-import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.server.ResponseStatusException;
 
 import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.constant.VideoStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.AvatarBlob;
 import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
 import ch.uzh.ifi.hase.soprafs24.entity.Player;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.AvatarBlobRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
@@ -36,13 +45,43 @@ public class AppServiceTest {
     @Mock
     private TwilioService twilioService;
 
+    @Mock
+    private AvatarBlobRepository avatarBlobRepository;
+
+    @Mock
+    private LeaderboardService leaderboardService;
+
+    @Mock
+    private GameStateWriter gameStateWriter;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private VideoProvisioner videoProvisioner;
+
+    @Mock
+    private RoomCloseQueue roomCloseQueue;
+
+    @Mock
+    private WordService wordService;
+
+    private UserTokenCache userTokenCache;
+    private LiveGameRegistry liveGames;
+
     private AppService appService;
     private User testUser;
 
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
-        appService = new AppService(userRepository, gameSessionRepository, playerRepository, twilioService);
+        userTokenCache = new UserTokenCache(100, 60);
+        GameActionDispatcher dispatcher = new GameActionDispatcher(1);
+        liveGames = new LiveGameRegistry(gameSessionRepository, playerRepository, transactionManager,
+                dispatcher, gameStateWriter, 60);
+        appService = new AppService(userRepository, gameSessionRepository, playerRepository, twilioService, userTokenCache,
+                avatarBlobRepository, leaderboardService, liveGames, gameStateWriter,
+                dispatcher, videoProvisioner, roomCloseQueue, wordService, transactionManager);
 
         // given
         testUser = new User();
@@ -70,6 +109,7 @@ public class AppServiceTest {
         // assertEquals(testUser.getName(), createdUser.getName());
         assertEquals(testUser.getUsername(), createdUser.getUsername());
         assertNotNull(createdUser.getToken());
+        Mockito.verify(leaderboardService).upsert(createdUser);
     }
 
     @Test
@@ -85,18 +125,13 @@ public class AppServiceTest {
     }
 
     @Test
-    public void createGameSession_withTwilio_success() {
+    public void createGameSession_videoProvisionedInBackground() {
         // given
         User creator = new User();
         creator.setId(1L);
         creator.setUsername("testUser");
-
-        String mockTwilioToken = "mock_twilio_token_123";
-
-        // Mock TwilioService
-        when(twilioService.createVideoRoom(anyString())).thenReturn(new TwilioService.TwilioRoomInfo("RM123", mockTwilioToken));
+        when(videoProvisioner.initialVideoStatus()).thenReturn(VideoStatus.PROVISIONING);
         when(gameSessionRepository.save(any(GameSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
-        when(twilioService.generateToken(anyString(), anyString())).thenReturn(mockTwilioToken);
 
         // when
         GameSession createdSession = appService.createGameSession(creator);
@@ -104,32 +139,91 @@ public class AppServiceTest {
         // then
         assertNotNull(createdSession);
         assertEquals(creator, createdSession.getCreator());
-        assertEquals("RM123", createdSession.getTwilioRoomSid());
         assertEquals(GameState.WAITING_FOR_PLAYERS, createdSession.getCurrentState());
-        verify(twilioService).createVideoRoom(createdSession.getGameToken());
+        assertEquals(VideoStatus.PROVISIONING, createdSession.getVideoStatus());
+        assertNull(createdSession.getTwilioRoomSid());
         verify(gameSessionRepository).save(any(GameSession.class));
         verify(gameSessionRepository).flush();
-        verify(twilioService).generateToken(creator.getUsername(), "RM123");
         verify(playerRepository).save(any(Player.class));
         verify(playerRepository).flush();
+        // the request does not wait for Twilio
+        verifyNoInteractions(twilioService);
+        verify(videoProvisioner).provision(createdSession.getGameToken());
     }
 
     @Test
-    public void createGameSession_withTwilio_fails() {
-        // given
+    public void createGameSession_withCategory_stored() {
         User creator = new User();
         creator.setId(1L);
         creator.setUsername("testUser");
-        // Mock TwilioService
-        when(twilioService.createVideoRoom(anyString())).thenThrow(new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR,
-                "Failed to create video room: " + "Twilio error"));
+        when(wordService.hasCategory("animals")).thenReturn(true);
+        when(videoProvisioner.initialVideoStatus()).thenReturn(VideoStatus.PROVISIONING);
+        when(gameSessionRepository.save(any(GameSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
-        // when
-        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () -> {
-            appService.createGameSession(creator);
-        });
-        // then
-        assertEquals("Failed to create video room: Twilio error", exception.getReason());
+        GameSession createdSession = appService.createGameSession(creator, "animals");
+
+        assertEquals("animals", createdSession.getWordCategory());
+    }
+
+    @Test
+    public void createGameSession_unknownCategory_throwsBadRequest() {
+        User creator = new User();
+        creator.setId(1L);
+        when(wordService.hasCategory("unknown")).thenReturn(false);
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> appService.createGameSession(creator, "unknown"));
+
+        assertEquals(400, exception.getStatus().value());
+        verify(gameSessionRepository, never()).save(any());
+    }
+
+    @Test
+    public void createGameSession_videoDisabled_noRoom() {
+        User creator = new User();
+        creator.setId(1L);
+        creator.setUsername("testUser");
+        when(videoProvisioner.initialVideoStatus()).thenReturn(VideoStatus.DISABLED);
+        when(gameSessionRepository.save(any(GameSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        GameSession createdSession = appService.createGameSession(creator);
+
+        assertEquals(VideoStatus.DISABLED, createdSession.getVideoStatus());
+        verify(videoProvisioner, never()).provision(anyString());
+        verifyNoInteractions(twilioService);
+    }
+
+    @Test
+    public void createGameSession_videoUnavailable_degraded() {
+        User creator = new User();
+        creator.setId(1L);
+        creator.setUsername("testUser");
+        when(videoProvisioner.initialVideoStatus()).thenReturn(VideoStatus.DEGRADED);
+        when(gameSessionRepository.save(any(GameSession.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        GameSession createdSession = appService.createGameSession(creator);
+
+        // the game is created anyway and upgraded once the provider is back
+        assertEquals(VideoStatus.DEGRADED, createdSession.getVideoStatus());
+        assertEquals(GameState.WAITING_FOR_PLAYERS, createdSession.getCurrentState());
+        verify(videoProvisioner).provision(createdSession.getGameToken());
+    }
+
+    @Test
+    public void addToGameSession_roomNotReady_noToken() {
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("game123");
+        gameSession.setCurrentState(GameState.WAITING_FOR_PLAYERS);
+        gameSession.setVideoStatus(VideoStatus.PROVISIONING);
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.of(gameSession));
+        when(playerRepository.findWithUsersByGameToken("game123")).thenReturn(List.of());
+        when(playerRepository.save(any(Player.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Player player = appService.addToGameSession(testUser, gameSession);
+
+        // the token is pushed once the room is ready
+        assertNull(player.getTwilioToken());
+        verify(twilioService, never()).generateToken(anyString(), anyString());
     }
 
     @Test
@@ -162,7 +256,9 @@ public class AppServiceTest {
         appService.endGameSession("testToken", creator);
 
         // then
-        verify(twilioService).closeVideoRoom("RM123456789");
+        // closed in the background, the request does not wait for Twilio
+        verify(roomCloseQueue).enqueue("RM123456789");
+        verifyNoInteractions(twilioService);
         verify(gameSessionRepository).delete(gameSession);
         verify(gameSessionRepository).flush();
     }
@@ -175,39 +271,75 @@ public class AppServiceTest {
         user.setUsername("testUser");
         byte[] avatar = new byte[]{1, 2, 3};
 
-        when(userRepository.save(any(User.class))).thenReturn(user);
-
         // when
         appService.storeAvatar(user, avatar);
 
         // then
-        verify(userRepository).save(user);
-        assertEquals(avatar, user.getAvatar());
+        verify(avatarBlobRepository).save(argThat(blob -> blob.getUserId().equals(1L) && blob.getData() == avatar));
+        // only the version column is written, never the whole cached user
+        verify(userRepository).updateAvatarVersion(1L, user.getAvatarVersion());
+        verify(userRepository, never()).save(any());
+        assertNotNull(user.getAvatarVersion());
+        verify(leaderboardService).updateAvatarVersion(1L, user.getAvatarVersion());
     }
 
     @Test
-    public void incrementRoundsPlayed_incrementsSuccessfully() {
-        when(userRepository.save(any(User.class))).thenReturn(testUser);
+    public void storeAvatar_newContent_changesVersion() {
+        User user = new User();
+        user.setId(1L);
 
-        appService.incrementRoundsPlayed(testUser);
+        appService.storeAvatar(user, new byte[]{1, 2, 3});
+        String firstVersion = user.getAvatarVersion();
+        appService.storeAvatar(user, new byte[]{4, 5, 6});
 
-        assertEquals(6, testUser.getRoundsPlayed());
-        verify(userRepository, times(1)).save(testUser);
+        assertNotEquals(firstVersion, user.getAvatarVersion());
     }
 
     @Test
-    public void incrementWins_incrementsSuccessfully() {
-        when(userRepository.save(any(User.class))).thenReturn(testUser);
+    public void getAvatar_noAvatar_returnsNull() {
+        when(avatarBlobRepository.findById(1L)).thenReturn(Optional.empty());
+
+        assertNull(appService.getAvatar(1L));
+    }
 
-        appService.incrementWins(testUser);
+    @Test
+    public void getAvatar_storedAvatar_returnsBytes() {
+        AvatarBlob blob = new AvatarBlob();
+        blob.setUserId(1L);
+        blob.setData(new byte[]{1, 2, 3});
+        when(avatarBlobRepository.findById(1L)).thenReturn(Optional.of(blob));
+
+        assertArrayEquals(new byte[]{1, 2, 3}, appService.getAvatar(1L));
+    }
+
+    @Test
+    public void recordGameResults_bulkIncrements() {
+        User winner = new User();
+        winner.setId(2L);
+        winner.setToken("winnerToken");
+        userTokenCache.put(winner);
+
+        appService.recordGameResults(List.of(testUser, winner), List.of(winner));
+
+        verify(userRepository, times(1)).incrementRoundsPlayed(List.of(1L, 2L));
+        verify(userRepository, times(1)).incrementWins(List.of(2L));
+        verify(userRepository, never()).save(any(User.class));
+        // the cached snapshot holds the old stats
+        assertEquals(0, userTokenCache.size());
+    }
+
+    @Test
+    public void recordGameResults_noWinners_skipsWinsUpdate() {
+        appService.recordGameResults(List.of(testUser), List.of());
 
-        assertEquals(3, testUser.getWins());
-        verify(userRepository, times(1)).save(testUser);
+        verify(userRepository, times(1)).incrementRoundsPlayed(List.of(1L));
+        verify(userRepository, never()).incrementWins(any());
     }
 
     @Test
     public void isUserTokenValid_validToken_returnsTrue() {
-        when(userRepository.existsByToken("validToken")).thenReturn(true);
+        testUser.setToken("validToken");
+        when(userRepository.findByToken("validToken")).thenReturn(Optional.of(testUser));
 
         boolean result = appService.isUserTokenValid("validToken");
 
@@ -216,16 +348,66 @@ public class AppServiceTest {
 
     @Test
     public void isUserTokenValid_invalidToken_returnsFalse() {
-        when(userRepository.existsByToken("invalidToken")).thenReturn(false);
+        when(userRepository.findByToken("invalidToken")).thenReturn(Optional.empty());
 
         boolean result = appService.isUserTokenValid("invalidToken");
 
         assertFalse(result);
     }
 
+    @Test
+    public void isUserTokenValid_thenGetUserByToken_singleLookup() {
+        testUser.setToken("validToken");
+        when(userRepository.findByToken("validToken")).thenReturn(Optional.of(testUser));
+
+        assertTrue(appService.isUserTokenValid("validToken"));
+        User result = appService.getUserByToken("validToken");
+
+        assertEquals(testUser, result);
+        verify(userRepository, times(1)).findByToken("validToken");
+        assertEquals(1, userTokenCache.getHits());
+        assertEquals(1, userTokenCache.getMisses());
+    }
+
+    @Test
+    public void logoutUser_invalidatesCachedToken() {
+        testUser.setToken("validToken");
+        when(userRepository.findByToken("validToken")).thenReturn(Optional.of(testUser));
+        assertTrue(appService.isUserTokenValid("validToken"));
+
+        appService.logoutUser("validToken");
+        when(userRepository.findByToken("validToken")).thenReturn(Optional.empty());
+
+        assertFalse(appService.isUserTokenValid("validToken"));
+    }
+
+    @Test
+    public void getLoggedInUser_afterTokenLookup_servedFromCache() {
+        testUser.setToken("validToken");
+        when(userRepository.findByToken("validToken")).thenReturn(Optional.of(testUser));
+        assertTrue(appService.isUserTokenValid("validToken"));
+
+        assertEquals(testUser, appService.getLoggedInUser(testUser.getId()));
+        verify(userRepository, never()).findById(any());
+    }
+
+    @Test
+    public void getLoggedInUser_loggedOut_returnsNull() {
+        testUser.setToken("validToken");
+        when(userRepository.findByToken("validToken")).thenReturn(Optional.of(testUser));
+        assertTrue(appService.isUserTokenValid("validToken"));
+
+        appService.logoutUser("validToken");
+        when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+        assertNull(appService.getLoggedInUser(testUser.getId()));
+    }
+
     @Test
     public void isGameTokenValid_validGameToken_returnsTrue() {
-        when(gameSessionRepository.existsByGameToken("game123")).thenReturn(true);
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("game123");
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.of(gameSession));
 
         boolean result = appService.isGameTokenValid("game123");
 
@@ -234,13 +416,190 @@ public class AppServiceTest {
 
     @Test
     public void isGameTokenValid_invalidGameToken_returnsFalse() {
-        when(gameSessionRepository.existsByGameToken("invalidToken")).thenReturn(false);
+        when(gameSessionRepository.findByGameToken("invalidToken")).thenReturn(Optional.empty());
 
         boolean result = appService.isGameTokenValid("invalidToken");
 
         assertFalse(result);
     }
 
+    @Test
+    public void getGameSessionByGameToken_liveGame_loadedOnce() {
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("game123");
+        Player player = new Player();
+        player.setUser(testUser);
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.of(gameSession));
+        when(playerRepository.findWithUsersByGameToken("game123")).thenReturn(List.of(player));
+
+        assertTrue(appService.isGameTokenValid("game123"));
+        GameSession result = appService.getGameSessionByGameToken("game123");
+        Player resultPlayer = appService.getPlayerByUserAndGameSession(testUser, result);
+
+        assertSame(gameSession, result);
+        assertSame(player, resultPlayer);
+        verify(gameSessionRepository, times(1)).findByGameToken("game123");
+        verify(playerRepository, times(1)).findWithUsersByGameToken("game123");
+        verify(playerRepository, never()).findByUserAndGameSession(any(), any());
+    }
+
+    @Test
+    public void addToGameSession_newPlayer_addedToLiveGame() {
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("game123");
+        gameSession.setTwilioRoomSid("RM123");
+        gameSession.setCurrentState(GameState.WAITING_FOR_PLAYERS);
+        gameSession.setVideoStatus(VideoStatus.READY);
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.of(gameSession));
+        when(playerRepository.findWithUsersByGameToken("game123")).thenReturn(List.of());
+        List<String> tokensWhenSaved = new ArrayList<>();
+        when(playerRepository.save(any(Player.class))).thenAnswer(invocation -> {
+            tokensWhenSaved.add(invocation.<Player>getArgument(0).getTwilioToken());
+            return invocation.getArgument(0);
+        });
+        when(twilioService.generateToken("testUsername", "RM123")).thenReturn("token123");
+
+        Player player = appService.addToGameSession(testUser, gameSession);
+
+        assertEquals("token123", player.getTwilioToken());
+        // the token is stored with the player, not written afterwards
+        assertEquals(List.of("token123"), tokensWhenSaved);
+        assertTrue(appService.isUserInGameSession(testUser, gameSession));
+        assertEquals(List.of(testUser), appService.getGameSessionPlayers(gameSession));
+        // joining again returns the same player
+        assertSame(player, appService.addToGameSession(testUser, gameSession));
+        verify(playerRepository, times(1)).save(any(Player.class));
+    }
+
+    @Test
+    public void addToGameSession_gameStarted_rejectedUnlessAlreadyPlayer() {
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("game123");
+        gameSession.setCurrentState(GameState.STARTED);
+        Player player = new Player();
+        player.setUser(testUser);
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.of(gameSession));
+        when(playerRepository.findWithUsersByGameToken("game123")).thenReturn(List.of(player));
+        User newcomer = new User();
+        newcomer.setId(2L);
+
+        // a player that reconnects gets their player back
+        assertSame(player, appService.addToGameSession(testUser, gameSession));
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> appService.addToGameSession(newcomer, gameSession));
+
+        assertEquals(403, exception.getStatus().value());
+        verify(playerRepository, never()).save(any(Player.class));
+    }
+
+    @Test
+    public void addToGameSession_concurrentJoins_neverOverCapacity() throws Exception {
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("game123");
+        gameSession.setCurrentState(GameState.WAITING_FOR_PLAYERS);
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.of(gameSession));
+        when(playerRepository.findWithUsersByGameToken("game123")).thenReturn(List.of());
+        when(playerRepository.save(any(Player.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        ExecutorService joiners = Executors.newFixedThreadPool(8);
+        List<Future<?>> joins = new ArrayList<>();
+        for (long id = 1; id <= 20; id++) {
+            User user = new User();
+            user.setId(id);
+            // every user tries twice, the second join must not add a second player
+            for (int attempt = 0; attempt < 2; attempt++) {
+                joins.add(joiners.submit(() -> {
+                    try {
+                        appService.addToGameSession(user, gameSession);
+                    } catch (ResponseStatusException e) {
+                        // full
+                    }
+                }));
+            }
+        }
+        for (Future<?> join : joins) {
+            join.get(5, TimeUnit.SECONDS);
+        }
+        joiners.shutdown();
+
+        List<User> players = appService.getGameSessionPlayers(gameSession);
+        assertEquals(9, players.size());
+        assertEquals(9, players.stream().distinct().count());
+        verify(playerRepository, times(9)).save(any(Player.class));
+    }
+
+    @Test
+    public void refreshVideoToken_sameToken_notWrittenAgain() {
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("game123");
+        gameSession.setTwilioRoomSid("RM123");
+        Player player = new Player();
+        player.setUser(testUser);
+        player.setTwilioToken("token123");
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.of(gameSession));
+        when(playerRepository.findWithUsersByGameToken("game123")).thenReturn(List.of(player));
+        VideoTokenCache.VideoToken token = new VideoTokenCache.VideoToken("token123", Instant.now().plusSeconds(3600));
+        when(twilioService.issueToken("testUsername", "RM123")).thenReturn(token);
+
+        assertSame(token, appService.refreshVideoToken(testUser, gameSession));
+
+        verify(gameStateWriter, never()).schedule(any());
+    }
+
+    @Test
+    public void refreshVideoToken_newToken_storedOnPlayer() {
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("game123");
+        gameSession.setTwilioRoomSid("RM123");
+        Player player = new Player();
+        player.setUser(testUser);
+        player.setTwilioToken("expiring");
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.of(gameSession));
+        when(playerRepository.findWithUsersByGameToken("game123")).thenReturn(List.of(player));
+        when(twilioService.issueToken("testUsername", "RM123"))
+                .thenReturn(new VideoTokenCache.VideoToken("token456", Instant.now().plusSeconds(3600)));
+
+        appService.refreshVideoToken(testUser, gameSession);
+
+        assertEquals("token456", player.getTwilioToken());
+        verify(gameStateWriter).schedule(any());
+    }
+
+    @Test
+    public void refreshVideoToken_roomNotReady_throwsConflict() {
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken("game123");
+        gameSession.setVideoStatus(VideoStatus.PROVISIONING);
+        Player player = new Player();
+        player.setUser(testUser);
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.of(gameSession));
+        when(playerRepository.findWithUsersByGameToken("game123")).thenReturn(List.of(player));
+
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class,
+                () -> appService.refreshVideoToken(testUser, gameSession));
+
+        assertEquals(409, exception.getStatus().value());
+        verifyNoInteractions(twilioService);
+    }
+
+    @Test
+    public void endGameSession_evictsLiveGame() {
+        GameSession gameSession = new GameSession();
+        gameSession.setCreator(testUser);
+        gameSession.setGameToken("game123");
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.of(gameSession));
+        when(playerRepository.findByGameSession(gameSession)).thenReturn(List.of());
+
+        LiveGameSession live = liveGames.get("game123");
+
+        appService.endGameSession("game123", testUser);
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.empty());
+
+        // a video room that becomes ready later is closed right away
+        assertTrue(live.isEnded());
+        verify(gameStateWriter).discard("game123");
+        assertFalse(appService.isGameTokenValid("game123"));
+    }
+
     @Test
     public void getUserByToken_successful() {
         when(userRepository.findByToken("abc")).thenReturn(Optional.of(testUser));
@@ -0,0 +1,66 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void failures_opensAfterThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1, TimeUnit.MINUTES);
+
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.tryAcquirePermission());
+            breaker.recordFailure();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isCallPermitted());
+        assertFalse(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void success_resetsFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 1, TimeUnit.MINUTES);
+
+        breaker.tryAcquirePermission();
+        breaker.recordFailure();
+        breaker.tryAcquirePermission();
+        breaker.recordSuccess();
+        breaker.tryAcquirePermission();
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void halfOpen_singleTrialDecides() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50, TimeUnit.MILLISECONDS);
+        breaker.tryAcquirePermission();
+        breaker.recordFailure();
+        Thread.sleep(100);
+
+        assertTrue(breaker.isCallPermitted());
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // only one trial at a time
+        assertFalse(breaker.tryAcquirePermission());
+
+        // a failed trial opens the circuit again
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(100);
+
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+}
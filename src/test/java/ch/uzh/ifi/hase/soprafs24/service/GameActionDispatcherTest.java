@@ -0,0 +1,239 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerAction;
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerActionResult;
+
+public class GameActionDispatcherTest {
+
+    @Mock
+    private GameSessionRepository gameSessionRepository;
+
+    @Mock
+    private PlayerRepository playerRepository;
+
+    @Mock
+    private AppService appService;
+
+    @Mock
+    private WordService wordService;
+
+    @Mock
+    private LeaderboardService leaderboardService;
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Mock
+    private GameStateWriter gameStateWriter;
+
+    @Mock
+    private TimerService timerService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private GameActionDispatcher dispatcher;
+    private LiveGameRegistry liveGames;
+    private GameSessionService gameSessionService;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        dispatcher = new GameActionDispatcher(4);
+        liveGames = new LiveGameRegistry(gameSessionRepository, playerRepository, transactionManager, dispatcher,
+                gameStateWriter, 60);
+        gameSessionService = new GameSessionService(wordService, appService, leaderboardService, liveGames,
+                gameStateWriter, dispatcher, timerService, messagingTemplate,
+                new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    public void teardown() throws InterruptedException {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void execute_sameGame_runsInSubmissionOrder() throws Exception {
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 1000; i++) {
+            int value = i;
+            dispatcher.execute("game", () -> order.add(value));
+        }
+        // queued behind all of the above
+        dispatcher.run("game", () -> {
+        });
+
+        assertEquals(1000, order.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, order.get(i));
+        }
+    }
+
+    @Test
+    public void execute_differentGames_runInParallel() throws Exception {
+        // find two games on different stripes
+        String first = "game0";
+        String second = null;
+        for (int i = 1; second == null; i++) {
+            String candidate = "game" + i;
+            String firstThread = dispatcher.call(first, () -> Thread.currentThread().getName());
+            if (!firstThread.equals(dispatcher.call(candidate, () -> Thread.currentThread().getName()))) {
+                second = candidate;
+            }
+        }
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.execute(first, () -> {
+            blocked.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // the other game is not held up by the blocked one
+        assertEquals("done", dispatcher.call(second, () -> "done"));
+        release.countDown();
+    }
+
+    @Test
+    public void call_nestedOnSameGame_runsInline() {
+        assertEquals("inner", dispatcher.call("game", () -> dispatcher.call("game", () -> "inner")));
+    }
+
+    @Test
+    public void call_taskThrows_rethrown() {
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> dispatcher.call("game", () -> {
+                    throw new IllegalStateException("boom");
+                }));
+        assertEquals("boom", exception.getMessage());
+    }
+
+    @Test
+    public void concurrentVotes_allRecordedAndVotingEndsOnce() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(10);
+        try {
+            for (int round = 0; round < 50; round++) {
+                Mockito.clearInvocations(messagingTemplate);
+                String gameToken = "game-" + round;
+                List<Player> players = votingGame(gameToken, 9);
+
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<PlayerActionResult>> votes = new ArrayList<>();
+                AtomicInteger rejected = new AtomicInteger();
+                for (Player voter : players) {
+                    votes.add(clients.submit(() -> {
+                        start.await();
+                        PlayerAction action = new PlayerAction();
+                        action.setActionType("VOTE");
+                        action.setGameSessionToken(gameToken);
+                        // everybody accuses the first player, who is not the chameleon
+                        action.setActionContent(players.get(0).getUser().getUsername());
+                        return dispatcher.call(gameToken, () -> {
+                            try {
+                                return gameSessionService.handlePlayerAction(voter.getUser(), action,
+                                        voter.getGameSession());
+                            } catch (Exception e) {
+                                rejected.incrementAndGet();
+                                return null;
+                            }
+                        });
+                    }));
+                }
+                // the voting deadline fires while the votes come in
+                Future<?> deadline = clients.submit(() -> {
+                    start.await();
+                    dispatcher.execute(gameToken, () -> gameSessionService.endVoting(gameToken));
+                    return null;
+                });
+                start.countDown();
+
+                int endVotingResults = 0;
+                int accepted = 0;
+                for (Future<PlayerActionResult> vote : votes) {
+                    PlayerActionResult result = vote.get(5, TimeUnit.SECONDS);
+                    if (result == null) {
+                        continue;
+                    }
+                    accepted++;
+                    if ("END_VOTING".equals(result.getActionType())) {
+                        endVotingResults++;
+                    }
+                }
+                // let the deadline task finish
+                deadline.get(5, TimeUnit.SECONDS);
+                dispatcher.run(gameToken, () -> {
+                });
+                int broadcastResults = Mockito.mockingDetails(messagingTemplate).getInvocations().size();
+
+                // voting ended exactly once, either by the last vote or by the deadline
+                assertEquals(1, endVotingResults + broadcastResults, "round " + round);
+                assertEquals(GameState.CHAMELEON_WIN, liveGames.get(gameToken).getGameSession().getCurrentState());
+                // no vote was lost, the ones after the deadline were rejected
+                assertEquals(9, accepted + rejected.get());
+                int recorded = liveGames.get(gameToken).getVoteTally().getVoterCount();
+                assertEquals(accepted, recorded, "round " + round);
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    // a game in VOTING with the given number of players, the last one is the chameleon
+    private List<Player> votingGame(String gameToken, int size) {
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken(gameToken);
+        gameSession.setCurrentState(GameState.VOTING);
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            User user = new User();
+            user.setId((long) i);
+            user.setUsername(gameToken + "-user" + i);
+            Player player = new Player();
+            player.setId((long) i);
+            player.setUser(user);
+            player.setGameSession(gameSession);
+            player.setIsChameleon(i == size - 1);
+            players.add(player);
+        }
+        gameSession.setCreator(players.get(0).getUser());
+        when(gameSessionRepository.findByGameToken(gameToken)).thenReturn(Optional.of(gameSession));
+        when(playerRepository.findWithUsersByGameToken(gameToken)).thenReturn(players);
+        return liveGames.get(gameToken).getPlayers();
+    }
+}
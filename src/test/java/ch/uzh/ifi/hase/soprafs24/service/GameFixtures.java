@@ -0,0 +1,61 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+
+/**
+ * Stores games in the database for the tests that play them through the
+ * services, as if the players had registered and joined.
+ */
+class GameFixtures {
+
+    private final UserRepository userRepository;
+    private final GameSessionRepository gameSessionRepository;
+    private final PlayerRepository playerRepository;
+
+    GameFixtures(UserRepository userRepository, GameSessionRepository gameSessionRepository,
+            PlayerRepository playerRepository) {
+        this.userRepository = userRepository;
+        this.gameSessionRepository = gameSessionRepository;
+        this.playerRepository = playerRepository;
+    }
+
+    /**
+     * Stores a game waiting for players, created by the first of its players.
+     *
+     * @param prefix  start of the game token and the usernames, a unique suffix is added
+     * @param players number of players
+     * @return the game token
+     */
+    String createWaitingGame(String prefix, int players) {
+        String gameToken = prefix + "-" + System.nanoTime();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < players; i++) {
+            User user = new User();
+            user.setUsername(gameToken + "-user" + i);
+            user.setPassword("password");
+            users.add(userRepository.save(user));
+        }
+        GameSession gameSession = new GameSession();
+        gameSession.setGameToken(gameToken);
+        gameSession.setCreator(users.get(0));
+        gameSession.setCurrentState(GameState.WAITING_FOR_PLAYERS);
+        gameSession = gameSessionRepository.save(gameSession);
+        for (User user : users) {
+            Player player = new Player();
+            player.setUser(user);
+            player.setGameSession(gameSession);
+            playerRepository.save(player);
+        }
+        playerRepository.flush();
+        return gameToken;
+    }
+}
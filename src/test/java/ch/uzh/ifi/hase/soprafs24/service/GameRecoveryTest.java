@@ -0,0 +1,126 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerAction;
+
+/**
+ * Drops a live game in the middle of a round, as a restart or the idle sweeper
+ * would, and checks that the reloaded game carries on from the database.
+ */
+@WebAppConfiguration
+@SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class GameRecoveryTest {
+
+    private static final int PLAYERS = 4;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private GameSessionRepository gameSessionRepository;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private GameSessionService gameSessionService;
+
+    @Autowired
+    private LiveGameRegistry liveGames;
+
+    @Autowired
+    private GameStateWriter gameStateWriter;
+
+    @Autowired
+    private GameActionDispatcher gameActionDispatcher;
+
+    @MockBean
+    private TwilioService twilioService;
+
+    private String gameToken;
+
+    @BeforeEach
+    public void setup() {
+        gameToken = new GameFixtures(userRepository, gameSessionRepository, playerRepository)
+                .createWaitingGame("recovery", PLAYERS);
+    }
+
+    @Test
+    public void restartMidVote_votesCastSoFarDecide() throws Exception {
+        LiveGameSession live = liveGames.get(gameToken);
+        GameSession gameSession = live.getGameSession();
+        User admin = gameSession.getCreator();
+        gameSessionService.handlePlayerAction(admin, action("START_GAME", null), gameSession);
+        while (gameSession.getCurrentState() == GameState.STARTED) {
+            User turn = live.getCurrentTurnPlayer().getUser();
+            gameSessionService.handlePlayerAction(turn, action("GIVE_HINT", "zzz"), gameSession);
+        }
+        gameSessionService.handlePlayerAction(admin, action("START_VOTING", null), gameSession);
+        // two votes for the chameleon, not enough to end voting yet
+        String chameleon = live.getChameleon().getUser().getUsername();
+        List<Player> innocents = live.getPlayers().stream().filter(p -> !p.getIsChameleon()).toList();
+        for (Player voter : innocents.subList(0, 2)) {
+            gameSessionService.handlePlayerAction(voter.getUser(), action("VOTE", chameleon), gameSession);
+        }
+        assertEquals(GameState.VOTING, gameSession.getCurrentState());
+
+        // the service goes down, the in-memory game and its deadline timer are lost
+        gameStateWriter.flush();
+        live.getVotingDeadline().cancel();
+        liveGames.evict(gameToken);
+
+        // the deadline passed while it was down
+        LiveGameSession reloaded = liveGames.get(gameToken);
+        assertEquals(2, reloaded.getVoteTally().getVotes(live.getChameleon().getUser().getId()));
+        reloaded.getGameSession().setVotingDeadline(Instant.now().minusSeconds(1));
+        gameActionDispatcher.run(gameToken, () -> gameSessionService.resumeVoting(gameToken));
+
+        assertEquals(GameState.CHAMELEON_TURN, reloaded.getGameSession().getCurrentState());
+    }
+
+    @Test
+    public void evictedMidRound_hintsAndTurnKept() throws Exception {
+        LiveGameSession live = liveGames.get(gameToken);
+        GameSession gameSession = live.getGameSession();
+        gameSessionService.handlePlayerAction(gameSession.getCreator(), action("START_GAME", null), gameSession);
+        Player first = live.getCurrentTurnPlayer();
+        gameSessionService.handlePlayerAction(first.getUser(), action("GIVE_HINT", "zzz"), gameSession);
+        Long secondPlayerId = gameSession.getCurrentTurnPlayerId();
+
+        // the idle sweeper drops the game before the round is over
+        gameStateWriter.flush();
+        liveGames.evict(gameToken);
+
+        LiveGameSession reloaded = liveGames.get(gameToken);
+        assertEquals(GameState.STARTED, reloaded.getGameSession().getCurrentState());
+        assertEquals(secondPlayerId, reloaded.getGameSession().getCurrentTurnPlayerId());
+        assertEquals("zzz", reloaded.findPlayerById(first.getId()).getGivenHint());
+    }
+
+    private PlayerAction action(String type, String content) {
+        PlayerAction action = new PlayerAction();
+        action.setActionType(type);
+        action.setGameSessionToken(gameToken);
+        action.setActionContent(content);
+        return action;
+    }
+}
@@ -0,0 +1,137 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.web.WebAppConfiguration;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerAction;
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerActionResult;
+
+/**
+ * Counts the SQL statements of a full game round, so that selects per player
+ * do not creep back into the loading and persisting of games.
+ */
+@WebAppConfiguration
+@SpringBootTest
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class GameRoundStatementCountTest {
+
+    private static final int PLAYERS = 6;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private GameSessionRepository gameSessionRepository;
+
+    @Autowired
+    private PlayerRepository playerRepository;
+
+    @Autowired
+    private GameSessionService gameSessionService;
+
+    @Autowired
+    private LiveGameRegistry liveGames;
+
+    @Autowired
+    private GameStateWriter gameStateWriter;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockBean
+    private TwilioService twilioService;
+
+    private Statistics statistics;
+    private String gameToken;
+
+    @BeforeEach
+    public void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        gameToken = new GameFixtures(userRepository, gameSessionRepository, playerRepository)
+                .createWaitingGame("statement-count", PLAYERS);
+        statistics.clear();
+    }
+
+    @Test
+    public void loadLiveGame_fixedNumberOfStatements() {
+        LiveGameSession live = liveGames.get(gameToken);
+
+        assertEquals(PLAYERS, live.getPlayers().size());
+        // players with users and game, the game itself and its votes
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityFetchCount());
+    }
+
+    @Test
+    public void fullRound_noSelectPerPlayer() throws Exception {
+        LiveGameSession live = liveGames.get(gameToken);
+        GameSession gameSession = live.getGameSession();
+        User admin = gameSession.getCreator();
+
+        gameSessionService.handlePlayerAction(admin, action("START_GAME", null), gameSession);
+        while (gameSession.getCurrentState() == GameState.STARTED) {
+            User turn = live.getCurrentTurnPlayer().getUser();
+            gameSessionService.handlePlayerAction(turn, action("GIVE_HINT", "zzz"), gameSession);
+        }
+        gameSessionService.handlePlayerAction(admin, action("START_VOTING", null), gameSession);
+        Player innocent = live.getPlayers().stream().filter(p -> !p.getIsChameleon()).findFirst().orElseThrow();
+        PlayerActionResult result = null;
+        // voting ends as soon as the outcome is decided
+        for (Player player : live.getPlayers()) {
+            if (gameSession.getCurrentState() != GameState.VOTING) {
+                break;
+            }
+            result = gameSessionService.handlePlayerAction(player.getUser(),
+                    action("VOTE", innocent.getUser().getUsername()), gameSession);
+        }
+        assertEquals("END_VOTING", result.getActionType());
+        gameStateWriter.flush();
+
+        // no association of a player or user is ever loaded with a select of its own
+        assertEquals(0, statistics.getEntityFetchCount());
+        // load (3), stats update (2) and per write one select plus the changed rows,
+        // written are the start, every hint, the start of voting, the three votes
+        // before the outcome is decided and the end of voting
+        int writes = 6 + PLAYERS;
+        assertTrue(statistics.getPrepareStatementCount() <= 3 + 2 + writes * (1 + 1 + PLAYERS),
+                "statements: " + statistics.getPrepareStatementCount());
+
+        // a single write of the finished round touches each row once, plus the
+        // select of the votes it compares against
+        statistics.clear();
+        live.getPlayers().forEach(p -> p.setGivenHint(null));
+        gameStateWriter.schedule(live);
+        gameStateWriter.flush();
+        assertEquals(0, statistics.getEntityFetchCount());
+        assertEquals(2 + PLAYERS, statistics.getPrepareStatementCount());
+    }
+
+    private PlayerAction action(String type, String content) {
+        PlayerAction action = new PlayerAction();
+        action.setActionType(type);
+        action.setGameSessionToken(gameToken);
+        action.setActionContent(content);
+        return action;
+    }
+}
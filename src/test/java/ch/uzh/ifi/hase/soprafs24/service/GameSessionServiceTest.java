@@ -1,29 +1,41 @@
 package ch.uzh.ifi.hase.soprafs24.service;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import static org.mockito.ArgumentMatchers.any;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
-import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.MockitoAnnotations;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ch.uzh.ifi.hase.soprafs24.constant.ActionType;
+import ch.uzh.ifi.hase.soprafs24.constant.GameErrorCode;
 import ch.uzh.ifi.hase.soprafs24.constant.GameState;
 import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
 import ch.uzh.ifi.hase.soprafs24.entity.Player;
 import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.exceptions.GameRuleViolation;
 import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
 import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
@@ -47,11 +59,27 @@ public class GameSessionServiceTest {
     @Mock
     private WordService wordService;
 
+    @Mock
+    private LeaderboardService leaderboardService;
+
     @Mock
     private SimpMessagingTemplate messagingTemplate;
 
+    @Mock
+    private GameStateWriter gameStateWriter;
+
+    @Mock
+    private TimerService timerService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private LiveGameRegistry liveGames;
+
     private GameSessionService gameSessionService;
 
+    private SimpleMeterRegistry meterRegistry;
+
     private User testUser;
     private GameSession testGameSession;
     private Player testPlayer;
@@ -60,7 +88,12 @@ public class GameSessionServiceTest {
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
-        gameSessionService = new GameSessionService(gameSessionRepository, playerRepository, wordService, appService, messagingTemplate);
+        GameActionDispatcher dispatcher = new GameActionDispatcher(1);
+        liveGames = new LiveGameRegistry(gameSessionRepository, playerRepository, transactionManager, dispatcher,
+                gameStateWriter, 60);
+        meterRegistry = new SimpleMeterRegistry();
+        gameSessionService = new GameSessionService(wordService, appService, leaderboardService, liveGames,
+                gameStateWriter, dispatcher, timerService, messagingTemplate, meterRegistry);
         // given
         testUser = new User();
         testUser.setId(1L);
@@ -80,13 +113,20 @@ public class GameSessionServiceTest {
         testPlayerAction = new PlayerAction();
     }
 
+    // makes the given players the live state of testGameSession, as if loaded from the database
+    private LiveGameSession liveGame(List<Player> players) {
+        when(gameSessionRepository.findByGameToken(testGameSession.getGameToken())).thenReturn(Optional.of(testGameSession));
+        when(playerRepository.findWithUsersByGameToken(testGameSession.getGameToken())).thenReturn(players);
+        return liveGames.get(testGameSession.getGameToken());
+    }
+
     @Test
     public void handlePlayerAction_success() throws Exception {
         // given
         testPlayerAction.setActionType("TEST_ACTION");
         PlayerActionResult playerActionResult = new PlayerActionResult();
         playerActionResult.setActionType("TEST_ACTION");
-        Mockito.when(playerRepository.findByUserAndGameSession(testUser, testGameSession)).thenReturn(Optional.of(testPlayer));
+        liveGame(List.of(testPlayer));
         // when
         gameSessionService.handlePlayerAction(testUser, testPlayerAction, testGameSession);
         // then
@@ -97,7 +137,7 @@ public class GameSessionServiceTest {
     public void handlePlayerAction_fail() throws Exception {
         // given
         testPlayerAction.setActionType("TEST_ACTION");
-        Mockito.when(playerRepository.findByUserAndGameSession(testUser, testGameSession)).thenReturn(Optional.empty());
+        liveGame(List.of());
         Exception exception = assertThrows(Exception.class, () -> {
             gameSessionService.handlePlayerAction(testUser, testPlayerAction, testGameSession);
         });
@@ -110,7 +150,7 @@ public class GameSessionServiceTest {
         testPlayerAction.setActionType("TEST_ADMIN_ACTION");
         PlayerActionResult playerActionResult = new PlayerActionResult();
         playerActionResult.setActionType("TEST_ADMIN_ACTION");
-        Mockito.when(playerRepository.findByUserAndGameSession(testUser, testGameSession)).thenReturn(Optional.of(testPlayer));
+        liveGame(List.of(testPlayer));
         // when
         gameSessionService.handlePlayerAction(testUser, testPlayerAction, testGameSession);
         // then
@@ -123,7 +163,7 @@ public class GameSessionServiceTest {
         testPlayerAction.setActionType("TEST_ADMIN_ACTION");
         User otherUser = new User();
         testGameSession.setCreator(otherUser);
-        Mockito.when(playerRepository.findByUserAndGameSession(testUser, testGameSession)).thenReturn(Optional.of(testPlayer));
+        liveGame(List.of(testPlayer));
 
         Exception exception = assertThrows(Exception.class, () -> {
             // when
@@ -132,6 +172,59 @@ public class GameSessionServiceTest {
         assertEquals("Only the game session creator can perform this action", exception.getMessage());
     }
 
+    @Test
+    public void handlePlayerAction_timedPerActionType() throws Exception {
+        testPlayerAction.setActionType("START_VOTING");
+        testGameSession.setCurrentState(GameState.STARTED);
+        liveGame(List.of(testPlayer));
+
+        // rejected actions are timed as well
+        assertThrows(GameRuleViolation.class, () -> {
+            gameSessionService.handlePlayerAction(testUser, testPlayerAction, testGameSession);
+        });
+        assertEquals(1, meterRegistry.get("game.actions").tag("type", "START_VOTING").timer().count());
+        assertEquals(0, meterRegistry.get("game.actions").tag("type", "VOTE").timer().count());
+    }
+
+    @Test
+    public void handlePlayerAction_unknownType_rejected() {
+        testPlayerAction.setActionType("DANCE");
+        liveGame(List.of(testPlayer));
+
+        GameRuleViolation exception = assertThrows(GameRuleViolation.class, () -> {
+            gameSessionService.handlePlayerAction(testUser, testPlayerAction, testGameSession);
+        });
+        assertEquals("Invalid action type: DANCE", exception.getMessage());
+        assertEquals(GameErrorCode.INVALID_ACTION, exception.getCode());
+    }
+
+    @Test
+    public void setActionHandlers_builtInType_overridden() throws Exception {
+        // a handler bean replaces the built-in handler of its type
+        GameActionHandler handler = Mockito.mock(GameActionHandler.class);
+        when(handler.getActionType()).thenReturn(ActionType.TEST_ACTION);
+        when(handler.getRequiredStates()).thenReturn(EnumSet.allOf(GameState.class));
+        PlayerActionResult custom = new PlayerActionResult();
+        when(handler.handle(Mockito.any(), Mockito.any(), Mockito.any())).thenReturn(custom);
+        gameSessionService.setActionHandlers(List.of(handler));
+        testPlayerAction.setActionType("TEST_ACTION");
+        liveGame(List.of(testPlayer));
+
+        assertSame(custom, gameSessionService.handlePlayerAction(testUser, testPlayerAction, testGameSession));
+    }
+
+    @Test
+    public void setActionHandlers_twoBeansSameType_rejected() {
+        GameActionHandler first = Mockito.mock(GameActionHandler.class);
+        when(first.getActionType()).thenReturn(ActionType.TEST_ACTION);
+        GameActionHandler second = Mockito.mock(GameActionHandler.class);
+        when(second.getActionType()).thenReturn(ActionType.TEST_ACTION);
+        Exception duplicate = assertThrows(IllegalStateException.class, () -> {
+            gameSessionService.setActionHandlers(List.of(first, second));
+        });
+        assertEquals("Duplicate handler for action type TEST_ACTION", duplicate.getMessage());
+    }
+
     @Test
     public void startGame_success() throws Exception {
         // given
@@ -143,13 +236,14 @@ public class GameSessionServiceTest {
                 new Player(),
                 new Player()
         );
-        Mockito.when(playerRepository.findByGameSession(testGameSession)).thenReturn(dummyPlayers);
+        LiveGameSession live = liveGame(dummyPlayers);
         // when
-        PlayerActionResult result = gameSessionService.startGame(testPlayerAction, testGameSession);
+        PlayerActionResult result = gameSessionService.startGame(testPlayerAction, live);
         // then
-        Mockito.verify(gameSessionRepository, Mockito.times(1)).save(testGameSession);
+        Mockito.verify(gameStateWriter, Mockito.times(1)).schedule(live);
         assertEquals(testGameSession.getCurrentState(), GameState.STARTED);
-        assertNotNull(testGameSession.getCurrentPlayerTurn());
+        assertEquals(4, testGameSession.getTurnOrder().size());
+        assertEquals(0, testGameSession.getTurnCursor());
         assertEquals(result.getActionType(), testPlayerAction.getActionType());
         // assert that there is exactly one chameleon set among the players
         List<Boolean> chameleonFlags = dummyPlayers.stream()
@@ -166,23 +260,110 @@ public class GameSessionServiceTest {
         // given
         testPlayerAction.setActionType("START_VOTING");
         testGameSession.setCurrentState(GameState.READY_FOR_VOTING);
+        LiveGameSession live = liveGame(List.of(testPlayer));
         // when
-        PlayerActionResult result = gameSessionService.startVoting(testPlayerAction, testGameSession);
+        PlayerActionResult result = gameSessionService.startVoting(testPlayerAction, live);
         // then
-        Mockito.verify(gameSessionRepository, Mockito.times(1)).save(testGameSession);
+        Mockito.verify(gameStateWriter, Mockito.times(1)).schedule(live);
         assertEquals(testGameSession.getCurrentState(), GameState.VOTING);
         assertEquals(result.getActionType(), testPlayerAction.getActionType());
     }
 
+    @Test
+    public void startVoting_schedulesDeadline() throws Exception {
+        // given
+        testPlayerAction.setActionType("START_VOTING");
+        testGameSession.setCurrentState(GameState.READY_FOR_VOTING);
+        LiveGameSession live = liveGame(List.of(testPlayer));
+        TimerService.Timeout deadline = Mockito.mock(TimerService.Timeout.class);
+        when(timerService.schedule(Mockito.any(), Mockito.eq(90_000L), Mockito.eq(TimeUnit.MILLISECONDS))).thenReturn(deadline);
+        // when
+        gameSessionService.startVoting(testPlayerAction, live);
+        // then
+        assertSame(deadline, live.getVotingDeadline());
+    }
+
+    @Test
+    public void doVote_lastVote_cancelsDeadline() throws Exception {
+        // given
+        testPlayer.setIsChameleon(true);
+        testPlayerAction.setActionType("VOTE");
+        testPlayerAction.setActionContent(testUser.getUsername());
+        testGameSession.setCurrentState(GameState.READY_FOR_VOTING);
+        LiveGameSession live = liveGame(List.of(testPlayer));
+        TimerService.Timeout deadline = Mockito.mock(TimerService.Timeout.class);
+        when(timerService.schedule(Mockito.any(), Mockito.eq(90_000L), Mockito.eq(TimeUnit.MILLISECONDS))).thenReturn(deadline);
+        PlayerAction startAction = new PlayerAction();
+        startAction.setActionType("START_VOTING");
+        gameSessionService.startVoting(startAction, live);
+        // when
+        PlayerActionResult result = gameSessionService.doVote(testPlayer, testPlayerAction, live);
+        // then
+        assertEquals("END_VOTING", result.getActionType());
+        verify(deadline).cancel();
+        assertNull(live.getVotingDeadline());
+    }
+
+    @Test
+    public void startVoting_storesDeadline() throws Exception {
+        // given
+        testPlayerAction.setActionType("START_VOTING");
+        testGameSession.setCurrentState(GameState.READY_FOR_VOTING);
+        LiveGameSession live = liveGame(List.of(testPlayer));
+        Instant before = Instant.now();
+        // when
+        gameSessionService.startVoting(testPlayerAction, live);
+        // then
+        Instant deadline = testGameSession.getVotingDeadline();
+        assertNotNull(deadline);
+        assertTrue(!deadline.isBefore(before.plusSeconds(89)) && !deadline.isAfter(Instant.now().plusSeconds(90)));
+    }
+
+    @Test
+    public void resumeVoting_deadlinePending_rescheduled() throws Exception {
+        // given
+        testGameSession.setCurrentState(GameState.VOTING);
+        testGameSession.setVotingDeadline(Instant.now().plusSeconds(30));
+        LiveGameSession live = liveGame(List.of(testPlayer));
+        TimerService.Timeout deadline = Mockito.mock(TimerService.Timeout.class);
+        when(timerService.schedule(Mockito.any(), Mockito.anyLong(), Mockito.eq(TimeUnit.MILLISECONDS))).thenReturn(deadline);
+        // when
+        gameSessionService.resumeVoting(testGameSession.getGameToken());
+        // then
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(timerService).schedule(Mockito.any(), delay.capture(), Mockito.eq(TimeUnit.MILLISECONDS));
+        assertTrue(delay.getValue() > 25_000 && delay.getValue() <= 30_000);
+        assertSame(deadline, live.getVotingDeadline());
+        assertEquals(GameState.VOTING, testGameSession.getCurrentState());
+    }
+
+    @Test
+    public void resumeVoting_deadlinePassed_votingEnded() throws Exception {
+        // given
+        testPlayer.setIsChameleon(true);
+        testGameSession.setCurrentState(GameState.VOTING);
+        testGameSession.setVotingDeadline(Instant.now().minusSeconds(5));
+        liveGame(List.of(testPlayer));
+        // when
+        gameSessionService.resumeVoting(testGameSession.getGameToken());
+        // then
+        Mockito.verify(timerService, Mockito.never()).schedule(Mockito.any(), Mockito.anyLong(), Mockito.any());
+        assertEquals(GameState.CHAMELEON_WIN, testGameSession.getCurrentState());
+        assertNull(testGameSession.getVotingDeadline());
+        verify(messagingTemplate).convertAndSend(Mockito.eq("/game/topic/" + testGameSession.getGameToken()),
+                Mockito.any(PlayerActionResult.class));
+    }
+
     @Test
     public void startVoting_fail() throws Exception {
         // given
         testPlayerAction.setActionType("START_VOTING");
         testGameSession.setCurrentState(GameState.STARTED);
+        liveGame(List.of(testPlayer));
         // assert that startVoting throws an exception
         Exception exception = assertThrows(Exception.class, () -> {
             // when
-            gameSessionService.startVoting(testPlayerAction, testGameSession);
+            gameSessionService.handlePlayerAction(testUser, testPlayerAction, testGameSession);
         });
         assertEquals("Game session is not in a valid state to start voting", exception.getMessage());
     }
@@ -193,10 +374,11 @@ public class GameSessionServiceTest {
         testPlayerAction.setActionType("VOTE");
         testPlayerAction.setActionContent("user1");
         testGameSession.setCurrentState(GameState.STARTED);
+        liveGame(List.of(testPlayer));
         // then
         Exception exception = assertThrows(Exception.class, () -> {
             // when
-            gameSessionService.doVote(testPlayer, testPlayerAction, testGameSession);
+            gameSessionService.handlePlayerAction(testUser, testPlayerAction, testGameSession);
         });
         assertEquals("Game session is not in a valid state to vote", exception.getMessage());
     }
@@ -223,6 +405,31 @@ public class GameSessionServiceTest {
     //     });
     //     assertEquals("Player cannot vote for themselves", exception.getMessage());
     // }
+    // players user1..userN with user ids 1..N, the chameleon is the one at chameleonIndex
+    private List<Player> votingPlayers(int count, int chameleonIndex) {
+        List<Player> players = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            User user = new User();
+            user.setId((long) i);
+            user.setUsername("user" + i);
+            Player player = new Player();
+            player.setId((long) i);
+            player.setUser(user);
+            player.setIsChameleon(i - 1 == chameleonIndex);
+            players.add(player);
+        }
+        return players;
+    }
+
+    private LiveGameSession votingGame(List<Player> players) {
+        testGameSession.setCurrentState(GameState.READY_FOR_VOTING);
+        LiveGameSession live = liveGame(players);
+        PlayerAction startAction = new PlayerAction();
+        startAction.setActionType("START_VOTING");
+        gameSessionService.startVoting(startAction, live);
+        return live;
+    }
+
     /**
      * Test vote from player. Not all players have voted, so an empty action
      * result is returned.
@@ -230,43 +437,67 @@ public class GameSessionServiceTest {
     @Test
     public void doVote_success() throws Exception {
         // given
-        Player player1 = new Player();
-        player1.setUser(new User());
-        player1.getUser().setUsername("user1");
-
-        Player player2 = new Player();
-        player2.setUser(new User());
-        player2.getUser().setUsername("user2");
-
-        Player player3 = new Player();
-        player3.setUser(new User());
-        player3.getUser().setUsername("user3");
-
-        player1.setCurrentAccusedPlayer(player2);
-        // player2.setCurrentAccusedPlayer(player1);
-
-        List<Player> dummyPlayers = List.of(
-                player1,
-                player2,
-                player3
-        );
+        List<Player> players = votingPlayers(3, 2);
+        LiveGameSession live = votingGame(players);
+        live.castVote(players.get(0), players.get(1));
 
         // we simulate a vote from player3 to player1
         testPlayerAction.setActionType("VOTE");
         testPlayerAction.setActionContent("user1");
-        testGameSession.setCurrentState(GameState.VOTING);
-
-        Mockito.when(playerRepository.findByGameSession(testGameSession)).thenReturn(dummyPlayers);
 
         // then
-        PlayerActionResult result = gameSessionService.doVote(player3, testPlayerAction, testGameSession);
+        PlayerActionResult result = gameSessionService.doVote(players.get(2), testPlayerAction, live);
 
-        Mockito.verify(playerRepository, Mockito.times(1)).save(player3);
+        assertEquals(Long.valueOf(1L), testGameSession.getVotes().get(3L));
+        assertEquals(2, live.getVoteTally().getVoterCount());
+        // written by startVoting and again with the vote, so it survives a restart
+        Mockito.verify(gameStateWriter, Mockito.times(2)).schedule(live);
         assertEquals(result.getActionType(), testPlayerAction.getActionType());
         assertEquals(result.getActionContent(), testPlayerAction.getActionContent());
+        assertEquals(Map.of("user1", 1, "user2", 1), result.getVoteCounts());
         assertTrue(result.getActionResult() == null);
     }
 
+    @Test
+    public void doVote_twice_rejected() throws Exception {
+        List<Player> players = votingPlayers(3, 2);
+        LiveGameSession live = votingGame(players);
+        testPlayerAction.setActionType("VOTE");
+        testPlayerAction.setActionContent("user1");
+        gameSessionService.doVote(players.get(2), testPlayerAction, live);
+
+        testPlayerAction.setActionContent("user2");
+        Exception exception = assertThrows(Exception.class, () -> {
+            gameSessionService.doVote(players.get(2), testPlayerAction, live);
+        });
+        assertEquals("Player has already voted", exception.getMessage());
+        assertEquals(1, live.getVoteTally().getVotes(1L));
+        assertEquals(0, live.getVoteTally().getVotes(2L));
+    }
+
+    /**
+     * Voting ends before everybody voted once the remaining votes cannot
+     * change the outcome anymore.
+     */
+    @Test
+    public void doVote_outcomeDecided_endsEarly() throws Exception {
+        List<Player> players = votingPlayers(5, 4);
+        LiveGameSession live = votingGame(players);
+        testPlayerAction.setActionType("VOTE");
+        testPlayerAction.setActionContent("user5");
+
+        // 2 of 5 votes, the other three could still vote for somebody else
+        assertEquals("VOTE", gameSessionService.doVote(players.get(0), testPlayerAction, live).getActionType());
+        assertEquals("VOTE", gameSessionService.doVote(players.get(1), testPlayerAction, live).getActionType());
+        // 3 of 5 votes, nobody can catch up with the remaining two
+        PlayerActionResult result = gameSessionService.doVote(players.get(2), testPlayerAction, live);
+
+        assertEquals("END_VOTING", result.getActionType());
+        assertEquals("CHAMELEON_FOUND", result.getActionResult());
+        assertEquals(Map.of("user5", 3), result.getVoteCounts());
+        assertEquals(GameState.CHAMELEON_TURN, testGameSession.getCurrentState());
+    }
+
     /**
      * Test vote from player when all players have voted and the most voted
      * player is not the chameleon.
@@ -274,38 +505,17 @@ public class GameSessionServiceTest {
     @Test
     public void doVote_chameleon_not_found() throws Exception {
         // given
-        Player player1 = new Player();
-        player1.setUser(new User());
-        player1.getUser().setUsername("user1");
-        player1.setIsChameleon(false);
-        Player player2 = new Player();
-        player2.setUser(new User());
-        player2.getUser().setUsername("user2");
-        player2.setIsChameleon(true);
-        Player player3 = new Player();
-        player3.setUser(new User());
-        player3.getUser().setUsername("user3");
-        player3.setIsChameleon(false);
-        player1.setCurrentAccusedPlayer(player2);
-        player2.setCurrentAccusedPlayer(player1);
-        List<Player> dummyPlayers = List.of(
-                player1,
-                player2,
-                player3
-        );
+        List<Player> players = votingPlayers(3, 1);
+        LiveGameSession live = votingGame(players);
+        live.castVote(players.get(0), players.get(1));
+        live.castVote(players.get(1), players.get(0));
         // we simulate a vote from player3 to player1
         testPlayerAction.setActionType("VOTE");
         testPlayerAction.setActionContent("user1");
-        // get game session in voting state
-        testGameSession.setCurrentState(GameState.READY_FOR_VOTING);
-        PlayerAction start_action = new PlayerAction();
-        start_action.setActionType("START_VOTING");
-        gameSessionService.startVoting(start_action, testGameSession);
 
-        Mockito.when(playerRepository.findByGameSession(testGameSession)).thenReturn(dummyPlayers);
         // then
-        PlayerActionResult result = gameSessionService.doVote(player3, testPlayerAction, testGameSession);
-        Mockito.verify(playerRepository, Mockito.times(1)).save(player3);
+        PlayerActionResult result = gameSessionService.doVote(players.get(2), testPlayerAction, live);
+        assertEquals(2, live.getVoteTally().getVotes(1L));
         assertEquals(result.getActionType(), "END_VOTING");
         assertEquals(result.getActionResult(), "CHAMELEON_WON");
     }
@@ -317,39 +527,17 @@ public class GameSessionServiceTest {
     @Test
     public void doVote_chameleon_found() throws Exception {
         // given
-        Player player1 = new Player();
-        player1.setUser(new User());
-        player1.getUser().setUsername("user1");
-        player1.setIsChameleon(true);
-        Player player2 = new Player();
-        player2.setUser(new User());
-        player2.getUser().setUsername("user2");
-        player2.setIsChameleon(false);
-        Player player3 = new Player();
-        player3.setUser(new User());
-        player3.getUser().setUsername("user3");
-        player3.setIsChameleon(false);
-        player1.setCurrentAccusedPlayer(player2);
-        player2.setCurrentAccusedPlayer(player1);
-        List<Player> dummyPlayers = List.of(
-                player1,
-                player2,
-                player3
-        );
+        List<Player> players = votingPlayers(3, 0);
+        LiveGameSession live = votingGame(players);
+        live.castVote(players.get(0), players.get(1));
+        live.castVote(players.get(1), players.get(0));
         // we simulate a vote from player3 to player1
         testPlayerAction.setActionType("VOTE");
         testPlayerAction.setActionContent("user1");
 
-        // get game session in voting state
-        testGameSession.setCurrentState(GameState.READY_FOR_VOTING);
-        PlayerAction start_action = new PlayerAction();
-        start_action.setActionType("START_VOTING");
-        gameSessionService.startVoting(start_action, testGameSession);
-
-        Mockito.when(playerRepository.findByGameSession(testGameSession)).thenReturn(dummyPlayers);
         // then
-        PlayerActionResult result = gameSessionService.doVote(player3, testPlayerAction, testGameSession);
-        Mockito.verify(playerRepository, Mockito.times(1)).save(player3);
+        PlayerActionResult result = gameSessionService.doVote(players.get(2), testPlayerAction, live);
+        assertEquals(2, live.getVoteTally().getVotes(1L));
         assertEquals(result.getActionType(), "END_VOTING");
         assertEquals(result.getActionResult(), "CHAMELEON_FOUND");
     }
@@ -366,28 +554,27 @@ public class GameSessionServiceTest {
         testPlayerAction.setActionType("GIVE_HINT");
         testPlayerAction.setActionContent("test_hint");
         testGameSession.setCurrentState(GameState.STARTED);
-        testGameSession.setCurrentPlayerTurn(testPlayer);
         testGameSession.setSecretWord("secret_word");
 
-        // Set up next player relationship
+        // Set up the turn order, the next player follows
         Player nextPlayer = new Player();
         nextPlayer.setId(2L);
         User nextUser = new User();
         nextUser.setUsername("player2");
         nextPlayer.setUser(nextUser);
         nextPlayer.setGameSession(testGameSession);
-        testPlayer.setNextPlayer(nextPlayer);
-
-        // Mock repository behavior
-        when(playerRepository.save(any(Player.class))).thenReturn(testPlayer);
-        when(gameSessionRepository.save(any(GameSession.class))).thenReturn(testGameSession);
+        testGameSession.setTurnOrder(List.of(1L, 2L));
+        LiveGameSession live = liveGame(List.of(testPlayer, nextPlayer));
 
         // when
-        PlayerActionResult result = gameSessionService.giveHint(testPlayer, testPlayerAction, testGameSession);
-
-        // then
-        verify(gameSessionRepository, times(1)).save(testGameSession);
-        verify(playerRepository, times(1)).save(testPlayer);
+        PlayerActionResult result = gameSessionService.giveHint(testPlayer, testPlayerAction, live);
+
+        // then, the hint and the turn are persisted right away
+        verify(gameStateWriter).schedule(live);
+        assertEquals("test_hint", testPlayer.getGivenHint());
+        assertEquals(Long.valueOf(2L), testGameSession.getCurrentTurnPlayerId());
+        assertSame(nextPlayer, live.getCurrentTurnPlayer());
+        assertEquals(List.of(2L), testGameSession.getRemainingTurnPlayerIds());
         assertEquals(GameState.STARTED, testGameSession.getCurrentState());
         assertEquals(testPlayerAction.getActionType(), result.getActionType());
     }
@@ -404,19 +591,16 @@ public class GameSessionServiceTest {
         testPlayerAction.setActionType("GIVE_HINT");
         testPlayerAction.setActionContent("test_hint");
         testGameSession.setCurrentState(GameState.STARTED);
-        testGameSession.setCurrentPlayerTurn(testPlayer);
+        testGameSession.setTurnOrder(List.of(1L));
         testGameSession.setSecretWord("secret_word");
 
-        // Mock repository behavior
-        when(playerRepository.save(any(Player.class))).thenReturn(testPlayer);
-        when(gameSessionRepository.save(any(GameSession.class))).thenReturn(testGameSession);
+        LiveGameSession live = liveGame(List.of(testPlayer));
 
         // when
-        PlayerActionResult result = gameSessionService.giveHint(testPlayer, testPlayerAction, testGameSession);
+        PlayerActionResult result = gameSessionService.giveHint(testPlayer, testPlayerAction, live);
 
         // then
-        verify(gameSessionRepository, times(1)).save(testGameSession);
-        verify(playerRepository, times(1)).save(testPlayer);
+        verify(gameStateWriter, times(1)).schedule(live);
         assertEquals(GameState.READY_FOR_VOTING, testGameSession.getCurrentState());
         assertEquals(testPlayerAction.getActionType(), result.getActionType());
     }
@@ -433,12 +617,13 @@ public class GameSessionServiceTest {
         testPlayerAction.setActionType("GIVE_HINT");
         testPlayerAction.setActionContent("secret_word");
         testGameSession.setCurrentState(GameState.STARTED);
-        testGameSession.setCurrentPlayerTurn(testPlayer);
+        testGameSession.setTurnOrder(List.of(1L));
         testGameSession.setSecretWord("secret_word");
+        LiveGameSession live = liveGame(List.of(testPlayer));
 
         // when
         Exception exception = assertThrows(Exception.class, () -> {
-            gameSessionService.giveHint(testPlayer, testPlayerAction, testGameSession);
+            gameSessionService.giveHint(testPlayer, testPlayerAction, live);
         });
         // check exception message
         assertEquals("Hint cannot contain the secret word", exception.getMessage());
@@ -456,19 +641,16 @@ public class GameSessionServiceTest {
         testPlayerAction.setActionType("GIVE_HINT");
         testPlayerAction.setActionContent("secret_word");
         testGameSession.setCurrentState(GameState.STARTED);
-        testGameSession.setCurrentPlayerTurn(testPlayer);
+        testGameSession.setTurnOrder(List.of(1L));
         testGameSession.setSecretWord("secret_word");
 
-        // Mock repository behavior
-        when(playerRepository.save(any(Player.class))).thenReturn(testPlayer);
-        when(gameSessionRepository.save(any(GameSession.class))).thenReturn(testGameSession);
+        LiveGameSession live = liveGame(List.of(testPlayer));
 
         // when
-        PlayerActionResult result = gameSessionService.giveHint(testPlayer, testPlayerAction, testGameSession);
+        PlayerActionResult result = gameSessionService.giveHint(testPlayer, testPlayerAction, live);
 
         // then
-        verify(gameSessionRepository, times(1)).save(testGameSession);
-        verify(playerRepository, times(1)).save(testPlayer);
+        verify(gameStateWriter, times(1)).schedule(live);
         assertEquals(GameState.READY_FOR_VOTING, testGameSession.getCurrentState());
         assertEquals(testPlayerAction.getActionType(), result.getActionType());
     }
@@ -480,11 +662,12 @@ public class GameSessionServiceTest {
         testPlayerAction.setActionContent("secret_word");
         testGameSession.setCurrentState(GameState.CHAMELEON_TURN);
         testGameSession.setSecretWord("secret_word");
+        LiveGameSession live = liveGame(List.of(testPlayer));
 
         // when
-        PlayerActionResult result = gameSessionService.handleChameleonGuess(testPlayer, testPlayerAction, testGameSession);
+        PlayerActionResult result = gameSessionService.handleChameleonGuess(testPlayer, testPlayerAction, live);
         // then
-        Mockito.verify(gameSessionRepository, Mockito.times(1)).save(testGameSession);
+        Mockito.verify(gameStateWriter, Mockito.times(1)).schedule(live);
         assertEquals(testGameSession.getCurrentState(), GameState.CHAMELEON_WIN);
         assertEquals(result.getActionType(), testPlayerAction.getActionType());
         assertEquals(result.getActionContent(), testPlayerAction.getActionContent());
@@ -498,11 +681,12 @@ public class GameSessionServiceTest {
         testPlayerAction.setActionContent("wrong_word");
         testGameSession.setCurrentState(GameState.CHAMELEON_TURN);
         testGameSession.setSecretWord("secret_word");
+        LiveGameSession live = liveGame(List.of(testPlayer));
 
         // when
-        PlayerActionResult result = gameSessionService.handleChameleonGuess(testPlayer, testPlayerAction, testGameSession);
+        PlayerActionResult result = gameSessionService.handleChameleonGuess(testPlayer, testPlayerAction, live);
         // then
-        Mockito.verify(gameSessionRepository, Mockito.times(1)).save(testGameSession);
+        Mockito.verify(gameStateWriter, Mockito.times(1)).schedule(live);
         assertEquals(testGameSession.getCurrentState(), GameState.PLAYERS_WIN);
         assertEquals(result.getActionType(), testPlayerAction.getActionType());
         assertEquals(result.getActionContent(), testPlayerAction.getActionContent());
@@ -516,10 +700,11 @@ public class GameSessionServiceTest {
         testPlayerAction.setActionContent("secret_word");
         testGameSession.setCurrentState(GameState.VOTING);
         testGameSession.setSecretWord("secret_word");
+        liveGame(List.of(testPlayer));
 
         // when
         Exception exception = assertThrows(Exception.class, () -> {
-            gameSessionService.handleChameleonGuess(testPlayer, testPlayerAction, testGameSession);
+            gameSessionService.handlePlayerAction(testUser, testPlayerAction, testGameSession);
         });
         // then
         assertEquals("Game session is not in a valid state for a chameleon guess", exception.getMessage());
@@ -531,24 +716,24 @@ public class GameSessionServiceTest {
         game.setCurrentState(GameState.CHAMELEON_WIN);
 
         User chameleonUser = new User();
+        chameleonUser.setId(1L);
         Player chameleonPlayer = new Player();
         chameleonPlayer.setUser(chameleonUser);
         chameleonPlayer.setIsChameleon(true);
 
         User playerUser = new User();
+        playerUser.setId(2L);
         Player normalPlayer = new Player();
         normalPlayer.setUser(playerUser);
         normalPlayer.setIsChameleon(false);
 
         List<Player> players = List.of(chameleonPlayer, normalPlayer);
-        when(playerRepository.findByGameSession(game)).thenReturn(players);
 
-        gameSessionService.recordGameSessionEnd(game);
+        gameSessionService.recordGameSessionEnd(new LiveGameSession(game, players));
 
-        verify(appService).incrementRoundsPlayed(chameleonUser);
-        verify(appService).incrementRoundsPlayed(playerUser);
-        verify(appService).incrementWins(chameleonUser);
-        verify(appService, never()).incrementWins(playerUser);
+        verify(appService).recordGameResults(List.of(chameleonUser, playerUser), List.of(chameleonUser));
+        verify(leaderboardService).recordGameResult(1L, true);
+        verify(leaderboardService).recordGameResult(2L, false);
     }
 
     @Test
@@ -567,14 +752,10 @@ public class GameSessionServiceTest {
         normalPlayer.setIsChameleon(false);
 
         List<Player> players = List.of(chameleonPlayer, normalPlayer);
-        when(playerRepository.findByGameSession(game)).thenReturn(players);
 
-        gameSessionService.recordGameSessionEnd(game);
+        gameSessionService.recordGameSessionEnd(new LiveGameSession(game, players));
 
-        verify(appService).incrementRoundsPlayed(chameleonUser);
-        verify(appService).incrementRoundsPlayed(playerUser);
-        verify(appService).incrementWins(playerUser);
-        verify(appService, never()).incrementWins(chameleonUser);
+        verify(appService).recordGameResults(List.of(chameleonUser, playerUser), List.of(playerUser));
     }
 
     @Test
@@ -593,13 +774,10 @@ public class GameSessionServiceTest {
         player2.setIsChameleon(false);
 
         List<Player> players = List.of(player1, player2);
-        when(playerRepository.findByGameSession(game)).thenReturn(players);
 
-        gameSessionService.recordGameSessionEnd(game);
+        gameSessionService.recordGameSessionEnd(new LiveGameSession(game, players));
 
-        verify(appService).incrementRoundsPlayed(user1);
-        verify(appService).incrementRoundsPlayed(user2);
-        verify(appService, never()).incrementWins(any());
+        verify(appService).recordGameResults(List.of(user1, user2), List.of());
     }
 
     @Test
@@ -610,13 +788,14 @@ public class GameSessionServiceTest {
 
         GameSession newGameSession = new GameSession();
         newGameSession.setGameToken("aaa");
-        when(appService.createGameSession(testUser)).thenReturn(newGameSession);
+        when(appService.createGameSession(testUser, null)).thenReturn(newGameSession);
+        LiveGameSession live = liveGame(List.of(testPlayer));
 
         // when
-        gameSessionService.newGame(testPlayer, testPlayerAction, testGameSession);
+        gameSessionService.newGame(testPlayer, testPlayerAction, live);
 
         // then
-        verify(appService).createGameSession(testPlayer.getUser());
+        verify(appService).createGameSession(testPlayer.getUser(), null);
         // wait 10 seconds to verify that the game session is deleted
         try {
             Thread.sleep(11000);
@@ -631,10 +810,11 @@ public class GameSessionServiceTest {
         // given
         testPlayerAction.setActionType("NEW_GAME");
         testGameSession.setCurrentState(GameState.VOTING);
+        liveGame(List.of(testPlayer));
 
         // when
         Exception exception = assertThrows(Exception.class, () -> {
-            gameSessionService.newGame(testPlayer, testPlayerAction, testGameSession);
+            gameSessionService.handlePlayerAction(testUser, testPlayerAction, testGameSession);
         });
         // then
         assertEquals("Game session is not in a valid state to start a new game", exception.getMessage());
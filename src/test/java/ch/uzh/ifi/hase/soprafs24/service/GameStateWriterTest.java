@@ -0,0 +1,127 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
+
+public class GameStateWriterTest {
+
+    @Mock
+    private GameSessionRepository gameSessionRepository;
+
+    @Mock
+    private PlayerRepository playerRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private GameStateWriter gameStateWriter;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        gameStateWriter = new GameStateWriter(gameSessionRepository, playerRepository, transactionManager);
+    }
+
+    private Player player(long id) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername("user" + id);
+        Player player = new Player();
+        player.setId(id);
+        player.setUser(user);
+        return player;
+    }
+
+    private GameSession gameSession() {
+        GameSession gameSession = new GameSession();
+        gameSession.setId(10L);
+        gameSession.setGameToken("testToken");
+        return gameSession;
+    }
+
+    @Test
+    public void schedule_writesLatestStateToManagedEntities() {
+        // live state
+        GameSession liveSession = gameSession();
+        Player livePlayer1 = player(1L);
+        Player livePlayer2 = player(2L);
+        LiveGameSession live = new LiveGameSession(liveSession, List.of(livePlayer1, livePlayer2));
+        liveSession.setCurrentState(GameState.STARTED);
+        liveSession.setSecretWord("word");
+        liveSession.setTurnOrder(List.of(2L, 1L));
+        liveSession.setTurnCursor(1);
+        livePlayer1.setIsChameleon(true);
+        livePlayer1.setGivenHint("hint");
+        Instant votingDeadline = Instant.now().plusSeconds(90);
+        liveSession.setVotingDeadline(votingDeadline);
+        live.castVote(livePlayer2, livePlayer1);
+
+        // database state
+        GameSession storedSession = gameSession();
+        Player storedPlayer1 = player(1L);
+        Player storedPlayer2 = player(2L);
+        when(gameSessionRepository.findById(10L)).thenReturn(Optional.of(storedSession));
+        when(playerRepository.findWithUsersByGameToken("testToken")).thenReturn(List.of(storedPlayer1, storedPlayer2));
+
+        gameStateWriter.schedule(live);
+        gameStateWriter.flush();
+
+        assertEquals(GameState.STARTED, storedSession.getCurrentState());
+        assertEquals("word", storedSession.getSecretWord());
+        assertEquals(List.of(2L, 1L), storedSession.getTurnOrder());
+        assertEquals(List.of(1L), storedSession.getRemainingTurnPlayerIds());
+        assertEquals(votingDeadline, storedSession.getVotingDeadline());
+        assertEquals(Map.of(2L, 1L), storedSession.getVotes());
+        assertTrue(storedPlayer1.getIsChameleon());
+        assertEquals("hint", storedPlayer1.getGivenHint());
+    }
+
+    @Test
+    public void schedule_deletedGame_skipped() {
+        LiveGameSession live = new LiveGameSession(gameSession(), List.of(player(1L)));
+        Player storedPlayer = player(1L);
+        when(playerRepository.findWithUsersByGameToken("testToken")).thenReturn(List.of(storedPlayer));
+        when(gameSessionRepository.findById(10L)).thenReturn(Optional.empty());
+        live.getPlayers().get(0).setGivenHint("hint");
+
+        gameStateWriter.schedule(live);
+        gameStateWriter.flush();
+
+        verify(gameSessionRepository).findById(10L);
+        assertNull(storedPlayer.getGivenHint());
+    }
+
+    @Test
+    public void schedule_endedGame_notQueued() {
+        LiveGameSession live = new LiveGameSession(gameSession(), List.of(player(1L)));
+        live.setEnded(true);
+
+        gameStateWriter.schedule(live);
+        gameStateWriter.flush();
+
+        verify(playerRepository, never()).findWithUsersByGameToken(any());
+        verify(gameSessionRepository, never()).findById(any());
+    }
+}
@@ -0,0 +1,169 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.UserRepository;
+
+public class LeaderboardServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private LeaderboardService leaderboardService;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        leaderboardService = new LeaderboardService(userRepository);
+    }
+
+    private User user(long id, int wins, int roundsPlayed) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername("player" + id);
+        user.setWins(wins);
+        user.setRoundsPlayed(roundsPlayed);
+        return user;
+    }
+
+    private List<Long> ids(List<LeaderboardService.RankedEntry> page) {
+        List<Long> ids = new ArrayList<>();
+        for (LeaderboardService.RankedEntry rankedEntry : page) {
+            ids.add(rankedEntry.entry().userId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void rebuild_ordersByWinRateThenId() {
+        when(userRepository.findAll()).thenReturn(List.of(
+                user(3L, 0, 5), user(2L, 5, 10), user(1L, 10, 20), user(4L, 3, 4)));
+
+        leaderboardService.rebuild();
+
+        List<LeaderboardService.RankedEntry> page = leaderboardService.getPage(0, 10);
+        assertEquals(List.of(4L, 1L, 2L, 3L), ids(page));
+        assertEquals(1, page.get(0).rank());
+        assertEquals(4, page.get(3).rank());
+    }
+
+    @Test
+    public void rebuild_updatesWhileReadingUsers_notLost() {
+        when(userRepository.findAll()).thenAnswer(invocation -> {
+            // games end and a user registers while the users are being read
+            leaderboardService.recordGameResult(1L, true);
+            leaderboardService.upsert(user(3L, 0, 0));
+            return List.of(user(1L, 0, 1), user(2L, 1, 2));
+        });
+        when(userRepository.findAllById(Set.of(1L, 3L))).thenReturn(List.of(user(1L, 1, 2), user(3L, 0, 0)));
+
+        leaderboardService.rebuild();
+
+        assertEquals(1, leaderboardService.getRank(1L).entry().wins());
+        assertEquals(2, leaderboardService.getRank(1L).entry().roundsPlayed());
+        assertEquals(1, leaderboardService.getRank(1L).rank());
+        assertEquals(3, leaderboardService.size());
+    }
+
+    @Test
+    public void rebuild_updateAlreadyRead_notCountedTwice() {
+        when(userRepository.findAll()).thenAnswer(invocation -> {
+            // the game result committed before the read, its update arrives after it started
+            leaderboardService.recordGameResult(1L, true);
+            return List.of(user(1L, 1, 2));
+        });
+        when(userRepository.findAllById(Set.of(1L))).thenReturn(List.of(user(1L, 1, 2)));
+
+        leaderboardService.rebuild();
+
+        assertEquals(1, leaderboardService.getRank(1L).entry().wins());
+        assertEquals(2, leaderboardService.getRank(1L).entry().roundsPlayed());
+        // updates after the rebuild are applied directly again
+        leaderboardService.recordGameResult(1L, false);
+        assertEquals(3, leaderboardService.getRank(1L).entry().roundsPlayed());
+        verify(userRepository, times(1)).findAllById(any());
+    }
+
+    @Test
+    public void getPage_offsetAndLimit() {
+        when(userRepository.findAll()).thenReturn(List.of(
+                user(1L, 4, 4), user(2L, 3, 4), user(3L, 2, 4), user(4L, 1, 4), user(5L, 0, 4)));
+        leaderboardService.rebuild();
+
+        List<LeaderboardService.RankedEntry> page = leaderboardService.getPage(1, 2);
+
+        assertEquals(List.of(2L, 3L), ids(page));
+        assertEquals(2, page.get(0).rank());
+        assertTrue(leaderboardService.getPage(5, 10).isEmpty());
+    }
+
+    @Test
+    public void recordGameResult_movesUser() {
+        when(userRepository.findAll()).thenReturn(List.of(user(1L, 1, 2), user(2L, 0, 2)));
+        leaderboardService.rebuild();
+        assertEquals(2, leaderboardService.getRank(2L).rank());
+
+        leaderboardService.recordGameResult(2L, true);
+        leaderboardService.recordGameResult(2L, true);
+        leaderboardService.recordGameResult(1L, false);
+
+        LeaderboardService.RankedEntry rankedEntry = leaderboardService.getRank(2L);
+        assertEquals(1, rankedEntry.rank());
+        assertEquals(2, rankedEntry.entry().wins());
+        assertEquals(4, rankedEntry.entry().roundsPlayed());
+        assertEquals(2, leaderboardService.getRank(1L).rank());
+        assertEquals(2, leaderboardService.size());
+    }
+
+    @Test
+    public void upsert_addsNewUser() {
+        leaderboardService.upsert(user(1L, 0, 0));
+
+        assertEquals(1, leaderboardService.getRank(1L).rank());
+        assertNull(leaderboardService.getRank(2L));
+    }
+
+    @Test
+    public void rankTree_matchesSortedList() {
+        Random random = new Random(42);
+        LeaderboardService.RankTree tree = new LeaderboardService.RankTree(LeaderboardService.RANKING);
+        List<LeaderboardService.Entry> expected = new ArrayList<>();
+        for (long id = 0; id < 500; id++) {
+            int rounds = random.nextInt(20);
+            LeaderboardService.Entry entry = new LeaderboardService.Entry(id, "p" + id,
+                    rounds == 0 ? 0 : random.nextInt(rounds + 1), rounds, null);
+            tree.insert(entry);
+            expected.add(entry);
+        }
+        // remove every third entry again
+        for (int i = 0; i < expected.size(); i += 3) {
+            tree.remove(expected.get(i));
+            expected.set(i, null);
+        }
+        expected.removeIf(entry -> entry == null);
+        expected.sort(LeaderboardService.RANKING);
+
+        assertEquals(expected.size(), tree.size());
+        assertEquals(expected, tree.range(0, expected.size()));
+        assertEquals(expected.subList(100, 150), tree.range(100, 50));
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(i, tree.rank(expected.get(i)));
+        }
+    }
+}
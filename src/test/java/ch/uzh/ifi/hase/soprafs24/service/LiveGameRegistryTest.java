@@ -0,0 +1,97 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
+
+public class LiveGameRegistryTest {
+
+    @Mock
+    private GameSessionRepository gameSessionRepository;
+
+    @Mock
+    private PlayerRepository playerRepository;
+
+    @Mock
+    private GameStateWriter gameStateWriter;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private GameActionDispatcher dispatcher;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        dispatcher = new GameActionDispatcher(1);
+        // every load returns a new entity, like a fresh persistence context would
+        when(gameSessionRepository.findByGameToken("game123")).thenAnswer(invocation -> {
+            GameSession gameSession = new GameSession();
+            gameSession.setGameToken("game123");
+            gameSession.setCurrentState(GameState.STARTED);
+            return Optional.of(gameSession);
+        });
+        when(playerRepository.findWithUsersByGameToken("game123")).thenReturn(List.of());
+    }
+
+    @AfterEach
+    public void teardown() throws InterruptedException {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void evictIdle_flushedThenDropped() {
+        // every game counts as idle
+        LiveGameRegistry liveGames = new LiveGameRegistry(gameSessionRepository, playerRepository,
+                transactionManager, dispatcher, gameStateWriter, 0);
+        LiveGameSession live = liveGames.get("game123");
+
+        liveGames.evictIdle();
+        // the eviction is a task of the game, wait for it
+        dispatcher.run("game123", () -> {
+        });
+
+        assertFalse(liveGames.isLoaded("game123"));
+        InOrder order = inOrder(gameStateWriter, gameSessionRepository);
+        order.verify(gameStateWriter).flush("game123");
+        // the next caller gets the game loaded again, after its state was written
+        LiveGameSession reloaded = liveGames.get("game123");
+        order.verify(gameSessionRepository).findByGameToken("game123");
+        assertNotSame(live, reloaded);
+    }
+
+    @Test
+    public void evictIdle_recentlyUsed_kept() {
+        LiveGameRegistry liveGames = new LiveGameRegistry(gameSessionRepository, playerRepository,
+                transactionManager, dispatcher, gameStateWriter, 60);
+        LiveGameSession live = liveGames.get("game123");
+
+        liveGames.evictIdle();
+        dispatcher.run("game123", () -> {
+        });
+
+        assertTrue(liveGames.isLoaded("game123"));
+        assertSame(live, liveGames.get("game123"));
+        verify(gameStateWriter, never()).flush("game123");
+    }
+}
@@ -0,0 +1,150 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import ch.uzh.ifi.hase.soprafs24.entity.PendingRoomClosure;
+import ch.uzh.ifi.hase.soprafs24.exceptions.VideoCircuitOpenException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.VideoUnavailableException;
+import ch.uzh.ifi.hase.soprafs24.repository.PendingRoomClosureRepository;
+
+public class RoomCloseQueueTest {
+
+    @Mock
+    private PendingRoomClosureRepository pendingRoomClosureRepository;
+
+    @Mock
+    private TwilioService twilioService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private RoomCloseQueue roomCloseQueue;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        // batches of 2, at most 3 attempts, backoff 2s, 4s, ... up to 5s
+        roomCloseQueue = new RoomCloseQueue(pendingRoomClosureRepository, twilioService, transactionManager,
+                2, 30, 3, 2, 5);
+    }
+
+    @Test
+    public void enqueue_storedAsDue() {
+        roomCloseQueue.enqueue("RM1");
+
+        ArgumentCaptor<PendingRoomClosure> closure = ArgumentCaptor.forClass(PendingRoomClosure.class);
+        verify(pendingRoomClosureRepository).save(closure.capture());
+        assertEquals("RM1", closure.getValue().getRoomSid());
+        assertEquals(0, closure.getValue().getAttempts());
+        assertEquals(closure.getValue().getEnqueuedAt(), closure.getValue().getNextAttemptAt());
+        // ending the game does not call Twilio
+        verify(twilioService, never()).closeVideoRoom(any());
+    }
+
+    @Test
+    public void enqueue_noRoom_ignored() {
+        roomCloseQueue.enqueue(null);
+
+        verify(pendingRoomClosureRepository, never()).save(any());
+    }
+
+    @Test
+    public void drain_closesInBatches() {
+        PendingRoomClosure first = closure("RM1", 0);
+        PendingRoomClosure second = closure("RM2", 0);
+        PendingRoomClosure third = closure("RM3", 0);
+        when(pendingRoomClosureRepository.findByNextAttemptAtLessThanEqualOrderByNextAttemptAt(any(), any()))
+                .thenReturn(List.of(first, second), List.of(third));
+
+        roomCloseQueue.drain();
+
+        verify(twilioService).closeVideoRoom("RM1");
+        verify(twilioService).closeVideoRoom("RM2");
+        verify(twilioService).closeVideoRoom("RM3");
+        verify(pendingRoomClosureRepository).deleteInBatch(List.of(first, second));
+        verify(pendingRoomClosureRepository).deleteInBatch(List.of(third));
+        verify(pendingRoomClosureRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    public void drain_closeFails_retriedWithBackoff() {
+        PendingRoomClosure closure = closure("RM1", 1);
+        when(pendingRoomClosureRepository.findByNextAttemptAtLessThanEqualOrderByNextAttemptAt(any(), any()))
+                .thenReturn(List.of(closure));
+        doThrow(new VideoUnavailableException("Twilio error")).when(twilioService).closeVideoRoom("RM1");
+        Instant before = Instant.now();
+
+        roomCloseQueue.drain();
+
+        assertEquals(2, closure.getAttempts());
+        // second attempt failed, the next one waits 4 seconds
+        assertFalse(closure.getNextAttemptAt().isBefore(before.plusSeconds(4)));
+        verify(pendingRoomClosureRepository).saveAll(List.of(closure));
+        verify(pendingRoomClosureRepository, never()).deleteInBatch(anyList());
+    }
+
+    @Test
+    public void drain_circuitOpen_notCountedAsAttempt() {
+        PendingRoomClosure closure = closure("RM1", 2);
+        when(pendingRoomClosureRepository.findByNextAttemptAtLessThanEqualOrderByNextAttemptAt(any(), any()))
+                .thenReturn(List.of(closure));
+        doThrow(new VideoCircuitOpenException("circuit open", Duration.ofSeconds(20)))
+                .when(twilioService).closeVideoRoom("RM1");
+        Instant before = Instant.now();
+
+        roomCloseQueue.drain();
+
+        // the last attempt is still left, tried again after the circuit's open period
+        assertEquals(2, closure.getAttempts());
+        assertFalse(closure.getNextAttemptAt().isBefore(before.plusSeconds(20)));
+        verify(pendingRoomClosureRepository).saveAll(List.of(closure));
+        verify(pendingRoomClosureRepository, never()).deleteInBatch(anyList());
+    }
+
+    @Test
+    public void drain_lastAttemptFails_givenUp() {
+        PendingRoomClosure closure = closure("RM1", 2);
+        when(pendingRoomClosureRepository.findByNextAttemptAtLessThanEqualOrderByNextAttemptAt(any(), any()))
+                .thenReturn(List.of(closure));
+        doThrow(new VideoUnavailableException("Twilio error")).when(twilioService).closeVideoRoom("RM1");
+
+        roomCloseQueue.drain();
+
+        verify(pendingRoomClosureRepository).deleteInBatch(List.of(closure));
+        verify(pendingRoomClosureRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    public void backoff_doublesUpToMaximum() {
+        assertEquals(Duration.ofSeconds(2), roomCloseQueue.backoff(1));
+        assertEquals(Duration.ofSeconds(4), roomCloseQueue.backoff(2));
+        assertEquals(Duration.ofSeconds(5), roomCloseQueue.backoff(3));
+        assertEquals(Duration.ofSeconds(5), roomCloseQueue.backoff(40));
+    }
+
+    private static PendingRoomClosure closure(String roomSid, int attempts) {
+        PendingRoomClosure closure = new PendingRoomClosure();
+        closure.setRoomSid(roomSid);
+        closure.setEnqueuedAt(Instant.now());
+        closure.setNextAttemptAt(closure.getEnqueuedAt());
+        closure.setAttempts(attempts);
+        return closure;
+    }
+}
@@ -0,0 +1,88 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TimerServiceTest {
+
+    private TimerService timerService;
+
+    @BeforeEach
+    public void setup() {
+        // a small wheel, so that the tests also cover timeouts that need several rounds
+        timerService = new TimerService(10, 8, 2);
+    }
+
+    @AfterEach
+    public void teardown() throws InterruptedException {
+        timerService.stop();
+    }
+
+    @Test
+    public void schedule_firesAfterDelay() throws Exception {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        TimerService.Timeout timeout = timerService.schedule(fired::countDown, 200, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(timeout.isExpired());
+        assertEquals(0, timerService.getPendingTimeouts());
+        assertEquals(1, timerService.getFiredTimeouts());
+        assertTrue(timerService.getMaxLatenessMillis() >= 0);
+    }
+
+    @Test
+    public void cancel_taskNeverRuns() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        TimerService.Timeout timeout = timerService.schedule(runs::incrementAndGet, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(0, timerService.getPendingTimeouts());
+
+        Thread.sleep(300);
+        assertEquals(0, runs.get());
+        assertTrue(timeout.isCancelled());
+        assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    public void schedule_manyTimeouts_cancelledSkipped() throws Exception {
+        int count = 2000;
+        CountDownLatch fired = new CountDownLatch(count / 2);
+        AtomicInteger firedCancelled = new AtomicInteger();
+        List<TimerService.Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            boolean keep = i % 2 == 0;
+            // spread over more ticks than the wheel has slots
+            timeouts.add(timerService.schedule(() -> {
+                if (keep) {
+                    fired.countDown();
+                } else {
+                    firedCancelled.incrementAndGet();
+                }
+            }, 200 + i % 200, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(count, timerService.getPendingTimeouts());
+        for (int i = 1; i < count; i += 2) {
+            timeouts.get(i).cancel();
+        }
+        assertEquals(count / 2, timerService.getPendingTimeouts());
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertEquals(0, firedCancelled.get());
+        assertEquals(0, timerService.getPendingTimeouts());
+    }
+}
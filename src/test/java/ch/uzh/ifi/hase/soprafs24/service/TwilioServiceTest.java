@@ -0,0 +1,98 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class TwilioServiceTest {
+
+    private final FakeRoomProvider roomProvider = new FakeRoomProvider();
+    private final VideoCallGuard callGuard = new VideoCallGuard(new SimpleMeterRegistry(), 4, 1000, 5, 30);
+    private final VideoTokenCache tokenCache = new VideoTokenCache(100, 3600, 300);
+    private TwilioService twilioService;
+
+    @AfterEach
+    public void teardown() throws InterruptedException {
+        twilioService.stopPool();
+        callGuard.shutdown();
+    }
+
+    @Test
+    public void claimRoom_pooledRoom_noRemoteCall() throws InterruptedException {
+        twilioService = new TwilioService(new SimpleMeterRegistry(), roomProvider, callGuard, tokenCache, 3, 3000, 30);
+        twilioService.refillPool();
+        assertEquals(3, twilioService.getIdleRoomCount());
+        assertEquals(3, roomProvider.created.get());
+
+        String roomSid = twilioService.claimRoom();
+
+        // the oldest room is handed out, a new one is created in the background
+        assertEquals("RM1", roomSid);
+        Thread.sleep(200);
+        assertEquals(3, twilioService.getIdleRoomCount());
+        assertEquals(4, roomProvider.created.get());
+    }
+
+    @Test
+    public void claimRoom_expiredRooms_notHandedOut() throws InterruptedException {
+        twilioService = new TwilioService(new SimpleMeterRegistry(), roomProvider, callGuard, tokenCache, 2, 0, 30);
+        twilioService.refillPool();
+
+        assertNull(twilioService.claimRoom());
+        // the expired rooms are closed on the pool thread
+        Thread.sleep(200);
+        assertTrue(roomProvider.closed.containsAll(List.of("RM1", "RM2")));
+    }
+
+    @Test
+    public void maintainPool_retiresExpiredAndRefills() {
+        twilioService = new TwilioService(new SimpleMeterRegistry(), roomProvider, callGuard, tokenCache, 2, 0, 30);
+        twilioService.refillPool();
+
+        twilioService.maintainPool();
+
+        // retired rooms are replaced by fresh ones, which are expired again right away here
+        assertEquals(List.of("RM1", "RM2"), roomProvider.closed.subList(0, 2));
+        assertEquals(4, roomProvider.created.get());
+        assertEquals(2, twilioService.getIdleRoomCount());
+    }
+
+    @Test
+    public void claimRoom_noPool_null() {
+        twilioService = new TwilioService(new SimpleMeterRegistry(), roomProvider, callGuard, tokenCache, 0, 3000, 30);
+        twilioService.refillPool();
+
+        assertNull(twilioService.claimRoom());
+        assertEquals(0, roomProvider.created.get());
+    }
+
+    private static class FakeRoomProvider implements VideoProvider {
+
+        private final AtomicInteger created = new AtomicInteger();
+        private final List<String> closed = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public String createRoom(String uniqueName) {
+            return "RM" + created.incrementAndGet();
+        }
+
+        @Override
+        public void closeRoom(String roomSid) {
+            closed.add(roomSid);
+        }
+
+        @Override
+        public String generateToken(String identity, String roomSid, int ttlSeconds) {
+            return roomSid + ":" + identity;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+
+public class UserTokenCacheTest {
+
+    private User user(long id, String token) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername("user" + id);
+        user.setToken(token);
+        return user;
+    }
+
+    @Test
+    public void get_cachedToken_hit() {
+        UserTokenCache cache = new UserTokenCache(10, 60);
+        User user = user(1L, "token1");
+        cache.put(user);
+
+        assertSame(user, cache.get("token1"));
+        assertEquals(1, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void get_unknownToken_miss() {
+        UserTokenCache cache = new UserTokenCache(10, 60);
+
+        assertNull(cache.get("unknown"));
+        assertNull(cache.get(null));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void put_overCapacity_evictsLeastRecentlyUsed() {
+        UserTokenCache cache = new UserTokenCache(2, 60);
+        cache.put(user(1L, "token1"));
+        cache.put(user(2L, "token2"));
+        // touch token1 so that token2 becomes the eldest entry
+        cache.get("token1");
+        cache.put(user(3L, "token3"));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("token2"));
+        assertEquals(1L, cache.get("token1").getId());
+        assertEquals(3L, cache.get("token3").getId());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void get_expiredEntry_miss() {
+        UserTokenCache cache = new UserTokenCache(10, 0);
+        cache.put(user(1L, "token1"));
+
+        assertNull(cache.get("token1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void bindTo_exposesHitsMissesAndSize() {
+        UserTokenCache cache = new UserTokenCache(10, 60);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        cache.put(user(1L, "token1"));
+        cache.get("token1");
+        cache.get("unknown");
+
+        assertEquals(1.0, registry.get("cache.gets").tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.gets").tag("result", "miss").functionCounter().count());
+        assertEquals(1.0, registry.get("cache.size").gauge().value());
+    }
+
+    @Test
+    public void invalidate_removesEntry() {
+        UserTokenCache cache = new UserTokenCache(10, 60);
+        cache.put(user(1L, "token1"));
+
+        cache.invalidate("token1");
+
+        assertNull(cache.get("token1"));
+    }
+
+    @Test
+    public void getByUserId_followsTokenOfUser() {
+        UserTokenCache cache = new UserTokenCache(10, 60);
+        User user = user(1L, "token1");
+        cache.put(user);
+
+        assertSame(user, cache.getByUserId(1L));
+        assertNull(cache.getByUserId(2L));
+
+        cache.invalidate("token1");
+        assertNull(cache.getByUserId(1L));
+    }
+
+    @Test
+    public void getByUserId_evictedEntry_miss() {
+        UserTokenCache cache = new UserTokenCache(1, 60);
+        cache.put(user(1L, "token1"));
+        cache.put(user(2L, "token2"));
+
+        assertNull(cache.getByUserId(1L));
+        assertEquals(2L, cache.getByUserId(2L).getId());
+    }
+}
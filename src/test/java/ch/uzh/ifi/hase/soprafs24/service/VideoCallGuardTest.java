@@ -0,0 +1,119 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.twilio.exception.ApiConnectionException;
+import com.twilio.exception.ApiException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ch.uzh.ifi.hase.soprafs24.exceptions.VideoCircuitOpenException;
+import ch.uzh.ifi.hase.soprafs24.exceptions.VideoUnavailableException;
+
+public class VideoCallGuardTest {
+
+    private VideoCallGuard callGuard;
+
+    @BeforeEach
+    public void setup() {
+        // two concurrent calls, 200 ms timeout, open after 2 failures
+        callGuard = new VideoCallGuard(new SimpleMeterRegistry(), 2, 200, 2, 60);
+    }
+
+    @AfterEach
+    public void teardown() {
+        callGuard.shutdown();
+    }
+
+    @Test
+    public void call_success_returnsResult() {
+        assertEquals("RM1", callGuard.call(() -> "RM1"));
+        assertEquals(CircuitBreaker.State.CLOSED, callGuard.getCircuitState());
+    }
+
+    @Test
+    public void call_slowProvider_timesOut() {
+        long start = System.nanoTime();
+
+        assertThrows(VideoUnavailableException.class, () -> callGuard.call(() -> {
+            Thread.sleep(5000);
+            return "RM1";
+        }));
+
+        // the caller is released after the timeout, not after the provider answered
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void call_repeatedFailures_circuitOpens() {
+        for (int i = 0; i < 2; i++) {
+            assertThrows(VideoUnavailableException.class, () -> callGuard.call(() -> {
+                throw new ApiException("Twilio error", 20500, null, 500, null);
+            }));
+        }
+
+        assertFalse(callGuard.isCallPermitted());
+        // refused without calling the provider
+        boolean[] called = {false};
+        VideoCircuitOpenException refused = assertThrows(VideoCircuitOpenException.class,
+                () -> callGuard.call(() -> called[0] = true));
+        assertFalse(called[0]);
+        // open for 60 seconds
+        assertTrue(refused.getRetryAfter().getSeconds() > 50);
+    }
+
+    @Test
+    public void call_clientErrors_circuitStaysClosed() {
+        for (int i = 0; i < 5; i++) {
+            assertThrows(VideoUnavailableException.class, () -> callGuard.call(() -> {
+                throw new ApiException("Room not found", 20404, null, 404, null);
+            }));
+        }
+
+        // the provider answered every call, it is not failing
+        assertTrue(callGuard.isCallPermitted());
+        assertEquals(CircuitBreaker.State.CLOSED, callGuard.getCircuitState());
+    }
+
+    @Test
+    public void isProviderFault_onlyOutagesCount() {
+        assertTrue(VideoCallGuard.isProviderFault(new ApiException("Internal error", 20500, null, 500, null)));
+        assertTrue(VideoCallGuard.isProviderFault(new ApiConnectionException("Connection reset")));
+        assertFalse(VideoCallGuard.isProviderFault(new ApiException("Room completed", 53118, null, 400, null)));
+        assertFalse(VideoCallGuard.isProviderFault(new IllegalArgumentException("bad room name")));
+    }
+
+    @Test
+    public void call_bulkheadFull_refusedRightAway() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(2);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            for (int i = 0; i < 2; i++) {
+                callers.submit(() -> callGuard.call(() -> {
+                    running.countDown();
+                    return release.await(150, TimeUnit.MILLISECONDS);
+                }));
+            }
+            assertTrue(running.await(1, TimeUnit.SECONDS));
+
+            assertThrows(VideoUnavailableException.class, () -> callGuard.call(() -> "RM1"));
+            // a full bulkhead says nothing about the provider
+            assertTrue(callGuard.isCallPermitted());
+        } finally {
+            release.countDown();
+            callers.shutdown();
+        }
+    }
+}
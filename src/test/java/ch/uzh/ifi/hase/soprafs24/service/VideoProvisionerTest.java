@@ -0,0 +1,191 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import ch.uzh.ifi.hase.soprafs24.constant.GameState;
+import ch.uzh.ifi.hase.soprafs24.constant.VideoStatus;
+import ch.uzh.ifi.hase.soprafs24.entity.GameSession;
+import ch.uzh.ifi.hase.soprafs24.entity.Player;
+import ch.uzh.ifi.hase.soprafs24.entity.User;
+import ch.uzh.ifi.hase.soprafs24.repository.GameSessionRepository;
+import ch.uzh.ifi.hase.soprafs24.repository.PlayerRepository;
+import ch.uzh.ifi.hase.soprafs24.websocket.PlayerActionResult;
+import ch.uzh.ifi.hase.soprafs24.websocket.VideoTokenMessage;
+
+public class VideoProvisionerTest {
+
+    @Mock
+    private GameSessionRepository gameSessionRepository;
+
+    @Mock
+    private PlayerRepository playerRepository;
+
+    @Mock
+    private TwilioService twilioService;
+
+    @Mock
+    private GameStateWriter gameStateWriter;
+
+    @Mock
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Mock
+    private RoomCloseQueue roomCloseQueue;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private GameActionDispatcher dispatcher;
+    private LiveGameRegistry liveGames;
+    private VideoProvisioner videoProvisioner;
+    private GameSession gameSession;
+    private List<Player> players;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        dispatcher = new GameActionDispatcher(1);
+        liveGames = new LiveGameRegistry(gameSessionRepository, playerRepository, transactionManager,
+                dispatcher, gameStateWriter, 60);
+        videoProvisioner = new VideoProvisioner(twilioService, liveGames, dispatcher, gameStateWriter,
+                roomCloseQueue, messagingTemplate, 1, 10, 10);
+
+        gameSession = new GameSession();
+        gameSession.setGameToken("game123");
+        gameSession.setCurrentState(GameState.WAITING_FOR_PLAYERS);
+        gameSession.setVideoStatus(VideoStatus.PROVISIONING);
+        players = List.of(player(1L, "alice"), player(2L, "bob"));
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.of(gameSession));
+        when(playerRepository.findWithUsersByGameToken("game123")).thenReturn(players);
+        when(twilioService.isVideoAvailable()).thenReturn(true);
+    }
+
+    @AfterEach
+    public void teardown() throws InterruptedException {
+        videoProvisioner.shutdown();
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void provision_roomReady_tokensPushedToEveryPlayer() {
+        when(twilioService.createVideoRoom("game123")).thenReturn(new TwilioService.TwilioRoomInfo("RM123", "roomToken"));
+        when(twilioService.generateToken(anyString(), eq("RM123")))
+                .thenAnswer(invocation -> "token-" + invocation.getArgument(0));
+
+        videoProvisioner.provision("game123");
+
+        ArgumentCaptor<PlayerActionResult> result = ArgumentCaptor.forClass(PlayerActionResult.class);
+        verify(messagingTemplate, timeout(2000)).convertAndSend(eq("/game/topic/game123"), result.capture());
+        assertEquals("VIDEO_READY", result.getValue().getActionType());
+        assertEquals(VideoStatus.READY, gameSession.getVideoStatus());
+        assertEquals("RM123", gameSession.getTwilioRoomSid());
+        assertEquals("token-alice", players.get(0).getTwilioToken());
+        assertEquals("token-bob", players.get(1).getTwilioToken());
+
+        ArgumentCaptor<VideoTokenMessage> message = ArgumentCaptor.forClass(VideoTokenMessage.class);
+        verify(messagingTemplate).convertAndSendToUser(eq("2"), eq(VideoProvisioner.VIDEO_TOKEN_DESTINATION),
+                message.capture());
+        assertEquals("token-bob", message.getValue().getToken());
+        assertEquals("RM123", message.getValue().getRoomSid());
+        verify(gameStateWriter).schedule(any(LiveGameSession.class));
+    }
+
+    @Test
+    public void provision_twilioFails_degraded() {
+        when(twilioService.createVideoRoom("game123")).thenThrow(new ResponseStatusException(
+                HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create video room: Twilio error"));
+
+        videoProvisioner.provision("game123");
+
+        ArgumentCaptor<PlayerActionResult> result = ArgumentCaptor.forClass(PlayerActionResult.class);
+        verify(messagingTemplate, timeout(2000)).convertAndSend(eq("/game/topic/game123"), result.capture());
+        assertEquals("VIDEO_DEGRADED", result.getValue().getActionType());
+        assertEquals(VideoStatus.DEGRADED, gameSession.getVideoStatus());
+        assertNull(gameSession.getTwilioRoomSid());
+        // the game itself goes on without video
+        assertEquals(GameState.WAITING_FOR_PLAYERS, gameSession.getCurrentState());
+        verify(twilioService, never()).generateToken(anyString(), anyString());
+        assertEquals(1, videoProvisioner.getDegradedGames());
+    }
+
+    @Test
+    public void upgradeDegraded_providerBack_roomReady() {
+        when(twilioService.isVideoAvailable()).thenReturn(false);
+        gameSession.setVideoStatus(VideoStatus.DEGRADED);
+
+        // the circuit is open, no room is even tried
+        videoProvisioner.provision("game123");
+        dispatcher.run("game123", () -> { });
+        assertEquals(1, videoProvisioner.getDegradedGames());
+        videoProvisioner.upgradeDegraded();
+        verify(twilioService, never()).createVideoRoom(anyString());
+
+        when(twilioService.isVideoAvailable()).thenReturn(true);
+        when(twilioService.createVideoRoom("game123")).thenReturn(new TwilioService.TwilioRoomInfo("RM123", "roomToken"));
+        when(twilioService.generateToken(anyString(), eq("RM123"))).thenReturn("token");
+        videoProvisioner.upgradeDegraded();
+
+        ArgumentCaptor<PlayerActionResult> result = ArgumentCaptor.forClass(PlayerActionResult.class);
+        verify(messagingTemplate, timeout(2000)).convertAndSend(eq("/game/topic/game123"), result.capture());
+        assertEquals("VIDEO_READY", result.getValue().getActionType());
+        assertEquals(VideoStatus.READY, gameSession.getVideoStatus());
+        assertEquals(0, videoProvisioner.getDegradedGames());
+    }
+
+    @Test
+    public void provision_gameEndedMeanwhile_roomQueuedForClosing() {
+        when(gameSessionRepository.findByGameToken("game123")).thenReturn(Optional.empty());
+        when(twilioService.createVideoRoom("game123")).thenReturn(new TwilioService.TwilioRoomInfo("RM123", "roomToken"));
+
+        videoProvisioner.provision("game123");
+
+        verify(roomCloseQueue, timeout(2000)).enqueue("RM123");
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    public void provision_gameEndedStillLoaded_roomQueuedForClosing() {
+        // deleted, but only dropped from the registry once the delete has committed
+        liveGames.get("game123").setEnded(true);
+        when(twilioService.createVideoRoom("game123")).thenReturn(new TwilioService.TwilioRoomInfo("RM123", "roomToken"));
+
+        videoProvisioner.provision("game123");
+
+        verify(roomCloseQueue, timeout(2000)).enqueue("RM123");
+        assertNull(gameSession.getTwilioRoomSid());
+        verify(gameStateWriter, never()).schedule(any(LiveGameSession.class));
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    private Player player(Long userId, String username) {
+        User user = new User();
+        user.setId(userId);
+        user.setUsername(username);
+        Player player = new Player();
+        player.setId(userId * 10);
+        player.setUser(user);
+        player.setGameSession(gameSession);
+        return player;
+    }
+}
@@ -0,0 +1,78 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class VideoTokenCacheTest {
+
+    private final AtomicInteger signed = new AtomicInteger();
+
+    private String sign() {
+        return "token" + signed.incrementAndGet();
+    }
+
+    @Test
+    public void get_sameIdentityAndRoom_reusesToken() {
+        VideoTokenCache cache = new VideoTokenCache(10, 3600, 300);
+
+        VideoTokenCache.VideoToken first = cache.get("alice", "RM1", this::sign);
+        VideoTokenCache.VideoToken second = cache.get("alice", "RM1", this::sign);
+
+        assertSame(first, second);
+        assertEquals(1, signed.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertTrue(first.expiresAt().isAfter(Instant.now().plusSeconds(3500)));
+    }
+
+    @Test
+    public void get_otherIdentityOrRoom_signsNewToken() {
+        VideoTokenCache cache = new VideoTokenCache(10, 3600, 300);
+
+        String alice = cache.get("alice", "RM1", this::sign).token();
+        String bob = cache.get("bob", "RM1", this::sign).token();
+        String aliceOtherRoom = cache.get("alice", "RM2", this::sign).token();
+
+        assertNotEquals(alice, bob);
+        assertNotEquals(alice, aliceOtherRoom);
+        assertEquals(3, signed.get());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void get_tokenAboutToExpire_refreshed() {
+        // every token is within the refresh window right away
+        VideoTokenCache cache = new VideoTokenCache(10, 60, 60);
+
+        String first = cache.get("alice", "RM1", this::sign).token();
+        String second = cache.get("alice", "RM1", this::sign).token();
+
+        assertNotEquals(first, second);
+        assertEquals(2, signed.get());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void get_full_evictsLeastRecentlyUsed() {
+        VideoTokenCache cache = new VideoTokenCache(2, 3600, 300);
+        cache.get("alice", "RM1", this::sign);
+        cache.get("bob", "RM1", this::sign);
+        // alice is now more recent than bob
+        cache.get("alice", "RM1", this::sign);
+
+        cache.get("carol", "RM1", this::sign);
+
+        assertEquals(2, cache.size());
+        assertEquals(3, signed.get());
+        cache.get("alice", "RM1", this::sign);
+        assertEquals(3, signed.get());
+        cache.get("bob", "RM1", this::sign);
+        assertEquals(4, signed.get());
+    }
+}
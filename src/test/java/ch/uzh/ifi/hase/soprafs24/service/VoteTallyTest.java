@@ -0,0 +1,73 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class VoteTallyTest {
+
+    @Test
+    public void add_tracksLeader() {
+        VoteTally tally = new VoteTally();
+        tally.add(1L);
+        tally.add(2L);
+        tally.add(2L);
+
+        assertEquals(3, tally.getVoterCount());
+        assertEquals(2, tally.getLeaderVotes());
+        assertEquals(1, tally.getVotes(1L));
+        assertEquals(0, tally.getVotes(3L));
+        assertEquals(List.of(2L), tally.getMostVoted());
+    }
+
+    @Test
+    public void getMostVoted_tie_allLeaders() {
+        VoteTally tally = new VoteTally();
+        tally.add(1L);
+        tally.add(2L);
+        tally.add(3L);
+        tally.add(1L);
+        tally.add(2L);
+
+        List<Long> mostVoted = tally.getMostVoted();
+        assertEquals(2, mostVoted.size());
+        assertTrue(mostVoted.containsAll(List.of(1L, 2L)));
+    }
+
+    @Test
+    public void isDecided_leadLargerThanRemainingVotes() {
+        VoteTally tally = new VoteTally();
+        tally.add(1L);
+        tally.add(1L);
+        // 2 : 0 with 3 votes left, the others may still catch up
+        assertFalse(tally.isDecided(5));
+
+        tally.add(1L);
+        // 3 : 0 with 2 votes left
+        assertTrue(tally.isDecided(5));
+    }
+
+    @Test
+    public void isDecided_everybodyVoted() {
+        VoteTally tally = new VoteTally();
+        tally.add(1L);
+        tally.add(2L);
+
+        assertTrue(tally.isDecided(2));
+        assertEquals(2, tally.getMostVoted().size());
+    }
+
+    @Test
+    public void clear_startsOver() {
+        VoteTally tally = new VoteTally();
+        tally.add(1L);
+        tally.clear();
+
+        assertEquals(0, tally.getVoterCount());
+        assertTrue(tally.getMostVoted().isEmpty());
+        assertFalse(tally.isDecided(1));
+    }
+}
@@ -0,0 +1,92 @@
+package ch.uzh.ifi.hase.soprafs24.service;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WordServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void bundledCorpus_loaded() {
+        WordService wordService = new WordService("");
+
+        assertTrue(wordService.getWordCount() >= 50);
+        assertTrue(wordService.getCategories().contains("animals"));
+        assertNotNull(wordService.getRandomWord());
+    }
+
+    @Test
+    public void getRandomWord_category_onlyWordsOfCategory() throws IOException {
+        Path corpus = write("# comment\n"
+                + "dog\tanimals\t1\n"
+                + "cat\tAnimals\t1\r\n"
+                + "pizza\tfood\t2\n"
+                + "\n"
+                + "cr\u00e8me br\u00fbl\u00e9e\tfood\t3\n"
+                + "broken line\n"
+                + "lion\tanimals\t7\n");
+        WordService wordService = new WordService(corpus.toString());
+
+        assertEquals(List.of("animals", "food"), wordService.getCategories());
+        assertEquals(4, wordService.getWordCount());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(List.of("dog", "cat").contains(wordService.getRandomWord("animals")));
+            assertTrue(List.of("pizza", "cr\u00e8me br\u00fbl\u00e9e").contains(wordService.getRandomWord("FOOD")));
+            assertTrue(List.of("dog", "cat", "pizza", "cr\u00e8me br\u00fbl\u00e9e").contains(wordService.getRandomWord(null)));
+        }
+    }
+
+    @Test
+    public void getRandomWord_unknownCategory_throws() throws IOException {
+        WordService wordService = new WordService(write("dog\tanimals\t1\n").toString());
+
+        assertFalse(wordService.hasCategory("food"));
+        assertFalse(wordService.hasCategory(null));
+        assertThrows(IllegalArgumentException.class, () -> wordService.getRandomWord("food"));
+    }
+
+    @Test
+    public void emptyCorpus_throws() throws IOException {
+        Path corpus = write("# only a comment\n");
+
+        assertThrows(IllegalStateException.class, () -> new WordService(corpus.toString()));
+    }
+
+    @Test
+    public void largeCorpus_indexedByCategory() throws IOException {
+        Path corpus = tempDir.resolve("large.tsv");
+        try (Writer writer = Files.newBufferedWriter(corpus, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 100_000; i++) {
+                writer.write("word" + i + "\tcategory" + (i % 10) + "\t" + (1 + i % 3) + "\n");
+            }
+        }
+        WordService wordService = new WordService(corpus.toString());
+
+        assertEquals(100_000, wordService.getWordCount());
+        assertEquals(10, wordService.getCategories().size());
+        for (int i = 0; i < 1000; i++) {
+            String word = wordService.getRandomWord("category3");
+            assertEquals(3, Integer.parseInt(word.substring("word".length())) % 10);
+        }
+    }
+
+    private Path write(String content) throws IOException {
+        Path corpus = tempDir.resolve("words.tsv");
+        Files.writeString(corpus, content, StandardCharsets.UTF_8);
+        return corpus;
+    }
+}